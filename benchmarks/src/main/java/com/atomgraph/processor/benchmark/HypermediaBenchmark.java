@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark;
+
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.util.TemplateMatcher;
+import com.atomgraph.processor.vocabulary.DH;
+import com.atomgraph.server.filter.response.HypermediaFilter;
+import com.atomgraph.server.provider.TemplateCallProvider;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.jena.ontology.OntClass;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hypermedia added by {@link HypermediaFilter} to a container page: page state, previous/next page links, and the
+ * constructed instance of the <code>dh:forClass</code> class.
+ * The JAX-RS request/response plumbing of the filter is not included.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HypermediaBenchmark
+{
+
+    @Param({"10", "100", "1000"})
+    public int templateCount;
+    
+    private Template container;
+    private URI absolutePath;
+    private MultivaluedMap<String, String> queryParams;
+    private OntClass forClass;
+    private HypermediaFilter filter;
+    
+    @Setup
+    public void setup()
+    {
+        SitemapFixture fixture = new SitemapFixture(templateCount);
+        absolutePath = SitemapFixture.BASE_URI;
+        container = new TemplateMatcher(fixture.getOntology()).match(absolutePath, SitemapFixture.BASE_URI);
+        if (container == null) throw new IllegalStateException("Fixture container template did not match " + absolutePath);
+        forClass = fixture.getOntology().getOntModel().getOntClass(fixture.getOntologyURI() + "Document0");
+        
+        queryParams = new MultivaluedMapImpl();
+        queryParams.putSingle(DH.limit.getLocalName(), "20");
+        queryParams.putSingle(DH.offset.getLocalName(), "40");
+        queryParams.putSingle(DH.forClass.getLocalName(), forClass.getURI());
+        filter = new HypermediaFilter();
+    }
+    
+    @Benchmark
+    public Model addHypermedia()
+    {
+        TemplateCall templateCall = new TemplateCallProvider().getTemplateCall(container, absolutePath, queryParams);
+        Resource state = templateCall.build();
+        Resource page = state.getModel().createResource(absolutePath.toString());
+        
+        filter.addPrevNextPage(templateCall, page, state);
+        state.addProperty(DH.instance, filter.addInstance(state.getModel(), forClass));
+        return state.getModel();
+    }
+    
+}
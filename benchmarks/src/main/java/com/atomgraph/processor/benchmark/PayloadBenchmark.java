@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark;
+
+import com.atomgraph.processor.update.InsertDataBuilder;
+import com.atomgraph.processor.util.Skolemizer;
+import com.atomgraph.processor.util.Validator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.UriBuilder;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spinrdf.constraints.ConstraintViolation;
+
+/**
+ * Write path: skolemization, constraint validation, and <code>INSERT DATA</code> building of request payloads.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PayloadBenchmark
+{
+
+    @Param({"10", "100"})
+    public int templateCount;
+
+    @Param({"10", "100", "1000"})
+    public int payloadSize;
+    
+    private SitemapFixture fixture;
+    private Model payload;
+    private Validator validator;
+    
+    @Setup
+    public void setup()
+    {
+        fixture = new SitemapFixture(templateCount);
+        payload = fixture.createPayload(payloadSize);
+        validator = new Validator(fixture.getOntology().getOntModel());
+    }
+
+    /**
+     * Skolemization renames resources in place, so every invocation gets a fresh copy of the payload.
+     */
+    @State(Scope.Thread)
+    public static class PayloadCopy
+    {
+        public Model model;
+        
+        @Setup(Level.Invocation)
+        public void copy(PayloadBenchmark benchmark)
+        {
+            model = ModelFactory.createDefaultModel().add(benchmark.payload);
+        }
+    }
+    
+    @Benchmark
+    public Model skolemize(PayloadCopy copy)
+    {
+        return new Skolemizer(fixture.getOntology(), UriBuilder.fromUri(SitemapFixture.BASE_URI), UriBuilder.fromUri(SitemapFixture.BASE_URI)).
+            build(copy.model);
+    }
+    
+    @Benchmark
+    public List<ConstraintViolation> validate()
+    {
+        return validator.validate(payload);
+    }
+    
+    @Benchmark
+    public UpdateRequest insertData()
+    {
+        return InsertDataBuilder.fromData(payload).build();
+    }
+    
+}
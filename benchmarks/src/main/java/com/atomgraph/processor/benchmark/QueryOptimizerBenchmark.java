@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark;
+
+import com.atomgraph.processor.query.QueryOptimizer;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Query optimizer: rewrite cost, and execution of a container query with IN-list, language and duplicate filters
+ * before and after the rewrite, against an in-memory dataset.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QueryOptimizerBenchmark
+{
+
+    public static final String NS = "http://localhost/";
+    public static final int TYPE_COUNT = 10;
+    
+    public static final String QUERY = "PREFIX sioc: <http://rdfs.org/sioc/ns#>\n" +
+            "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n" +
+            "SELECT ?child ?label\n" +
+            "WHERE\n" +
+            "  { ?child sioc:has_container <" + NS + "> .\n" +
+            "    ?child a ?type .\n" +
+            "    ?child rdfs:label ?label\n" +
+            "    FILTER ( ?type IN (<" + NS + "ns#Type0>, <" + NS + "ns#Type1>) )\n" +
+            "    FILTER langMatches(lang(?label), \"en\")\n" +
+            "    FILTER langMatches(lang(?label), \"en\")\n" +
+            "  }";
+    
+    @Param({"1000", "10000", "100000"})
+    public int resourceCount;
+    
+    private Dataset dataset;
+    private QueryOptimizer optimizer;
+    private Query query, optimizedQuery;
+    
+    @Setup
+    public void setup()
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource container = model.createResource(NS);
+        for (int i = 0; i < resourceCount; i++)
+            model.createResource(NS + "item" + i).
+                addProperty(ResourceFactory.createProperty("http://rdfs.org/sioc/ns#has_container"), container).
+                addProperty(RDF.type, model.createResource(NS + "ns#Type" + (i % TYPE_COUNT))).
+                addProperty(RDFS.label, "Item " + i, "en").
+                addProperty(RDFS.label, "Element " + i, "lt");
+        
+        dataset = DatasetFactory.create(model);
+        optimizer = new QueryOptimizer();
+        query = QueryFactory.create(QUERY);
+        optimizedQuery = optimizer.optimize(query);
+    }
+    
+    @Benchmark
+    public Query optimize()
+    {
+        return optimizer.optimize(query);
+    }
+    
+    @Benchmark
+    public int executeOriginal()
+    {
+        return execute(query);
+    }
+
+    @Benchmark
+    public int executeOptimized()
+    {
+        return execute(optimizedQuery);
+    }
+    
+    private int execute(Query query)
+    {
+        try (QueryExecution qex = QueryExecutionFactory.create(query, dataset))
+        {
+            return ResultSetFormatter.consume(qex.execSelect());
+        }
+    }
+    
+}
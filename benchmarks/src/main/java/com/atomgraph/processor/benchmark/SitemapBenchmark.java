@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark;
+
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.query.QueryOptimizer;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.util.TemplateMatcher;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.provider.TemplateCallProvider;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.jena.query.ParameterizedSparqlString;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Request dispatch: template matching, template call construction, and description query building, with and without
+ * the per-request rewrites (search, language filter, property projection and optimization).
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SitemapBenchmark
+{
+
+    @Param({"10", "100", "1000"})
+    public int templateCount;
+    
+    private SitemapFixture fixture;
+    private TemplateMatcher matcher;
+    private TemplateCallProvider templateCallProvider;
+    private Template template;
+    private URI absolutePath;
+    private MultivaluedMap<String, String> queryParams;
+    private List<String> languages, properties;
+    private QueryOptimizer optimizer;
+    
+    @Setup
+    public void setup()
+    {
+        fixture = new SitemapFixture(templateCount);
+        matcher = new TemplateMatcher(fixture.getOntology());
+        templateCallProvider = new TemplateCallProvider();
+        absolutePath = fixture.getLastTemplateURI();
+        template = matcher.match(absolutePath, SitemapFixture.BASE_URI);
+        if (template == null) throw new IllegalStateException("Fixture template did not match " + absolutePath);
+        queryParams = new MultivaluedMapImpl();
+        languages = Collections.singletonList("en");
+        properties = Arrays.asList(DCTerms.title.getURI(), RDFS.label.getURI());
+        optimizer = new QueryOptimizer();
+    }
+    
+    @Benchmark
+    public Template match()
+    {
+        return matcher.match(absolutePath, SitemapFixture.BASE_URI);
+    }
+    
+    @Benchmark
+    public TemplateCall getTemplateCall()
+    {
+        return templateCallProvider.getTemplateCall(template, absolutePath, queryParams);
+    }
+    
+    /**
+     * Builds the description query with applied bindings, before the per-request rewrites.
+     * 
+     * @return query with applied bindings
+     * @see com.atomgraph.server.model.impl.ResourceBase#getQuery(java.lang.String, org.apache.jena.query.QuerySolutionMap, java.lang.String)
+     */
+    @Benchmark
+    public Query getQuery()
+    {
+        QuerySolutionMap qsm = new QuerySolutionMap();
+        qsm.add(SPIN.THIS_VAR_NAME, ModelFactory.createDefaultModel().createResource(absolutePath.toString()));
+        String command = template.getQueryBuilder(SitemapFixture.BASE_URI, ModelFactory.createDefaultModel()).build().toString();
+        return new ParameterizedSparqlString(command, qsm, SitemapFixture.BASE_URI.toString()).asQuery();
+    }
+    
+    /**
+     * Builds the description query and applies all per-request rewrites, the same way as <code>ResourceBase</code>
+     * does for a GET request with search text, acceptable languages and projected properties.
+     * 
+     * @return rewritten query
+     * @see com.atomgraph.server.model.impl.ResourceBase#rewrite(org.apache.jena.query.Query, java.lang.String, com.atomgraph.server.util.TextIndex, java.util.List, java.util.List, com.atomgraph.processor.query.QueryOptimizer)
+     */
+    @Benchmark
+    public Query getRewrittenQuery()
+    {
+        return ResourceBase.rewrite(getQuery(), "benchmark", null, languages, properties, optimizer);
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark;
+
+import com.atomgraph.processor.model.Parameter;
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.model.impl.ParameterImpl;
+import com.atomgraph.processor.model.impl.TemplateImpl;
+import com.atomgraph.processor.vocabulary.DH;
+import com.atomgraph.processor.vocabulary.DHT;
+import com.atomgraph.processor.vocabulary.LDT;
+import com.atomgraph.server.provider.OntologyProvider;
+import java.net.URI;
+import org.apache.jena.enhanced.BuiltinPersonalities;
+import org.apache.jena.ontology.OntDocumentManager;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.util.FileManager;
+import org.apache.jena.util.LocationMapper;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * In-memory sitemap for benchmarks.
+ * The sitemap imports the bundled document hierarchy ontologies and defines a configurable number of generated
+ * templates (<code>/resources{i}/{id}</code>) and document classes with skolemization segments and constraints.
+ * Ontologies are loaded the same way as by the server, with JVM-wide initialization equivalent to
+ * {@link com.atomgraph.server.Application}.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class SitemapFixture
+{
+
+    public static final URI BASE_URI = URI.create("http://localhost/");
+    
+    private static boolean initialized = false;
+    
+    private final String ontologyURI;
+    private final int templateCount;
+    private final Ontology ontology;
+
+    /**
+     * Builds sitemap with the given number of generated templates and classes.
+     * 
+     * @param templateCount number of generated templates
+     */
+    public SitemapFixture(int templateCount)
+    {
+        if (templateCount < 1) throw new IllegalArgumentException("Template count must be positive");
+        init();
+
+        this.templateCount = templateCount;
+        this.ontologyURI = BASE_URI.resolve("ns/" + templateCount + "#").toString(); // OntDocumentManager caches models by URI
+        OntDocumentManager.getInstance().addModel(ontologyURI, createSitemap(ontologyURI, templateCount), true);
+        this.ontology = OntologyProvider.getOntModel(OntDocumentManager.getInstance(), ontologyURI, OntModelSpec.OWL_MEM).getOntology(ontologyURI);
+    }
+    
+    public static synchronized void init()
+    {
+        if (initialized) return;
+        
+        BuiltinPersonalities.model.add(Parameter.class, ParameterImpl.factory);
+        BuiltinPersonalities.model.add(Template.class, TemplateImpl.factory);
+        SPINModuleRegistry.get().init();
+        ARQFactory.get().setUseCaches(false);
+
+        FileManager fileManager = FileManager.get();
+        fileManager.setLocationMapper(new LocationMapper("location-mapping.n3"));
+        OntDocumentManager.getInstance().setFileManager(fileManager);
+        OntDocumentManager.getInstance().setCacheModels(true);
+        
+        initialized = true;
+    }
+    
+    public static Model createSitemap(String ontologyURI, int templateCount)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource ontology = model.createResource(ontologyURI).
+            addProperty(RDF.type, LDT.Ontology).
+            addProperty(OWL.imports, DHT.NAMESPACE).
+            addProperty(OWL.imports, DH.NAMESPACE).
+            addProperty(OWL.imports, model.createResource(SPL.BASE_URI));
+        
+        for (int i = 0; i < templateCount; i++)
+        {
+            model.createResource(ontologyURI + "Template" + i).
+                addProperty(RDF.type, RDFS.Class).
+                addProperty(RDF.type, LDT.Template).
+                addLiteral(LDT.path, "/resources" + i + "/{id}").
+                addProperty(LDT.query, model.createResource("https://www.w3.org/ns/ldt/core/templates#Describe")).
+                addProperty(RDFS.isDefinedBy, ontology);
+            
+            model.createResource(ontologyURI + "Document" + i).
+                addProperty(RDF.type, RDFS.Class).
+                addProperty(RDFS.subClassOf, model.createResource(DH.NS + "Item")).
+                addLiteral(LDT.segment, "{slug}").
+                addProperty(SPIN.constraint, model.createResource().
+                    addProperty(RDF.type, SPL.Attribute).
+                    addProperty(SPL.predicate, DCTerms.title).
+                    addLiteral(SPL.minCount, 1)).
+                addProperty(RDFS.isDefinedBy, ontology);
+        }
+        
+        return model;
+    }
+    
+    /**
+     * Creates request payload of blank node documents typed with the generated classes. Every tenth document has no
+     * title, which violates its constraint.
+     * 
+     * @param size number of documents
+     * @return payload model
+     */
+    public Model createPayload(int size)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        
+        for (int i = 0; i < size; i++)
+        {
+            Resource doc = model.createResource().
+                addProperty(RDF.type, model.createResource(getOntologyURI() + "Document" + (i % getTemplateCount()))).
+                addLiteral(DH.slug, "document-" + i).
+                addLiteral(RDFS.label, "Document " + i);
+            if (i % 10 != 0) doc.addLiteral(DCTerms.title, "Title " + i);
+        }
+        
+        return model;
+    }
+    
+    /**
+     * Returns path matched by the last generated template, which is the worst case for linear matching.
+     * 
+     * @return request path
+     */
+    public String getLastTemplatePath()
+    {
+        return "/resources" + (getTemplateCount() - 1) + "/item";
+    }
+    
+    public URI getLastTemplateURI()
+    {
+        return BASE_URI.resolve(getLastTemplatePath().substring(1));
+    }
+    
+    public Ontology getOntology()
+    {
+        return ontology;
+    }
+    
+    public String getOntologyURI()
+    {
+        return ontologyURI;
+    }
+    
+    public int getTemplateCount()
+    {
+        return templateCount;
+    }
+
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark.load;
+
+import com.atomgraph.core.vocabulary.A;
+import com.atomgraph.processor.vocabulary.AP;
+import com.atomgraph.processor.vocabulary.DH;
+import com.atomgraph.processor.vocabulary.DHT;
+import com.atomgraph.processor.vocabulary.LDT;
+import com.atomgraph.processor.vocabulary.SIOC;
+import com.atomgraph.server.filter.MetricsFilter;
+import com.atomgraph.server.filter.request.NotFoundFilter;
+import com.atomgraph.server.filter.response.HypermediaFilter;
+import com.sun.jersey.api.container.grizzly2.servlet.GrizzlyWebContainerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Load test that replays the scenarios of the JMeter plan (<code>stress-test.jmx</code>) against an in-process server.
+ * The application is booted in an embedded servlet container, over an in-memory dataset loaded through the
+ * <code>a:dataset</code> parameter, with the document hierarchy templates as the sitemap. The dataset contains a
+ * document for every scenario path, and a number of child items in every container.
+ * Like the JMeter plan, every client thread loops through all scenarios.
+ * 
+ * Configured with system properties:
+ * <ul>
+ * <li><code>load.plan</code> - JMeter test plan, <code>stress-test.jmx</code> by default</li>
+ * <li><code>load.port</code> - server port, 9090 by default</li>
+ * <li><code>load.threads</code>, <code>load.loops</code> - concurrency and loop count, taken from the plan by default</li>
+ * <li><code>load.warmupLoops</code> - loops per thread before measurement, 5 by default</li>
+ * <li><code>load.children</code> - child items per container, 20 by default</li>
+ * <li><code>load.baseline</code> - properties file with results of a previous run</li>
+ * <li><code>load.tolerance</code> - allowed regression against the baseline, 0.2 (20%) by default</li>
+ * <li><code>load.maxErrorRate</code> - allowed ratio of failed requests, 0 by default</li>
+ * <li><code>load.record</code> - file to store the results of this run, for use as a baseline</li>
+ * </ul>
+ * Exits with status 1 if a threshold is exceeded.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class LoadHarness
+{
+
+    public static final String ACCEPT = "text/turtle";
+    public static final String SITEMAP_RULES = "[rdfs9: (?x rdfs:subClassOf ?y), (?a rdf:type ?x) -> (?a rdf:type ?y)]";
+    
+    private final List<Scenario> scenarios;
+    private final URI baseURI;
+    private final int threads, loops, warmupLoops, children;
+    
+    public LoadHarness(List<Scenario> scenarios, URI baseURI, int threads, int loops, int warmupLoops, int children)
+    {
+        if (scenarios == null) throw new IllegalArgumentException("Scenario List cannot be null");
+        if (baseURI == null) throw new IllegalArgumentException("Base URI cannot be null");
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be positive");
+        
+        this.scenarios = scenarios;
+        this.baseURI = baseURI;
+        this.threads = threads;
+        this.loops = loops;
+        this.warmupLoops = warmupLoops;
+        this.children = children;
+    }
+    
+    public static void main(String[] args) throws Exception
+    {
+        TestPlan plan = TestPlan.fromFile(new File(System.getProperty("load.plan", new File("stress-test.jmx").exists() ? "stress-test.jmx" : "../stress-test.jmx")));
+        
+        int port = Integer.getInteger("load.port", 9090);
+        LoadHarness harness = new LoadHarness(plan.getScenarios(), URI.create("http://localhost:" + port + "/"),
+            Integer.getInteger("load.threads", plan.getThreads()),
+            Integer.getInteger("load.loops", plan.getLoops()),
+            Integer.getInteger("load.warmupLoops", 5),
+            Integer.getInteger("load.children", 20));
+
+        Map<Scenario, ScenarioStats> results = harness.run();
+        report(results);
+
+        String record = System.getProperty("load.record");
+        if (record != null) store(results, new File(record));
+
+        boolean passed = true;
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.maxErrorRate", "0"));
+        for (ScenarioStats stats : results.values())
+            if (stats.getErrorRate() > maxErrorRate)
+            {
+                System.out.printf(Locale.ROOT, "FAIL %s: error rate %.4f exceeds %.4f%n", stats.getScenario().getName(), stats.getErrorRate(), maxErrorRate);
+                passed = false;
+            }
+        
+        String baseline = System.getProperty("load.baseline");
+        if (baseline != null)
+            passed &= compare(results, load(new File(baseline)), Double.parseDouble(System.getProperty("load.tolerance", "0.2")));
+        
+        System.exit(passed ? 0 : 1);
+    }
+    
+    /**
+     * Boots the server, runs warmup and measured loops, and stops the server.
+     * 
+     * @return stats per scenario
+     * @throws IOException if the dataset cannot be written or the server cannot be started
+     * @throws InterruptedException if interrupted while waiting for clients
+     */
+    public Map<Scenario, ScenarioStats> run() throws IOException, InterruptedException
+    {
+        File dataset = File.createTempFile("load-dataset", ".ttl");
+        dataset.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(dataset))
+        {
+            RDFDataMgr.write(out, createDataset(), Lang.TURTLE);
+        }
+
+        HttpServer server = GrizzlyWebContainerFactory.create(getBaseURI().toString(), getInitParams(dataset));
+        try
+        {
+            execute(getWarmupLoops());
+            return execute(getLoops());
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+    
+    /**
+     * Returns servlet parameters equivalent to the <code>web.xml</code> configuration of the webapp.
+     * 
+     * @param dataset dataset file
+     * @return parameter map
+     */
+    public Map<String, String> getInitParams(File dataset)
+    {
+        Map<String, String> params = new HashMap<>();
+        params.put("javax.ws.rs.Application", com.atomgraph.server.Application.class.getName());
+        // metrics start before the 404 check and are recorded after the other response filters
+        params.put("com.sun.jersey.spi.container.ContainerRequestFilters", MetricsFilter.class.getName() + "," + NotFoundFilter.class.getName());
+        params.put("com.sun.jersey.spi.container.ContainerResponseFilters", HypermediaFilter.class.getName() + "," + MetricsFilter.class.getName());
+        params.put(A.dataset.getURI(), dataset.toURI().toString());
+        params.put(LDT.ontology.getURI(), DHT.NS);
+        params.put(AP.sitemapRules.getURI(), SITEMAP_RULES);
+        params.put(AP.locationMapping.getURI(), "location-mapping.n3");
+        return params;
+    }
+
+    /**
+     * Creates document hierarchy with a document for every scenario path and its ancestor containers.
+     * 
+     * @return dataset model
+     */
+    public Model createDataset()
+    {
+        Model model = ModelFactory.createDefaultModel();
+        
+        for (Scenario scenario : getScenarios())
+        {
+            String path = scenario.getPath();
+            while (path != null && addDocument(model, path)) path = getParentPath(path); // existing documents have their ancestors
+        }
+        
+        List<Resource> containers = model.listSubjectsWithProperty(RDF.type, DH.Container).toList();
+        for (Resource container : containers)
+            for (int i = 0; i < getChildren(); i++)
+                model.createResource(container.getURI() + "item-" + i).
+                    addProperty(RDF.type, model.createResource(DH.NS + "Item")).
+                    addLiteral(DCTerms.title, "Item " + i).
+                    addProperty(SIOC.HAS_CONTAINER, container);
+        
+        return model;
+    }
+    
+    private boolean addDocument(Model model, String path)
+    {
+        Resource doc = model.createResource(getBaseURI().resolve(path.substring(1)).toString());
+        if (doc.hasProperty(DCTerms.title)) return false;
+        
+        boolean container = path.endsWith("/");
+        doc.addProperty(RDF.type, container ? DH.Container : model.createResource(DH.NS + "Item")).
+            addLiteral(DCTerms.title, path);
+        String parentPath = getParentPath(path);
+        if (parentPath != null)
+            doc.addProperty(container ? SIOC.HAS_PARENT : SIOC.HAS_CONTAINER, model.createResource(getBaseURI().resolve(parentPath.substring(1)).toString()));
+        
+        return true;
+    }
+
+    // "/a/b/" -> "/a/", "/a/b" -> "/a/", "/" -> null
+    private static String getParentPath(String path)
+    {
+        if (path.equals("/")) return null;
+        String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return trimmed.substring(0, trimmed.lastIndexOf('/') + 1);
+    }
+    
+    /**
+     * Runs the scenarios in loops on concurrent client threads.
+     * 
+     * @param loopCount loops per thread
+     * @return stats per scenario
+     * @throws InterruptedException if interrupted while waiting for clients
+     */
+    public Map<Scenario, ScenarioStats> execute(final int loopCount) throws InterruptedException
+    {
+        final Map<Scenario, ScenarioStats> results = new LinkedHashMap<>();
+        for (Scenario scenario : getScenarios()) results.put(scenario, new ScenarioStats(scenario));
+        
+        ExecutorService executor = Executors.newFixedThreadPool(getThreads());
+        final CountDownLatch done = new CountDownLatch(getThreads());
+        long start = System.nanoTime();
+        for (int t = 0; t < getThreads(); t++)
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < loopCount; i++)
+                            for (Scenario scenario : getScenarios())
+                                request(scenario, results.get(scenario));
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        
+        for (ScenarioStats stats : results.values()) stats.setElapsed(elapsed);
+        return results;
+    }
+    
+    public void request(Scenario scenario, ScenarioStats stats)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            HttpURLConnection conn = (HttpURLConnection)new URL(getBaseURI().resolve(scenario.getPath().substring(1)).toString()).openConnection();
+            conn.setRequestMethod(scenario.getMethod());
+            conn.setRequestProperty("Accept", ACCEPT);
+            int status = conn.getResponseCode();
+            
+            InputStream body = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+            if (body != null)
+                try
+                {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) != -1); // the response is read fully, as by JMeter
+                }
+                finally
+                {
+                    body.close();
+                }
+            
+            if (status < 400) stats.record(System.nanoTime() - start);
+            else stats.error();
+        }
+        catch (IOException ex)
+        {
+            stats.error();
+        }
+    }
+    
+    public static void report(Map<Scenario, ScenarioStats> results)
+    {
+        System.out.printf(Locale.ROOT, "%-45s %8s %7s %9s %9s %9s %9s %10s%n", "Scenario", "Requests", "Errors", "p50 ms", "p90 ms", "p99 ms", "max ms", "req/s");
+        for (ScenarioStats stats : results.values())
+            System.out.printf(Locale.ROOT, "%-45s %8d %7d %9.2f %9.2f %9.2f %9.2f %10.1f%n", stats.getScenario().getName(),
+                stats.getCount(), stats.getErrors(),
+                stats.getPercentile(50), stats.getPercentile(90), stats.getPercentile(99), stats.getPercentile(100),
+                stats.getThroughput());
+    }
+
+    public static void store(Map<Scenario, ScenarioStats> results, File file) throws IOException
+    {
+        Properties props = new Properties();
+        for (ScenarioStats stats : results.values())
+        {
+            props.setProperty(stats.getScenario().getName() + ".p99", String.valueOf(stats.getPercentile(99)));
+            props.setProperty(stats.getScenario().getName() + ".throughput", String.valueOf(stats.getThroughput()));
+        }
+        
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            props.store(out, "Load test baseline");
+        }
+    }
+    
+    public static Properties load(File file) throws IOException
+    {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file))
+        {
+            props.load(in);
+        }
+        return props;
+    }
+    
+    /**
+     * Compares p99 latency and throughput of every scenario against the baseline.
+     * 
+     * @param results stats of this run
+     * @param baseline stored results of a previous run
+     * @param tolerance allowed relative regression
+     * @return true if no scenario regressed beyond tolerance
+     */
+    public static boolean compare(Map<Scenario, ScenarioStats> results, Properties baseline, double tolerance)
+    {
+        boolean passed = true;
+        
+        for (ScenarioStats stats : results.values())
+        {
+            String name = stats.getScenario().getName();
+            String p99 = baseline.getProperty(name + ".p99");
+            if (p99 != null && stats.getPercentile(99) > Double.parseDouble(p99) * (1 + tolerance))
+            {
+                System.out.printf(Locale.ROOT, "FAIL %s: p99 %.2f ms regressed from %.2f ms%n", name, stats.getPercentile(99), Double.parseDouble(p99));
+                passed = false;
+            }
+            
+            String throughput = baseline.getProperty(name + ".throughput");
+            if (throughput != null && stats.getThroughput() < Double.parseDouble(throughput) * (1 - tolerance))
+            {
+                System.out.printf(Locale.ROOT, "FAIL %s: throughput %.1f req/s regressed from %.1f req/s%n", name, stats.getThroughput(), Double.parseDouble(throughput));
+                passed = false;
+            }
+        }
+        
+        return passed;
+    }
+    
+    public List<Scenario> getScenarios()
+    {
+        return scenarios;
+    }
+    
+    public URI getBaseURI()
+    {
+        return baseURI;
+    }
+    
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public int getLoops()
+    {
+        return loops;
+    }
+
+    public int getWarmupLoops()
+    {
+        return warmupLoops;
+    }
+
+    public int getChildren()
+    {
+        return children;
+    }
+    
+}
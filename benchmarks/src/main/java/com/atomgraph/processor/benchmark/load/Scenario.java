@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark.load;
+
+/**
+ * Request scenario of the load test, e.g. GET of the root container.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class Scenario
+{
+
+    private final String name;
+    private final String method;
+    private final String path;
+    
+    public Scenario(String name, String method, String path)
+    {
+        if (name == null) throw new IllegalArgumentException("Name cannot be null");
+        if (method == null) throw new IllegalArgumentException("Method cannot be null");
+        if (path == null) throw new IllegalArgumentException("Path cannot be null");
+        
+        this.name = name;
+        this.method = method;
+        this.path = path;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getMethod() + " " + getPath() + " (" + getName() + ")";
+    }
+    
+}
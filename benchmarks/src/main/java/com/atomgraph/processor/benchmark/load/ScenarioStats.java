@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark.load;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latencies and errors recorded for one scenario.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ScenarioStats
+{
+
+    private final Scenario scenario;
+    private final AtomicInteger errors = new AtomicInteger();
+    private long[] latencies = new long[1024]; // nanoseconds, guarded by this
+    private int count = 0; // guarded by this
+    private long elapsed; // nanoseconds of the whole run
+
+    public ScenarioStats(Scenario scenario)
+    {
+        if (scenario == null) throw new IllegalArgumentException("Scenario cannot be null");
+        this.scenario = scenario;
+    }
+    
+    public synchronized void record(long latency)
+    {
+        if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+        latencies[count++] = latency;
+    }
+    
+    public void error()
+    {
+        errors.incrementAndGet();
+    }
+    
+    /**
+     * Returns latency percentile using the nearest-rank method.
+     * 
+     * @param percentile percentile between 0 and 100
+     * @return latency in milliseconds, or 0 if nothing was recorded
+     */
+    public synchronized double getPercentile(double percentile)
+    {
+        if (count == 0) return 0;
+        
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int)Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1000000d;
+    }
+
+    /**
+     * Returns requests per second over the run, including failed requests.
+     * 
+     * @return throughput
+     */
+    public synchronized double getThroughput()
+    {
+        if (elapsed == 0) return 0;
+        return (count + getErrors()) / (elapsed / 1000000000d);
+    }
+    
+    public double getErrorRate()
+    {
+        int total = getCount() + getErrors();
+        if (total == 0) return 0;
+        return (double)getErrors() / total;
+    }
+    
+    public Scenario getScenario()
+    {
+        return scenario;
+    }
+
+    public synchronized int getCount()
+    {
+        return count;
+    }
+    
+    public int getErrors()
+    {
+        return errors.get();
+    }
+
+    public synchronized void setElapsed(long elapsed)
+    {
+        this.elapsed = elapsed;
+    }
+    
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.benchmark.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Scenarios and concurrency settings read from a JMeter test plan (<code>.jmx</code>).
+ * Only enabled HTTP samplers and the first thread group are used. The webapp path variable is removed from sampler
+ * paths, since the application is deployed at the root.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class TestPlan
+{
+
+    public static final String PATH_VARIABLE = "${graphity-path}";
+    
+    private final List<Scenario> scenarios;
+    private final int threads, loops;
+
+    public TestPlan(List<Scenario> scenarios, int threads, int loops)
+    {
+        if (scenarios == null) throw new IllegalArgumentException("Scenario List cannot be null");
+        
+        this.scenarios = Collections.unmodifiableList(scenarios);
+        this.threads = threads;
+        this.loops = loops;
+    }
+    
+    /**
+     * Parses JMeter test plan.
+     * 
+     * @param file plan file
+     * @return test plan
+     * @throws IOException if the plan cannot be read or parsed
+     */
+    public static TestPlan fromFile(File file) throws IOException
+    {
+        if (file == null) throw new IllegalArgumentException("File cannot be null");
+
+        try
+        {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            List<Scenario> scenarios = new ArrayList<>();
+            
+            NodeList samplers = doc.getElementsByTagName("HTTPSamplerProxy");
+            for (int i = 0; i < samplers.getLength(); i++)
+            {
+                Element sampler = (Element)samplers.item(i);
+                if (!Boolean.parseBoolean(sampler.getAttribute("enabled"))) continue;
+                
+                String method = getStringProp(sampler, "HTTPSampler.method");
+                String path = getStringProp(sampler, "HTTPSampler.path");
+                if (path == null) continue;
+                path = path.replace(PATH_VARIABLE, "");
+                if (!path.startsWith("/")) path = "/" + path;
+                
+                scenarios.add(new Scenario(sampler.getAttribute("testname"), method != null ? method : "GET", path));
+            }
+            
+            int threads = 25, loops = 100; // JMeter defaults of the plan
+            NodeList threadGroups = doc.getElementsByTagName("ThreadGroup");
+            if (threadGroups.getLength() > 0)
+            {
+                Element threadGroup = (Element)threadGroups.item(0);
+                String threadsProp = getStringProp(threadGroup, "ThreadGroup.num_threads");
+                if (threadsProp != null) threads = Integer.parseInt(threadsProp);
+                String loopsProp = getStringProp(threadGroup, "LoopController.loops");
+                if (loopsProp != null) loops = Integer.parseInt(loopsProp);
+            }
+            
+            return new TestPlan(scenarios, threads, loops);
+        }
+        catch (ParserConfigurationException | SAXException ex)
+        {
+            throw new IOException("Could not parse JMeter test plan " + file, ex);
+        }
+    }
+    
+    private static String getStringProp(Element element, String name)
+    {
+        NodeList props = element.getElementsByTagName("stringProp");
+        for (int i = 0; i < props.getLength(); i++)
+        {
+            Element prop = (Element)props.item(i);
+            if (prop.getAttribute("name").equals(name))
+            {
+                String value = prop.getTextContent();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        
+        return null;
+    }
+    
+    public List<Scenario> getScenarios()
+    {
+        return scenarios;
+    }
+    
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public int getLoops()
+    {
+        return loops;
+    }
+    
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.TriplePath;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_IsLiteral;
+import org.apache.jena.sparql.expr.E_Lang;
+import org.apache.jena.sparql.expr.E_LangMatches;
+import org.apache.jena.sparql.expr.E_LogicalNot;
+import org.apache.jena.sparql.expr.E_LogicalOr;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementAssign;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementUnion;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restricts literals of <code>CONSTRUCT</code> queries to a set of languages.
+ * Every group that binds an object variable of the template gets a filter that passes resources, literals without a
+ * language tag, and literals matching one of the languages. Inside an <code>OPTIONAL</code> the filter only leaves the
+ * variable unbound. A mandatory pattern is only filtered if its object variable is mentioned nowhere else in the query
+ * pattern, so that the filter removes just the solutions that construct the dropped literal. Sub-queries are left as
+ * they are, since they select resources rather than literals.
+ * Only <code>CONSTRUCT</code> queries are filtered. <code>DESCRIBE</code> results are built by the endpoint from the
+ * described resources, not from the query pattern, so they and the other query forms are returned unchanged.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class LanguageFilter
+{
+
+    private static final Logger log = LoggerFactory.getLogger(LanguageFilter.class);
+
+    private final List<String> languages;
+
+    /**
+     * Constructs filter.
+     *
+     * @param languages language tags or ranges
+     */
+    public LanguageFilter(Collection<String> languages)
+    {
+        if (languages == null) throw new IllegalArgumentException("Language Collection cannot be null");
+        if (languages.isEmpty()) throw new IllegalArgumentException("Language filter needs at least one language");
+
+        this.languages = new ArrayList<>(languages);
+    }
+
+    /**
+     * Returns filtered copy of the query.
+     *
+     * @param query query
+     * @return filtered query, or the same query if it is not a <code>CONSTRUCT</code>
+     */
+    public Query apply(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (!query.isConstructType() || query.getQueryPattern() == null) return query;
+
+        Set<Var> objectVars = new HashSet<>();
+        for (Triple triple : query.getConstructTemplate().getTriples())
+            if (triple.getObject().isVariable()) objectVars.add(Var.alloc(triple.getObject()));
+        if (objectVars.isEmpty()) return query;
+
+        Query filtered = query.cloneQuery();
+        filter(filtered.getQueryPattern(), objectVars, getMentions(filtered.getQueryPattern()), false);
+
+        if (log.isDebugEnabled()) log.debug("Filtered query literals to languages {}: {}", getLanguages(), filtered);
+        return filtered;
+    }
+
+    /**
+     * Adds filters to the groups of the element.
+     *
+     * @param element query pattern element
+     * @param objectVars object variables of the template
+     * @param mentions number of mentions of each variable in the query pattern
+     * @param optional true if the element is inside an <code>OPTIONAL</code>
+     */
+    protected void filter(Element element, Set<Var> objectVars, Map<Var, Integer> mentions, boolean optional)
+    {
+        if (element instanceof ElementGroup)
+        {
+            ElementGroup group = (ElementGroup)element;
+            Set<Var> boundVars = new HashSet<>();
+            for (Element child : new ArrayList<>(group.getElements())) // filters are appended while iterating
+            {
+                if (child instanceof ElementPathBlock)
+                    for (TriplePath path : ((ElementPathBlock)child).getPattern()) addObjectVar(path.getObject(), objectVars, boundVars);
+                else if (child instanceof ElementTriplesBlock)
+                    for (Triple triple : ((ElementTriplesBlock)child).getPattern()) addObjectVar(triple.getObject(), objectVars, boundVars);
+                else filter(child, objectVars, mentions, optional);
+            }
+
+            for (Var var : boundVars)
+                if (optional || mentions.get(var) == 1) group.addElementFilter(new ElementFilter(getExpr(var)));
+        }
+        if (element instanceof ElementOptional) filter(((ElementOptional)element).getOptionalElement(), objectVars, mentions, true);
+        if (element instanceof ElementNamedGraph) filter(((ElementNamedGraph)element).getElement(), objectVars, mentions, optional);
+        if (element instanceof ElementUnion)
+            for (Element child : ((ElementUnion)element).getElements()) filter(child, objectVars, mentions, optional);
+    }
+
+    /**
+     * Counts the mentions of variables in triple patterns, filters, assignments, data blocks, graph names and
+     * sub-query projections of the pattern.
+     *
+     * @param pattern query pattern
+     * @return mention counts
+     */
+    public static Map<Var, Integer> getMentions(Element pattern)
+    {
+        final Map<Var, Integer> mentions = new HashMap<>();
+        ElementWalker.walk(pattern, new ElementVisitorBase()
+        {
+            @Override
+            public void visit(ElementPathBlock el)
+            {
+                for (TriplePath path : el.getPattern())
+                {
+                    mention(path.getSubject());
+                    if (path.isTriple()) mention(path.getPredicate());
+                    mention(path.getObject());
+                }
+            }
+
+            @Override
+            public void visit(ElementTriplesBlock el)
+            {
+                for (Triple triple : el.getPattern())
+                {
+                    mention(triple.getSubject());
+                    mention(triple.getPredicate());
+                    mention(triple.getObject());
+                }
+            }
+
+            @Override
+            public void visit(ElementFilter el)
+            {
+                for (Var var : el.getExpr().getVarsMentioned()) mention(var);
+            }
+
+            @Override
+            public void visit(ElementBind el)
+            {
+                mention(el.getVar());
+                for (Var var : el.getExpr().getVarsMentioned()) mention(var);
+            }
+
+            @Override
+            public void visit(ElementAssign el)
+            {
+                mention(el.getVar());
+                for (Var var : el.getExpr().getVarsMentioned()) mention(var);
+            }
+
+            @Override
+            public void visit(ElementData el)
+            {
+                for (Var var : el.getVars()) mention(var);
+            }
+
+            @Override
+            public void visit(ElementNamedGraph el)
+            {
+                mention(el.getGraphNameNode());
+            }
+
+            @Override
+            public void visit(ElementSubQuery el)
+            {
+                for (Var var : el.getQuery().getProjectVars()) mention(var);
+            }
+
+            private void mention(Node node)
+            {
+                if (node == null || !node.isVariable()) return;
+
+                Var var = Var.alloc(node);
+                Integer count = mentions.get(var);
+                mentions.put(var, count != null ? count + 1 : 1);
+            }
+        });
+
+        return mentions;
+    }
+
+    private static void addObjectVar(Node object, Set<Var> objectVars, Set<Var> boundVars)
+    {
+        if (object.isVariable() && objectVars.contains(Var.alloc(object))) boundVars.add(Var.alloc(object));
+    }
+
+    /**
+     * Returns <code>!isLiteral(?o) || lang(?o) = "" || langMatches(lang(?o), "tag") || ...</code>.
+     *
+     * @param var object variable
+     * @return filter expression
+     */
+    public Expr getExpr(Var var)
+    {
+        ExprVar exprVar = new ExprVar(var);
+        Expr expr = new E_LogicalOr(new E_LogicalNot(new E_IsLiteral(exprVar)),
+                new E_Equals(new E_Lang(exprVar), NodeValue.makeString("")));
+        for (String language : getLanguages())
+            expr = new E_LogicalOr(expr, new E_LangMatches(new E_Lang(exprVar), NodeValue.makeString(language)));
+
+        return expr;
+    }
+
+    public List<String> getLanguages()
+    {
+        return languages;
+    }
+
+}
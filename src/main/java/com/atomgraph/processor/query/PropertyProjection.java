@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementUnion;
+import org.apache.jena.sparql.syntax.PatternVars;
+import org.apache.jena.sparql.syntax.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restricts <code>CONSTRUCT</code> and <code>DESCRIBE</code> queries to a set of properties.
+ * Template triples with other fixed properties are removed, and variable properties are bound to the selected
+ * properties with a <code>VALUES</code> block placed before the query pattern. Top-level <code>OPTIONAL</code> patterns
+ * that only bind variables of removed triples are dropped, so the store does not evaluate their joins.
+ * <code>DESCRIBE</code> queries are rewritten into <code>CONSTRUCT</code> queries of the properties of the described
+ * resources, as the endpoint cannot be told which properties to describe.
+ * Other query forms are returned unchanged.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class PropertyProjection
+{
+
+    private static final Logger log = LoggerFactory.getLogger(PropertyProjection.class);
+
+    private final Set<Node> properties = new LinkedHashSet<>();
+
+    /**
+     * Constructs projection.
+     *
+     * @param propertyURIs URIs of the properties to keep
+     */
+    public PropertyProjection(Collection<String> propertyURIs)
+    {
+        if (propertyURIs == null) throw new IllegalArgumentException("Property URI Collection cannot be null");
+
+        for (String propertyURI : propertyURIs) properties.add(NodeFactory.createURI(propertyURI));
+    }
+
+    /**
+     * Returns projected copy of the query.
+     *
+     * @param query query
+     * @return projected query, or the same query if it is not a <code>CONSTRUCT</code> or <code>DESCRIBE</code>
+     */
+    public Query apply(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (query.isDescribeType()) query = toConstruct(query);
+        if (!query.isConstructType()) return query;
+
+        Query projected = query.cloneQuery();
+        BasicPattern kept = new BasicPattern();
+        Set<Var> predicateVars = new LinkedHashSet<>();
+        for (Triple triple : query.getConstructTemplate().getTriples())
+        {
+            Node predicate = triple.getPredicate();
+            if (predicate.isVariable())
+            {
+                kept.add(triple);
+                predicateVars.add(Var.alloc(predicate));
+            }
+            else if (getProperties().contains(predicate)) kept.add(triple);
+        }
+        projected.setConstructTemplate(new Template(kept));
+
+        Set<Var> keptVars = new HashSet<>();
+        for (Triple triple : kept)
+            for (Node node : new Node[] { triple.getSubject(), triple.getPredicate(), triple.getObject() })
+                if (node.isVariable()) keptVars.add(Var.alloc(node));
+
+        // variables that are only used inside a sub-SELECT are not in scope of the outer group and stay unbound
+        Set<Var> scopeVars = new HashSet<>();
+        if (projected.getQueryPattern() != null) scopeVars.addAll(PatternVars.vars(projected.getQueryPattern()));
+
+        ElementGroup group = new ElementGroup();
+        for (Var predicateVar : predicateVars)
+        {
+            if (!scopeVars.contains(predicateVar)) continue;
+
+            ElementData data = new ElementData();
+            data.add(predicateVar);
+            for (Node property : getProperties()) data.add(BindingFactory.binding(predicateVar, property));
+            group.addElement(data);
+        }
+
+        Element pattern = projected.getQueryPattern();
+        if (pattern instanceof ElementGroup)
+            for (Element element : ((ElementGroup)pattern).getElements()) group.addElement(element);
+        else if (pattern != null) group.addElement(pattern);
+
+        pruneOptionals(group, keptVars);
+        projected.setQueryPattern(group);
+
+        if (log.isDebugEnabled()) log.debug("Projected query to properties {}: {}", getProperties(), projected);
+        return projected;
+    }
+
+    /**
+     * Rewrites <code>DESCRIBE</code> query into a <code>CONSTRUCT</code> of the properties of the described resources:
+     * <code>DESCRIBE ?x WHERE { P }</code> becomes <code>CONSTRUCT { ?x ?p ?o } WHERE { P ?x ?p ?o }</code>.
+     * Several described resources are matched in a <code>UNION</code> with separate variables.
+     *
+     * @param query <code>DESCRIBE</code> query
+     * @return <code>CONSTRUCT</code> query, or the same query if it describes no resources
+     */
+    public static Query toConstruct(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (!query.isDescribeType()) throw new IllegalArgumentException("Query must be DESCRIBE");
+
+        List<Node> described = new ArrayList<>();
+        if (query.getQueryPattern() != null) described.addAll(query.getProjectVars());
+        described.addAll(query.getResultURIs());
+        if (described.isEmpty()) return query;
+
+        Set<Var> usedVars = new HashSet<>();
+        if (query.getQueryPattern() != null) usedVars.addAll(PatternVars.vars(query.getQueryPattern()));
+
+        BasicPattern template = new BasicPattern();
+        ElementUnion union = new ElementUnion();
+        for (int i = 0; i < described.size(); i++)
+        {
+            Triple triple = Triple.create(described.get(i), getFreshVar("describedProperty", i, usedVars), getFreshVar("describedValue", i, usedVars));
+            template.add(triple);
+            ElementTriplesBlock block = new ElementTriplesBlock();
+            block.addTriple(triple);
+            union.addElement(block);
+        }
+
+        ElementGroup group = new ElementGroup();
+        Element pattern = query.getQueryPattern();
+        if (pattern instanceof ElementGroup)
+            for (Element element : ((ElementGroup)pattern).getElements()) group.addElement(element);
+        else if (pattern != null) group.addElement(pattern);
+        group.addElement(described.size() == 1 ? union.getElements().get(0) : union);
+
+        Query construct = query.cloneQuery();
+        construct.setQueryConstructType();
+        construct.setQueryResultStar(false);
+        construct.setConstructTemplate(new Template(template));
+        construct.setQueryPattern(group);
+
+        if (log.isDebugEnabled()) log.debug("Rewrote DESCRIBE query into CONSTRUCT: {}", construct);
+        return construct;
+    }
+
+    private static Var getFreshVar(String name, int index, Set<Var> usedVars)
+    {
+        Var var = Var.alloc(name + index);
+        while (usedVars.contains(var)) var = Var.alloc(var.getVarName() + "_");
+        usedVars.add(var);
+        return var;
+    }
+
+    /**
+     * Removes top-level <code>OPTIONAL</code> patterns that do not contribute to the kept template triples.
+     * An optional pattern can only be removed if the variables it shares with the rest of the group are bound by
+     * mandatory patterns, otherwise its bindings could affect the patterns that follow it.
+     *
+     * @param group group pattern
+     * @param keptVars variables of the kept template triples
+     */
+    protected void pruneOptionals(ElementGroup group, Set<Var> keptVars)
+    {
+        boolean pruned = true;
+        while (pruned)
+        {
+            pruned = false;
+            List<Element> elements = group.getElements();
+            for (int i = 0; i < elements.size(); i++)
+            {
+                if (!(elements.get(i) instanceof ElementOptional)) continue;
+
+                Set<Var> otherVars = new HashSet<>(), mandatoryVars = new HashSet<>();
+                for (int j = 0; j < elements.size(); j++)
+                    if (j != i)
+                    {
+                        Element element = elements.get(j);
+                        otherVars.addAll(getVars(element));
+                        if (!(element instanceof ElementOptional) && !(element instanceof ElementFilter)) mandatoryVars.addAll(PatternVars.vars(element));
+                    }
+
+                boolean removable = true;
+                for (Var var : PatternVars.vars(((ElementOptional)elements.get(i)).getOptionalElement()))
+                {
+                    if (otherVars.contains(var) ? !mandatoryVars.contains(var) : keptVars.contains(var))
+                    {
+                        removable = false;
+                        break;
+                    }
+                }
+
+                if (removable)
+                {
+                    if (log.isTraceEnabled()) log.trace("Removing OPTIONAL pattern outside of projection: {}", elements.get(i));
+                    elements.remove(i);
+                    pruned = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // pattern variables plus variables mentioned in FILTER and BIND expressions
+    private static Collection<Var> getVars(Element element)
+    {
+        List<Var> vars = new ArrayList<>(PatternVars.vars(element));
+        if (element instanceof ElementFilter) vars.addAll(((ElementFilter)element).getExpr().getVarsMentioned());
+        if (element instanceof ElementBind) vars.addAll(((ElementBind)element).getExpr().getVarsMentioned());
+        return vars;
+    }
+
+    public Set<Node> getProperties()
+    {
+        return properties;
+    }
+
+}
@@ -279,7 +279,7 @@ public class QueryBuilder implements org.spinrdf.model.Query
     }
 
     // method taken from com.sun.org.apache.xerces.internal.impl.xpath.regex.REUtil
-    public String quoteRegexMeta(String literal)
+    public static String quoteRegexMeta(String literal)
     {
         int len = literal.length();
         StringBuffer buffer = null;
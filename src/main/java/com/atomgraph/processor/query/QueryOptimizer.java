@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpAsQuery;
+import org.apache.jena.sparql.algebra.OpVars;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.algebra.TransformCopy;
+import org.apache.jena.sparql.algebra.Transformer;
+import org.apache.jena.sparql.algebra.op.OpDistinct;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpOrder;
+import org.apache.jena.sparql.algebra.op.OpProject;
+import org.apache.jena.sparql.algebra.op.OpReduced;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.algebra.optimize.TransformFilterPlacement;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.E_OneOf;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites the <code>WHERE</code> pattern of built queries at the algebra level, so that stores that evaluate
+ * filters late get a pattern with the filters already in place.
+ * <ul>
+ *   <li><code>FILTER(?x IN (...))</code> over IRIs becomes a <code>VALUES</code> block joined with the pattern, if
+ *   <code>?x</code> is always bound by it</li>
+ *   <li>filters are placed on the join branches that bind their variables</li>
+ *   <li>filters over a sub-<code>SELECT</code> that only use its projected variables are moved into it, above any
+ *   <code>LIMIT</code>/<code>OFFSET</code></li>
+ *   <li>nested and duplicate filter expressions are merged</li>
+ * </ul>
+ * The query form, projection and solution modifiers are kept as they are. Thread-safe.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class QueryOptimizer
+{
+
+    private static final Logger log = LoggerFactory.getLogger(QueryOptimizer.class);
+
+    /**
+     * Returns optimized copy of the query.
+     *
+     * @param query query
+     * @return optimized query, or the same query if nothing was rewritten
+     */
+    public Query optimize(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (query.getQueryPattern() == null) return query;
+
+        Op op = Algebra.compile(query.getQueryPattern());
+        Op optimized;
+        try
+        {
+            optimized = optimize(op);
+        }
+        catch (RuntimeException ex) // the original query is still valid
+        {
+            if (log.isWarnEnabled()) log.warn("Query optimization failed, using the original query: {}", query, ex);
+            return query;
+        }
+        if (optimized.equals(op)) return query;
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Query plan before optimization: {}", op);
+            log.debug("Query plan after optimization: {}", optimized);
+        }
+
+        Query optimizedQuery = query.cloneQuery();
+        optimizedQuery.setQueryPattern(OpAsQuery.asQuery(optimized).getQueryPattern());
+        return optimizedQuery;
+    }
+
+    /**
+     * Applies the rewrites to an algebra expression.
+     *
+     * @param op algebra expression
+     * @return rewritten expression
+     */
+    public Op optimize(Op op)
+    {
+        if (op == null) throw new IllegalArgumentException("Op cannot be null");
+
+        op = Transformer.transform(new TransformFilters(), op);
+        op = Transformer.transform(new TransformFilterPlacement(false), op); // BGPs are not split, the store orders their triples
+        return Transformer.transform(new TransformFilters(), op);
+    }
+
+    /**
+     * Rewrites filters: merges nested filters, converts IN-lists into tables and moves filters into sub-queries.
+     */
+    public static class TransformFilters extends TransformCopy
+    {
+
+        @Override
+        public Op transform(OpFilter opFilter, Op subOp)
+        {
+            Set<Expr> exprs = new LinkedHashSet<>(opFilter.getExprs().getList()); // duplicates are evaluated once
+            while (subOp instanceof OpFilter)
+            {
+                exprs.addAll(((OpFilter)subOp).getExprs().getList());
+                subOp = ((OpFilter)subOp).getSubOp();
+            }
+
+            List<Table> tables = new ArrayList<>();
+            ExprList remaining = new ExprList();
+            Set<Var> fixedVars = OpVars.fixedVars(subOp);
+            for (Expr expr : exprs)
+            {
+                Table table = toTable(expr, fixedVars);
+                if (table != null) tables.add(table);
+                else remaining.add(expr);
+            }
+
+            Op op = remaining.isEmpty() ? subOp : pushDown(remaining, subOp);
+            for (Table table : tables) op = OpJoin.create(OpTable.create(table), op);
+            return op;
+        }
+
+        /**
+         * Converts <code>?x IN (...)</code> over IRIs into a table of <code>?x</code> bindings. Join is only equivalent
+         * if <code>?x</code> is always bound, and only for IRIs, as <code>IN</code> compares literals by value.
+         *
+         * @param expr filter expression
+         * @param fixedVars variables that are always bound by the filtered pattern
+         * @return table, or null if the expression cannot be converted
+         */
+        protected Table toTable(Expr expr, Set<Var> fixedVars)
+        {
+            if (!(expr instanceof E_OneOf)) return null;
+
+            E_OneOf oneOf = (E_OneOf)expr;
+            if (!oneOf.getLHS().isVariable() || !fixedVars.contains(oneOf.getLHS().asVar())) return null;
+            for (Expr value : oneOf.getRHS())
+                if (!value.isConstant() || !value.getConstant().isIRI()) return null;
+
+            Var var = oneOf.getLHS().asVar();
+            Table table = TableFactory.create(Collections.singletonList(var));
+            for (Expr value : oneOf.getRHS())
+            {
+                NodeValue nodeValue = value.getConstant();
+                table.addBinding(BindingFactory.binding(var, nodeValue.asNode()));
+            }
+            return table;
+        }
+
+        /**
+         * Moves filter below the projection, distinct and ordering of a sub-query. Those operators do not change the
+         * values of the projected variables, so filtering before them is equivalent.
+         *
+         * @param exprs filter expressions
+         * @param op filtered expression
+         * @return filtered expression
+         */
+        protected Op pushDown(ExprList exprs, Op op)
+        {
+            if (op instanceof OpProject && ((OpProject)op).getVars().containsAll(exprs.getVarsMentioned()))
+                return new OpProject(pushDown(exprs, ((OpProject)op).getSubOp()), ((OpProject)op).getVars());
+            if (op instanceof OpDistinct) return OpDistinct.create(pushDown(exprs, ((OpDistinct)op).getSubOp()));
+            if (op instanceof OpReduced) return OpReduced.create(pushDown(exprs, ((OpReduced)op).getSubOp()));
+            if (op instanceof OpOrder) return new OpOrder(pushDown(exprs, ((OpOrder)op).getSubOp()), ((OpOrder)op).getConditions());
+
+            return OpFilter.filter(exprs, op);
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.update;
+
+import com.atomgraph.processor.model.Template;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.modify.request.QuadAcc;
+import org.apache.jena.sparql.modify.request.UpdateModify;
+import org.apache.jena.sparql.syntax.syntaxtransform.UpdateTransformOps;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Compiled <code>ldt:update</code> of a template.
+ * The SPIN update is converted to an ARQ DELETE/INSERT skeleton once; requests substitute their variable bindings
+ * and add the payload triples to the INSERT template without building a SPIN model or parsing SPARQL again.
+ * Immutable, can be shared between requests.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see ModifyBuilder
+ */
+public class UpdatePlan
+{
+
+    private final UpdateModify skeleton;
+
+    public UpdatePlan(UpdateModify skeleton)
+    {
+        if (skeleton == null) throw new IllegalArgumentException("UpdateModify cannot be null");
+        this.skeleton = skeleton;
+    }
+
+    /**
+     * Compiles the update of a template.
+     *
+     * @param template template with <code>ldt:update</code>
+     * @param base base URI
+     * @return update plan, or null if the update is not a DELETE/INSERT
+     */
+    public static UpdatePlan compile(Template template, URI base)
+    {
+        if (template == null) throw new IllegalArgumentException("Template cannot be null");
+
+        Update update = template.getModifyBuilder(base, ModelFactory.createDefaultModel()).build().getOperations().get(0);
+        if (!(update instanceof UpdateModify)) return null;
+
+        return new UpdatePlan((UpdateModify)update);
+    }
+
+    /**
+     * Builds update request. Payload triples are inserted into the graph of the first DELETE quad if it is a named
+     * graph, otherwise into the default graph.
+     *
+     * @param qsm variable bindings, including <code>?this</code>
+     * @param model payload, can be null
+     * @return update request
+     */
+    public UpdateRequest getUpdateRequest(QuerySolutionMap qsm, Model model)
+    {
+        if (qsm == null) throw new IllegalArgumentException("QuerySolutionMap cannot be null");
+
+        Map<Var, Node> bindings = new HashMap<>();
+        Iterator<String> it = qsm.varNames();
+        while (it.hasNext())
+        {
+            String varName = it.next();
+            bindings.put(Var.alloc(varName), qsm.get(varName).asNode());
+        }
+
+        UpdateModify bound = (UpdateModify)UpdateTransformOps.transform(getSkeleton(), bindings);
+        UpdateModify modify = new UpdateModify(); // fresh accumulators, the transform may return shared ones
+        for (Quad quad : bound.getDeleteQuads()) modify.getDeleteAcc().addQuad(quad);
+        for (Quad quad : bound.getInsertQuads()) modify.getInsertAcc().addQuad(quad);
+        modify.setElement(bound.getWherePattern());
+        modify.setWithIRI(bound.getWithIRI());
+        for (Node using : bound.getUsing()) modify.addUsing(using);
+        for (Node usingNamed : bound.getUsingNamed()) modify.addUsingNamed(usingNamed);
+
+        if (model != null && !model.isEmpty())
+        {
+            List<Quad> deleteQuads = bound.getDeleteQuads();
+            Node graph = !deleteQuads.isEmpty() && !deleteQuads.get(0).isDefaultGraph() ? deleteQuads.get(0).getGraph() : Quad.defaultGraphNodeGenerated;
+            QuadAcc insertAcc = modify.getInsertAcc();
+            
+            ExtendedIterator<Triple> triples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+            try
+            {
+                while (triples.hasNext()) insertAcc.addQuad(new Quad(graph, triples.next()));
+            }
+            finally
+            {
+                triples.close();
+            }
+        }
+
+        return new UpdateRequest(modify);
+    }
+
+    public UpdateModify getSkeleton()
+    {
+        return skeleton;
+    }
+
+}
@@ -16,6 +16,8 @@
 package com.atomgraph.processor.vocabulary;
 
 import org.apache.jena.ontology.DatatypeProperty;
+import org.apache.jena.ontology.ObjectProperty;
+import org.apache.jena.ontology.OntClass;
 import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.ModelFactory;
@@ -46,8 +48,82 @@ public class AP
     
     public static final DatatypeProperty cacheSitemap = m_model.createDatatypeProperty( NS + "cacheSitemap" );
 
+    public static final DatatypeProperty watchSitemap = m_model.createDatatypeProperty( NS + "watchSitemap" );
+
+    public static final DatatypeProperty sitemapReload = m_model.createDatatypeProperty( NS + "sitemapReload" );
+
+    public static final DatatypeProperty sitemapCacheDir = m_model.createDatatypeProperty( NS + "sitemapCacheDir" );
+
+    public static final DatatypeProperty applications = m_model.createDatatypeProperty( NS + "applications" );
+
+    public static final DatatypeProperty maxApplications = m_model.createDatatypeProperty( NS + "maxApplications" );
+
+    public static final DatatypeProperty maxSitemapTriples = m_model.createDatatypeProperty( NS + "maxSitemapTriples" );
+
     public static final DatatypeProperty sitemapRules = m_model.createDatatypeProperty( NS + "sitemapRules" );
 
+    public static final DatatypeProperty rulesHeader = m_model.createDatatypeProperty( NS + "rulesHeader" );
+
     public static final DatatypeProperty locationMapping = m_model.createDatatypeProperty( NS + "locationMapping" );
 
+    public static final DatatypeProperty insertDataWindow = m_model.createDatatypeProperty( NS + "insertDataWindow" );
+
+    public static final DatatypeProperty insertDataBatchSize = m_model.createDatatypeProperty( NS + "insertDataBatchSize" );
+
+    public static final DatatypeProperty updateQueueSize = m_model.createDatatypeProperty( NS + "updateQueueSize" );
+
+    public static final DatatypeProperty queueDepth = m_model.createDatatypeProperty( NS + "queueDepth" );
+
+    public static final DatatypeProperty queueLag = m_model.createDatatypeProperty( NS + "queueLag" );
+
+    public static final DatatypeProperty trackVersions = m_model.createDatatypeProperty( NS + "trackVersions" );
+
+    public static final DatatypeProperty versionPollQuery = m_model.createDatatypeProperty( NS + "versionPollQuery" );
+
+    public static final DatatypeProperty versionPollInterval = m_model.createDatatypeProperty( NS + "versionPollInterval" );
+
+    public static final DatatypeProperty metricsRegistry = m_model.createDatatypeProperty( NS + "metricsRegistry" );
+
+    public static final DatatypeProperty slowQueryThreshold = m_model.createDatatypeProperty( NS + "slowQueryThreshold" );
+
+    public static final DatatypeProperty slowQueryLogSize = m_model.createDatatypeProperty( NS + "slowQueryLogSize" );
+
+    public static final OntClass SlowQuery = m_model.createClass( NS + "SlowQuery" );
+
+    public static final OntClass TemplateStats = m_model.createClass( NS + "TemplateStats" );
+
+    public static final ObjectProperty slowQuery = m_model.createObjectProperty( NS + "slowQuery" );
+
+    public static final ObjectProperty templateStats = m_model.createObjectProperty( NS + "templateStats" );
+
+    public static final ObjectProperty template = m_model.createObjectProperty( NS + "template" );
+
+    public static final ObjectProperty requestURI = m_model.createObjectProperty( NS + "requestURI" );
+
+    public static final DatatypeProperty method = m_model.createDatatypeProperty( NS + "method" );
+
+    public static final DatatypeProperty query = m_model.createDatatypeProperty( NS + "query" );
+
+    public static final DatatypeProperty bindings = m_model.createDatatypeProperty( NS + "bindings" );
+
+    public static final DatatypeProperty duration = m_model.createDatatypeProperty( NS + "duration" );
+
+    public static final DatatypeProperty maxDuration = m_model.createDatatypeProperty( NS + "maxDuration" );
+
+    public static final DatatypeProperty backendTime = m_model.createDatatypeProperty( NS + "backendTime" );
+
+    public static final DatatypeProperty serializationTime = m_model.createDatatypeProperty( NS + "serializationTime" );
+
+    public static final DatatypeProperty resultSize = m_model.createDatatypeProperty( NS + "resultSize" );
+
+    public static final DatatypeProperty requestCount = m_model.createDatatypeProperty( NS + "requestCount" );
+
+    public static final DatatypeProperty slowRequestCount = m_model.createDatatypeProperty( NS + "slowRequestCount" );
+
+    public static final DatatypeProperty textIndexProperties = m_model.createDatatypeProperty( NS + "textIndexProperties" );
+
+    public static final DatatypeProperty optimizeQueries = m_model.createDatatypeProperty( NS + "optimizeQueries" );
+
+    public static final DatatypeProperty streamGraphs = m_model.createDatatypeProperty( NS + "streamGraphs" );
+
 }
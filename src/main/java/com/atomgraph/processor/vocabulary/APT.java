@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.vocabulary;
+
+import org.apache.jena.ontology.DatatypeProperty;
+import org.apache.jena.ontology.ObjectProperty;
+import org.apache.jena.ontology.OntClass;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class APT
+{
+
+    /** <p>The RDF model that holds the vocabulary terms</p> */
+    private static OntModel m_model = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM, null);
+    
+    /** <p>The namespace of the vocabulary as a string</p> */
+    public static final String NS = "http://atomgraph.com/ns/processor/templates#";
+    
+    /** <p>The namespace of the vocabulary as a string</p>
+     *  @see #NS */
+    public static String getURI()
+    {
+	return NS;
+    }
+    
+    /** <p>The namespace of the vocabulary as a resource</p> */
+    public static final Resource NAMESPACE = m_model.createResource( NS );
+
+    public static final OntClass Ingest = m_model.createClass( NS + "Ingest" );
+
+    public static final OntClass UpdateStatus = m_model.createClass( NS + "UpdateStatus" );
+
+    public static final OntClass Metrics = m_model.createClass( NS + "Metrics" );
+
+    public static final OntClass SlowQueries = m_model.createClass( NS + "SlowQueries" );
+
+    public static final OntClass Sitemap = m_model.createClass( NS + "Sitemap" );
+
+    public static final OntClass Rules = m_model.createClass( NS + "Rules" );
+
+    public static final OntClass Batch = m_model.createClass( NS + "Batch" );
+
+    public static final ObjectProperty uri = m_model.createObjectProperty( NS + "uri" );
+
+    public static final ObjectProperty property = m_model.createObjectProperty( NS + "property" );
+
+    public static final DatatypeProperty search = m_model.createDatatypeProperty( NS + "search" );
+
+}
@@ -21,7 +21,10 @@ import com.atomgraph.core.MediaTypes;
 import com.atomgraph.core.exception.ConfigurationException;
 import org.apache.jena.ontology.OntDocumentManager;
 import org.apache.jena.util.FileManager;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.servlet.ServletConfig;
@@ -59,6 +62,36 @@ import com.atomgraph.server.provider.OntologyProvider;
 import com.atomgraph.server.provider.TemplateProvider;
 import com.atomgraph.server.io.SkolemizingModelProvider;
 import com.atomgraph.server.provider.TemplateCallProvider;
+import com.atomgraph.server.provider.InsertDataCoalescerProvider;
+import com.atomgraph.server.provider.UpdateQueueProvider;
+import com.atomgraph.server.util.ExistenceChecker;
+import com.atomgraph.server.util.IngestExecutor;
+import com.atomgraph.server.util.GraphStreamer;
+import com.atomgraph.server.util.TextIndex;
+import com.atomgraph.processor.query.QueryOptimizer;
+import com.atomgraph.server.util.HeaderCache;
+import com.atomgraph.server.util.UpdatePlanCache;
+import com.atomgraph.server.util.InsertDataCoalescer;
+import com.atomgraph.server.provider.VersionRegistryProvider;
+import com.atomgraph.server.provider.MetricsRegistryProvider;
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.metrics.SlowQueryLog;
+import com.atomgraph.server.provider.SlowQueryLogProvider;
+import com.atomgraph.server.provider.ExistenceCheckerProvider;
+import com.atomgraph.server.provider.IngestExecutorProvider;
+import com.atomgraph.server.provider.GraphStreamerProvider;
+import com.atomgraph.server.provider.TextIndexProvider;
+import com.atomgraph.server.provider.QueryOptimizerProvider;
+import com.atomgraph.server.provider.HeaderCacheProvider;
+import com.atomgraph.server.provider.UpdatePlanCacheProvider;
+import com.atomgraph.server.provider.SitemapRegistryProvider;
+import com.atomgraph.server.util.Sitemap;
+import com.atomgraph.server.util.SitemapCache;
+import com.atomgraph.server.util.SitemapLoader;
+import com.atomgraph.server.util.SitemapRegistry;
+import com.atomgraph.server.util.UpdateQueue;
+import com.atomgraph.server.util.SPARQLVersionPoller;
+import com.atomgraph.server.util.VersionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spinrdf.arq.ARQFactory;
@@ -72,6 +105,11 @@ import com.sun.jersey.api.client.config.DefaultClientConfig;
 import java.util.List;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
 import org.apache.jena.reasoner.Reasoner;
 import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
 import org.apache.jena.reasoner.rulesys.Rule;
@@ -90,6 +128,24 @@ public class Application extends com.atomgraph.core.Application
     private final String ontologyURI;
     private final OntModelSpec ontModelSpec;
     private final boolean cacheSitemap;
+    private final boolean watchSitemap;
+    private final boolean sitemapReload;
+    private final String sitemapCacheDir;
+    private final Map<String, String> applications;
+    private final int maxApplications;
+    private final long maxSitemapTriples;
+    private final InsertDataCoalescer insertDataCoalescer;
+    private final UpdateQueue updateQueue;
+    private final VersionRegistry versionRegistry;
+    private final MetricsRegistry metricsRegistry;
+    private final SlowQueryLog slowQueryLog;
+    private final HeaderCache headerCache;
+    private final UpdatePlanCache updatePlanCache = new UpdatePlanCache();
+    private final ExistenceChecker existenceChecker;
+    private final IngestExecutor ingestExecutor = new IngestExecutor(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 4);
+    private final GraphStreamer graphStreamer;
+    private final TextIndex textIndex;
+    private final QueryOptimizer queryOptimizer;
     
     /**
      * Initializes root resource classes and provider singletons
@@ -109,7 +165,8 @@ public class Application extends com.atomgraph.core.Application
             getFileManager(new LocationMapper(servletConfig.getInitParameter(AP.locationMapping.getURI()) != null ? servletConfig.getInitParameter(AP.locationMapping.getURI()) : null)),
             servletConfig.getInitParameter(LDT.ontology.getURI()) != null ? servletConfig.getInitParameter(LDT.ontology.getURI()) : null,
             servletConfig.getInitParameter(AP.sitemapRules.getURI()) != null ? servletConfig.getInitParameter(AP.sitemapRules.getURI()) : null,
-            servletConfig.getInitParameter(AP.cacheSitemap.getURI()) != null ? Boolean.valueOf(servletConfig.getInitParameter(AP.cacheSitemap.getURI())) : true
+            servletConfig.getInitParameter(AP.cacheSitemap.getURI()) != null ? Boolean.valueOf(servletConfig.getInitParameter(AP.cacheSitemap.getURI())) : true,
+            ApplicationConfig.fromServletConfig(servletConfig)
         );       
     }
     
@@ -117,10 +174,22 @@ public class Application extends com.atomgraph.core.Application
             final String authUser, final String authPwd,
             final MediaTypes mediaTypes, final Client client, final Integer maxGetRequestSize, final boolean preemptiveAuth,
             final FileManager fileManager, final String ontologyURI, final String rulesString, boolean cacheSitemap)
+    {
+        this(dataset, endpointURI, graphStoreURI, authUser, authPwd,
+                mediaTypes, client, maxGetRequestSize, preemptiveAuth,
+                fileManager, ontologyURI, rulesString, cacheSitemap, new ApplicationConfig());
+    }
+    
+    public Application(final Dataset dataset, final String endpointURI, final String graphStoreURI,
+            final String authUser, final String authPwd,
+            final MediaTypes mediaTypes, final Client client, final Integer maxGetRequestSize, final boolean preemptiveAuth,
+            final FileManager fileManager, final String ontologyURI, final String rulesString, boolean cacheSitemap,
+            final ApplicationConfig config)
     {
         super(dataset, endpointURI, graphStoreURI, authUser, authPwd,
                 mediaTypes, client, maxGetRequestSize, preemptiveAuth);
         if (fileManager == null) throw new IllegalArgumentException("FileManager be null");
+        if (config == null) throw new IllegalArgumentException("ApplicationConfig cannot be null");
         
         if (ontologyURI == null)
         {
@@ -135,6 +204,84 @@ public class Application extends com.atomgraph.core.Application
         
         this.ontologyURI = ontologyURI;
         this.cacheSitemap = cacheSitemap;
+        this.watchSitemap = config.isWatchSitemap();
+        this.sitemapReload = config.isSitemapReload();
+        this.sitemapCacheDir = config.getSitemapCacheDir();
+        this.applications = config.getApplications();
+        this.maxApplications = config.getMaxApplications() != null ? config.getMaxApplications() : 16;
+        this.maxSitemapTriples = config.getMaxSitemapTriples() != null ? config.getMaxSitemapTriples() : Long.MAX_VALUE;
+        
+        // concurrent INSERT DATA requests are coalesced only if the batch window is configured
+        if (config.getInsertDataWindow() != null)
+        {
+            this.insertDataCoalescer = new InsertDataCoalescer(config.getInsertDataWindow(), config.getInsertDataBatchSize() != null ? config.getInsertDataBatchSize() : Integer.MAX_VALUE);
+            if (log.isDebugEnabled()) log.debug("Coalescing INSERT DATA requests within {} ms window", config.getInsertDataWindow());
+        }
+        else this.insertDataCoalescer = null;
+        
+        // asynchronous writes are only available if the queue size is configured
+        if (config.getUpdateQueueSize() != null) this.updateQueue = new UpdateQueue(config.getUpdateQueueSize(), Runtime.getRuntime().availableProcessors());
+        else this.updateQueue = null;
+        
+        // version-based entity tags are only valid if all writes go through this application, or are detected by polling
+        if (config.isTrackVersions())
+        {
+            this.versionRegistry = new VersionRegistry();
+            if (config.getVersionPollQuery() != null)
+            {
+                Query pollQuery = QueryFactory.create(config.getVersionPollQuery());
+                VersionRegistry.Poller poller = dataset != null ? new SPARQLVersionPoller(dataset, pollQuery) : new SPARQLVersionPoller(endpointURI, pollQuery, authUser, authPwd);
+                long interval = config.getVersionPollInterval() != null ? config.getVersionPollInterval() : 10000;
+                versionRegistry.startPolling(poller, interval);
+                if (log.isDebugEnabled()) log.debug("Polling for external writes every {} ms", interval);
+            }
+        }
+        else this.versionRegistry = null;
+        
+        this.metricsRegistry = config.getMetricsRegistry(); // null disables metrics
+        
+        if (config.getSlowQueryThreshold() != null) this.slowQueryLog = new SlowQueryLog(config.getSlowQueryThreshold(), config.getSlowQueryLogSize() != null ? config.getSlowQueryLogSize() : 1000);
+        else this.slowQueryLog = null;
+
+        this.headerCache = new HeaderCache(config.isRulesHeader());
+        
+        // writes check existence with ASK/HEAD instead of retrieving the current representation
+        if (dataset != null) this.existenceChecker = new ExistenceChecker(dataset);
+        else if (endpointURI != null) this.existenceChecker = new ExistenceChecker(endpointURI, graphStoreURI, client, authUser, authPwd);
+        else this.existenceChecker = null;
+
+        // if enabled, named graphs are streamed from the local dataset instead of being loaded into a Model. Remote graphs
+        // are always read through the Graph Store client
+        if (config.isStreamGraphs() && dataset != null) this.graphStreamer = new GraphStreamer(dataset);
+        else this.graphStreamer = null;
+
+        // search arguments are resolved against the text index only if indexed properties are configured
+        if (config.getTextIndexProperties() != null && (dataset != null || endpointURI != null))
+        {
+            this.textIndex = new TextIndex(config.getTextIndexProperties());
+            final QueryExecution rebuildExecution = dataset != null ? QueryExecutionFactory.create(textIndex.getRebuildQuery(), dataset) :
+                    createServiceRequest(endpointURI, textIndex.getRebuildQuery(), authUser, authPwd);
+            Thread rebuild = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        textIndex.rebuild(rebuildExecution);
+                    }
+                    catch (RuntimeException ex)
+                    {
+                        if (log.isErrorEnabled()) log.error("Text index rebuild failed", ex);
+                    }
+                }
+            }, "text-index-rebuild");
+            rebuild.setDaemon(true);
+            rebuild.start();
+        }
+        else this.textIndex = null;
+        
+        this.queryOptimizer = config.isOptimizeQueries() ? new QueryOptimizer() : null;
 
         List<Rule> rules = Rule.parseRules(rulesString);
         OntModelSpec rulesSpec = new OntModelSpec(OntModelSpec.OWL_MEM);
@@ -177,9 +324,26 @@ public class Application extends com.atomgraph.core.Application
 
         singletons.add(new ApplicationProvider());
         //singletons.add(new ServiceProvider(getService()));
-        singletons.add(new OntologyProvider(OntDocumentManager.getInstance(), getOntologyURI(), getOntModelSpec(), true));
+        SitemapCache sitemapCache = getSitemapCacheDir() != null ? new SitemapCache(new File(getSitemapCacheDir()), getOntModelSpec()) : null;
+        SitemapLoader sitemapLoader = new SitemapLoader(OntDocumentManager.getInstance(), getOntologyURI(), getOntModelSpec(), sitemapCache);
+        SitemapRegistry sitemapRegistry = new SitemapRegistry(sitemapLoader, getApplications(), sitemapCache, getMaxApplications(), getMaxSitemapTriples(), isSitemapReload());
+        initSitemapRegistry(sitemapRegistry);
+        singletons.add(new OntologyProvider(sitemapRegistry));
+        singletons.add(new SitemapRegistryProvider(sitemapRegistry));
         singletons.add(new TemplateProvider());
         singletons.add(new TemplateCallProvider());
+        singletons.add(new InsertDataCoalescerProvider(getInsertDataCoalescer()));
+        singletons.add(new UpdateQueueProvider(getUpdateQueue()));
+        singletons.add(new VersionRegistryProvider(getVersionRegistry()));
+        singletons.add(new MetricsRegistryProvider(getMetricsRegistry()));
+        singletons.add(new SlowQueryLogProvider(getSlowQueryLog()));
+        singletons.add(new HeaderCacheProvider(getHeaderCache()));
+        singletons.add(new UpdatePlanCacheProvider(getUpdatePlanCache()));
+        singletons.add(new ExistenceCheckerProvider(getExistenceChecker()));
+        singletons.add(new IngestExecutorProvider(getIngestExecutor()));
+        singletons.add(new GraphStreamerProvider(getGraphStreamer()));
+        singletons.add(new TextIndexProvider(getTextIndex()));
+        singletons.add(new QueryOptimizerProvider(getQueryOptimizer()));
         singletons.add(new SPARQLEndpointProvider());
         singletons.add(new GraphStoreProvider());
         singletons.add(new DatasetProvider(getDataset()));
@@ -206,6 +370,53 @@ public class Application extends com.atomgraph.core.Application
         if (log.isTraceEnabled()) log.trace("Application.init() with Classes: {} and Singletons: {}", classes, singletons);
     }
     
+    /**
+     * Invalidates template versions after sitemap reloads, and starts watching the sitemap files if configured.
+     * 
+     * @param sitemapRegistry sitemaps of the hosted applications
+     */
+    public void initSitemapRegistry(SitemapRegistry sitemapRegistry)
+    {
+        if (getVersionRegistry() != null)
+            sitemapRegistry.addListener(new SitemapLoader.Listener()
+            {
+                @Override
+                public void loaded(Sitemap sitemap)
+                {
+                    getVersionRegistry().bumpTemplate(null);
+                }
+            });
+
+        if (isWatchSitemap())
+            try
+            {
+                sitemapRegistry.watch(1000);
+            }
+            catch (IOException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Could not watch sitemap files, reloading only on request", ex);
+            }
+    }
+    
+    /**
+     * Instantiates metrics registry implementation.
+     * 
+     * @param className name of a {@link MetricsRegistry} class with a no-argument constructor
+     * @return registry instance
+     */
+    public static MetricsRegistry getMetricsRegistry(String className)
+    {
+        try
+        {
+            return (MetricsRegistry)Class.forName(className).newInstance();
+        }
+        catch (ClassNotFoundException | InstantiationException | IllegalAccessException | ClassCastException ex)
+        {
+            if (log.isErrorEnabled()) log.error("Metrics registry (" + AP.metricsRegistry.getURI() + ") class '{}' could not be instantiated", className, ex);
+            throw new ConfigurationException(AP.metricsRegistry);
+        }
+    }
+    
     public static FileManager getFileManager(LocationMapper locationMapper)
     {
         FileManager fileManager = FileManager.get();
@@ -253,4 +464,111 @@ public class Application extends com.atomgraph.core.Application
         return cacheSitemap;
     }
     
+    public final boolean isWatchSitemap()
+    {
+        return watchSitemap;
+    }
+    
+    public final boolean isSitemapReload()
+    {
+        return sitemapReload;
+    }
+    
+    /**
+     * Returns directory of persisted sitemap snapshots.
+     * 
+     * @return directory path or null if snapshots are disabled
+     */
+    public final String getSitemapCacheDir()
+    {
+        return sitemapCacheDir;
+    }
+    
+    /**
+     * Returns sitemap ontology URIs of the hosted applications.
+     * 
+     * @return ontology URIs by base URI or host
+     */
+    public final Map<String, String> getApplications()
+    {
+        return applications;
+    }
+    
+    public final int getMaxApplications()
+    {
+        return maxApplications;
+    }
+    
+    public final long getMaxSitemapTriples()
+    {
+        return maxSitemapTriples;
+    }
+    
+    public InsertDataCoalescer getInsertDataCoalescer()
+    {
+        return insertDataCoalescer;
+    }
+    
+    public UpdateQueue getUpdateQueue()
+    {
+        return updateQueue;
+    }
+    
+    public VersionRegistry getVersionRegistry()
+    {
+        return versionRegistry;
+    }
+    
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return metricsRegistry;
+    }
+    
+    public SlowQueryLog getSlowQueryLog()
+    {
+        return slowQueryLog;
+    }
+    
+    public HeaderCache getHeaderCache()
+    {
+        return headerCache;
+    }
+    
+    public UpdatePlanCache getUpdatePlanCache()
+    {
+        return updatePlanCache;
+    }
+    
+    public ExistenceChecker getExistenceChecker()
+    {
+        return existenceChecker;
+    }
+    
+    public IngestExecutor getIngestExecutor()
+    {
+        return ingestExecutor;
+    }
+    
+    public GraphStreamer getGraphStreamer()
+    {
+        return graphStreamer;
+    }
+    
+    public TextIndex getTextIndex()
+    {
+        return textIndex;
+    }
+    
+    public QueryOptimizer getQueryOptimizer()
+    {
+        return queryOptimizer;
+    }
+    
+    private static QueryExecution createServiceRequest(String endpointURI, Query query, String authUser, String authPwd)
+    {
+        QueryEngineHTTP qex = QueryExecutionFactory.createServiceRequest(endpointURI, query);
+        if (authUser != null && authPwd != null) qex.setBasicAuthentication(authUser, authPwd.toCharArray());
+        return qex;
+    }
+    
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server;
+
+import com.atomgraph.processor.vocabulary.AP;
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.util.SitemapRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+
+/**
+ * Optional processor settings.
+ * Each setting has a default that disables the feature or keeps the original behaviour, so new settings can be added
+ * without changing the {@link Application} constructors.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ApplicationConfig
+{
+
+    private boolean rulesHeader = true;
+    private boolean watchSitemap = false;
+    private boolean sitemapReload = false;
+    private String sitemapCacheDir;
+    private Map<String, String> applications = Collections.emptyMap();
+    private Integer maxApplications;
+    private Long maxSitemapTriples;
+    private Long insertDataWindow;
+    private Integer insertDataBatchSize;
+    private Integer updateQueueSize;
+    private boolean trackVersions = false;
+    private String versionPollQuery;
+    private Long versionPollInterval;
+    private MetricsRegistry metricsRegistry;
+    private Long slowQueryThreshold;
+    private Integer slowQueryLogSize;
+    private List<String> textIndexProperties;
+    private boolean optimizeQueries = false;
+    private boolean streamGraphs = false;
+
+    /**
+     * Reads settings from servlet init parameters, named by the URIs of the configuration properties.
+     *
+     * @param servletConfig servlet config
+     * @return settings
+     */
+    public static ApplicationConfig fromServletConfig(ServletConfig servletConfig)
+    {
+        if (servletConfig == null) throw new IllegalArgumentException("ServletConfig cannot be null");
+
+        ApplicationConfig config = new ApplicationConfig();
+        if (servletConfig.getInitParameter(AP.rulesHeader.getURI()) != null) config.setRulesHeader(Boolean.valueOf(servletConfig.getInitParameter(AP.rulesHeader.getURI())));
+        if (servletConfig.getInitParameter(AP.watchSitemap.getURI()) != null) config.setWatchSitemap(Boolean.valueOf(servletConfig.getInitParameter(AP.watchSitemap.getURI())));
+        if (servletConfig.getInitParameter(AP.sitemapReload.getURI()) != null) config.setSitemapReload(Boolean.valueOf(servletConfig.getInitParameter(AP.sitemapReload.getURI())));
+        config.setSitemapCacheDir(servletConfig.getInitParameter(AP.sitemapCacheDir.getURI()));
+        if (servletConfig.getInitParameter(AP.applications.getURI()) != null) config.setApplications(SitemapRegistry.parseApplications(servletConfig.getInitParameter(AP.applications.getURI())));
+        if (servletConfig.getInitParameter(AP.maxApplications.getURI()) != null) config.setMaxApplications(Integer.valueOf(servletConfig.getInitParameter(AP.maxApplications.getURI())));
+        if (servletConfig.getInitParameter(AP.maxSitemapTriples.getURI()) != null) config.setMaxSitemapTriples(Long.valueOf(servletConfig.getInitParameter(AP.maxSitemapTriples.getURI())));
+        if (servletConfig.getInitParameter(AP.insertDataWindow.getURI()) != null) config.setInsertDataWindow(Long.valueOf(servletConfig.getInitParameter(AP.insertDataWindow.getURI())));
+        if (servletConfig.getInitParameter(AP.insertDataBatchSize.getURI()) != null) config.setInsertDataBatchSize(Integer.valueOf(servletConfig.getInitParameter(AP.insertDataBatchSize.getURI())));
+        if (servletConfig.getInitParameter(AP.updateQueueSize.getURI()) != null) config.setUpdateQueueSize(Integer.valueOf(servletConfig.getInitParameter(AP.updateQueueSize.getURI())));
+        if (servletConfig.getInitParameter(AP.trackVersions.getURI()) != null) config.setTrackVersions(Boolean.valueOf(servletConfig.getInitParameter(AP.trackVersions.getURI())));
+        config.setVersionPollQuery(servletConfig.getInitParameter(AP.versionPollQuery.getURI()));
+        if (servletConfig.getInitParameter(AP.versionPollInterval.getURI()) != null) config.setVersionPollInterval(Long.valueOf(servletConfig.getInitParameter(AP.versionPollInterval.getURI())));
+        if (servletConfig.getInitParameter(AP.metricsRegistry.getURI()) != null) config.setMetricsRegistry(Application.getMetricsRegistry(servletConfig.getInitParameter(AP.metricsRegistry.getURI())));
+        if (servletConfig.getInitParameter(AP.slowQueryThreshold.getURI()) != null) config.setSlowQueryThreshold(Long.valueOf(servletConfig.getInitParameter(AP.slowQueryThreshold.getURI())));
+        if (servletConfig.getInitParameter(AP.slowQueryLogSize.getURI()) != null) config.setSlowQueryLogSize(Integer.valueOf(servletConfig.getInitParameter(AP.slowQueryLogSize.getURI())));
+        if (servletConfig.getInitParameter(AP.textIndexProperties.getURI()) != null) config.setTextIndexProperties(Arrays.asList(servletConfig.getInitParameter(AP.textIndexProperties.getURI()).trim().split("\\s+")));
+        if (servletConfig.getInitParameter(AP.optimizeQueries.getURI()) != null) config.setOptimizeQueries(Boolean.valueOf(servletConfig.getInitParameter(AP.optimizeQueries.getURI())));
+        if (servletConfig.getInitParameter(AP.streamGraphs.getURI()) != null) config.setStreamGraphs(Boolean.valueOf(servletConfig.getInitParameter(AP.streamGraphs.getURI())));
+        return config;
+    }
+
+    public boolean isRulesHeader()
+    {
+        return rulesHeader;
+    }
+
+    public ApplicationConfig setRulesHeader(boolean rulesHeader)
+    {
+        this.rulesHeader = rulesHeader;
+        return this;
+    }
+
+    public boolean isWatchSitemap()
+    {
+        return watchSitemap;
+    }
+
+    public ApplicationConfig setWatchSitemap(boolean watchSitemap)
+    {
+        this.watchSitemap = watchSitemap;
+        return this;
+    }
+
+    public boolean isSitemapReload()
+    {
+        return sitemapReload;
+    }
+
+    public ApplicationConfig setSitemapReload(boolean sitemapReload)
+    {
+        this.sitemapReload = sitemapReload;
+        return this;
+    }
+
+    public String getSitemapCacheDir()
+    {
+        return sitemapCacheDir;
+    }
+
+    public ApplicationConfig setSitemapCacheDir(String sitemapCacheDir)
+    {
+        this.sitemapCacheDir = sitemapCacheDir;
+        return this;
+    }
+
+    public Map<String, String> getApplications()
+    {
+        return applications;
+    }
+
+    public ApplicationConfig setApplications(Map<String, String> applications)
+    {
+        if (applications == null) throw new IllegalArgumentException("Application Map cannot be null");
+        this.applications = applications;
+        return this;
+    }
+
+    public Integer getMaxApplications()
+    {
+        return maxApplications;
+    }
+
+    public ApplicationConfig setMaxApplications(Integer maxApplications)
+    {
+        this.maxApplications = maxApplications;
+        return this;
+    }
+
+    public Long getMaxSitemapTriples()
+    {
+        return maxSitemapTriples;
+    }
+
+    public ApplicationConfig setMaxSitemapTriples(Long maxSitemapTriples)
+    {
+        this.maxSitemapTriples = maxSitemapTriples;
+        return this;
+    }
+
+    public Long getInsertDataWindow()
+    {
+        return insertDataWindow;
+    }
+
+    public ApplicationConfig setInsertDataWindow(Long insertDataWindow)
+    {
+        this.insertDataWindow = insertDataWindow;
+        return this;
+    }
+
+    public Integer getInsertDataBatchSize()
+    {
+        return insertDataBatchSize;
+    }
+
+    public ApplicationConfig setInsertDataBatchSize(Integer insertDataBatchSize)
+    {
+        this.insertDataBatchSize = insertDataBatchSize;
+        return this;
+    }
+
+    public Integer getUpdateQueueSize()
+    {
+        return updateQueueSize;
+    }
+
+    public ApplicationConfig setUpdateQueueSize(Integer updateQueueSize)
+    {
+        this.updateQueueSize = updateQueueSize;
+        return this;
+    }
+
+    public boolean isTrackVersions()
+    {
+        return trackVersions;
+    }
+
+    public ApplicationConfig setTrackVersions(boolean trackVersions)
+    {
+        this.trackVersions = trackVersions;
+        return this;
+    }
+
+    public String getVersionPollQuery()
+    {
+        return versionPollQuery;
+    }
+
+    public ApplicationConfig setVersionPollQuery(String versionPollQuery)
+    {
+        this.versionPollQuery = versionPollQuery;
+        return this;
+    }
+
+    public Long getVersionPollInterval()
+    {
+        return versionPollInterval;
+    }
+
+    public ApplicationConfig setVersionPollInterval(Long versionPollInterval)
+    {
+        this.versionPollInterval = versionPollInterval;
+        return this;
+    }
+
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return metricsRegistry;
+    }
+
+    public ApplicationConfig setMetricsRegistry(MetricsRegistry metricsRegistry)
+    {
+        this.metricsRegistry = metricsRegistry;
+        return this;
+    }
+
+    public Long getSlowQueryThreshold()
+    {
+        return slowQueryThreshold;
+    }
+
+    public ApplicationConfig setSlowQueryThreshold(Long slowQueryThreshold)
+    {
+        this.slowQueryThreshold = slowQueryThreshold;
+        return this;
+    }
+
+    public Integer getSlowQueryLogSize()
+    {
+        return slowQueryLogSize;
+    }
+
+    public ApplicationConfig setSlowQueryLogSize(Integer slowQueryLogSize)
+    {
+        this.slowQueryLogSize = slowQueryLogSize;
+        return this;
+    }
+
+    public List<String> getTextIndexProperties()
+    {
+        return textIndexProperties;
+    }
+
+    public ApplicationConfig setTextIndexProperties(List<String> textIndexProperties)
+    {
+        this.textIndexProperties = textIndexProperties;
+        return this;
+    }
+
+    public boolean isOptimizeQueries()
+    {
+        return optimizeQueries;
+    }
+
+    public ApplicationConfig setOptimizeQueries(boolean optimizeQueries)
+    {
+        this.optimizeQueries = optimizeQueries;
+        return this;
+    }
+
+    public boolean isStreamGraphs()
+    {
+        return streamGraphs;
+    }
+
+    public ApplicationConfig setStreamGraphs(boolean streamGraphs)
+    {
+        this.streamGraphs = streamGraphs;
+        return this;
+    }
+
+}
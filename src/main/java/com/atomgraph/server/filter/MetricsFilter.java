@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.filter;
+
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.metrics.QueryProfile;
+import com.atomgraph.server.metrics.SlowQueryLog;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+
+/**
+ * A filter that records request latency and response serialization time in the metrics registry, and finished requests
+ * in the slow-query log.
+ * Has to be registered both as request filter and as the last response filter, so that serialization time does not
+ * include other filters. Does nothing if both metrics and the slow-query log are disabled.
+ * 
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.metrics.MetricsRegistry
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter
+{
+
+    public static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+    
+    @Context Providers providers;
+    @Context UriInfo uriInfo;
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request)
+    {
+        if (getMetricsRegistry() != null || getSlowQueryLog() != null) request.getProperties().put(START_PROPERTY, System.nanoTime());
+        
+        return request;
+    }
+    
+    @Override
+    public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response)
+    {
+        final MetricsRegistry metrics = getMetricsRegistry();
+        final SlowQueryLog slowQueryLog = getSlowQueryLog();
+        if (metrics == null && slowQueryLog == null) return response;
+
+        final Long start = (Long)request.getProperties().get(START_PROPERTY);
+        final com.atomgraph.server.model.Resource resource = getResource();
+        final String templateURI = resource != null ? resource.getTemplateCall().getTemplate().getURI() : null;
+        final QueryProfile profile = resource instanceof ResourceBase ? ((ResourceBase)resource).getQueryProfile() : null;
+        final ContainerResponseWriter writer = response.getContainerResponseWriter();
+        final long filtered = System.nanoTime();
+        
+        response.setContainerResponseWriter(new ContainerResponseWriter()
+        {
+            
+            @Override
+            public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse containerResponse) throws IOException
+            {
+                return writer.writeStatusAndHeaders(contentLength, containerResponse);
+            }
+
+            @Override
+            public void finish() throws IOException
+            {
+                writer.finish();
+                
+                long finished = System.nanoTime();
+                if (metrics != null)
+                {
+                    if (response.getEntity() != null)
+                        metrics.record(MetricsRegistry.STAGE_SERIALIZATION, templateURI, request.getMethod(), response.getStatus(), finished - filtered);
+                    if (start != null)
+                        metrics.record(MetricsRegistry.STAGE_REQUEST, templateURI, request.getMethod(), response.getStatus(), finished - start);
+                }
+                
+                if (slowQueryLog != null && profile != null && start != null)
+                    slowQueryLog.record(new SlowQueryLog.Entry(templateURI, request.getMethod(), request.getRequestUri().toString(),
+                        response.getStatus(), profile, response.getEntity() != null ? finished - filtered : 0, finished - start));
+            }
+            
+        });
+        
+        return response;
+    }
+    
+    public com.atomgraph.server.model.Resource getResource()
+    {
+        if (!getUriInfo().getMatchedResources().isEmpty() &&
+                getUriInfo().getMatchedResources().get(0) instanceof com.atomgraph.server.model.Resource)
+            return (com.atomgraph.server.model.Resource)getUriInfo().getMatchedResources().get(0);
+        
+        return null;
+    }
+    
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return getProviders().getContextResolver(MetricsRegistry.class, null).getContext(MetricsRegistry.class);
+    }
+    
+    public SlowQueryLog getSlowQueryLog()
+    {
+        return getProviders().getContextResolver(SlowQueryLog.class, null).getContext(SlowQueryLog.class);
+    }
+    
+    public Providers getProviders()
+    {
+        return providers;
+    }
+ 
+    public UriInfo getUriInfo()
+    {
+        return uriInfo;
+    }
+    
+}
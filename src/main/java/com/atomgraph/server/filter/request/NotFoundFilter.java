@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.filter.request;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.server.provider.OntologyProvider;
+import com.atomgraph.server.util.ErrorBodyCache;
+import com.atomgraph.server.util.SitemapRegistry;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import java.net.URI;
+import java.util.List;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A request filter that rejects paths that no sitemap template matches, before the resource is constructed.
+ * Uses the template index of the current sitemap snapshot and answers with a cached, pre-serialized
+ * <code>404 Not Found</code> body. Requests are passed on unchanged if the sitemap is not materialized, or if the
+ * negotiated media type has no RDF writer, so that the exception mappers produce the response as usual.
+ * Has to be registered as a request filter.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.util.TemplateIndex
+ */
+@Provider
+public class NotFoundFilter implements ContainerRequestFilter
+{
+
+    private static final Logger log = LoggerFactory.getLogger(NotFoundFilter.class);
+
+    public static final String MESSAGE = "Resource has not matched any template";
+    public static final Resource NOT_FOUND = ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#NotFound");
+
+    private volatile List<Variant> variants;
+
+    @Context Providers providers;
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request)
+    {
+        SitemapRegistry registry = getSitemapRegistry();
+        if (registry == null) return request;
+
+        URI base = request.getBaseUri(), uri = request.getAbsolutePath();
+        if (base.relativize(uri).equals(uri)) return request; // left to the matcher to report
+
+        String path = "/" + base.relativize(uri);
+        // the request keeps the snapshot that was checked here
+        if (OntologyProvider.getSitemap(request.getProperties(), registry.getLoader(base)).getTemplateIndex().matches(path)) return request;
+
+        Variant variant = request.selectVariant(getVariants());
+        if (variant == null) return request;
+
+        byte[] body = ErrorBodyCache.get().getBody(Response.Status.NOT_FOUND, NOT_FOUND, MESSAGE, variant.getMediaType());
+        if (body == null) return request;
+
+        if (log.isDebugEnabled()) log.debug("Path '{}' has not matched any template, rejecting request", path);
+        throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).
+                entity(body).
+                type(variant.getMediaType()).
+                header(HttpHeaders.VARY, HttpHeaders.ACCEPT).
+                build());
+    }
+
+    public List<Variant> getVariants()
+    {
+        if (variants == null)
+        {
+            List<MediaType> mediaTypes = getMediaTypes().getWritable(Model.class);
+            variants = Variant.mediaTypes(mediaTypes.toArray(new MediaType[mediaTypes.size()])).add().build();
+        }
+
+        return variants;
+    }
+
+    public MediaTypes getMediaTypes()
+    {
+        ContextResolver<MediaTypes> cr = getProviders().getContextResolver(MediaTypes.class, null);
+        return cr.getContext(MediaTypes.class);
+    }
+
+    public SitemapRegistry getSitemapRegistry()
+    {
+        ContextResolver<SitemapRegistry> cr = getProviders().getContextResolver(SitemapRegistry.class, null);
+        return cr != null ? cr.getContext(SitemapRegistry.class) : null;
+    }
+
+    public Providers getProviders()
+    {
+        return providers;
+    }
+
+}
@@ -28,6 +28,7 @@ import com.atomgraph.processor.util.TemplateCall;
 import com.atomgraph.processor.vocabulary.C;
 import com.atomgraph.processor.vocabulary.DH;
 import com.atomgraph.server.exception.OntClassNotFoundException;
+import com.atomgraph.server.metrics.MetricsRegistry;
 import com.atomgraph.server.vocabulary.XHV;
 import javax.ws.rs.core.Context;
 import static javax.ws.rs.core.Response.Status.CREATED;
@@ -68,6 +69,9 @@ public class HypermediaFilter implements ContainerResponseFilter
         
         TemplateCall templateCall = getTemplateCall();
         if (templateCall == null) return response;
+        
+        MetricsRegistry metrics = getMetricsRegistry();
+        long start = metrics != null ? System.nanoTime() : 0;
             
         Resource state = templateCall.build();
         Resource absolutePath = state.getModel().createResource(request.getAbsolutePath().toString());
@@ -99,6 +103,7 @@ public class HypermediaFilter implements ContainerResponseFilter
         if (log.isDebugEnabled()) log.debug("Added Number of HATEOAS statements added: {}", state.getModel().size());
         response.setEntity(state.getModel().add((Model)response.getEntity()));
         
+        if (metrics != null) metrics.record(MetricsRegistry.STAGE_HYPERMEDIA, templateCall.getTemplate().getURI(), request.getMethod(), response.getStatus(), System.nanoTime() - start);
         return response;
     }
         
@@ -151,6 +156,11 @@ public class HypermediaFilter implements ContainerResponseFilter
         return null;
     }
     
+    public MetricsRegistry getMetricsRegistry()
+    {
+	return getProviders().getContextResolver(MetricsRegistry.class, null).getContext(MetricsRegistry.class);
+    }
+    
     public Providers getProviders()
     {
         return providers;
@@ -20,12 +20,18 @@ import org.apache.jena.ontology.Ontology;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
 import org.apache.jena.vocabulary.DCTerms;
 import org.apache.jena.vocabulary.RDF;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
@@ -35,7 +41,10 @@ import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
 import javax.ws.rs.ext.Providers;
 import com.atomgraph.core.MediaTypes;
+import com.atomgraph.processor.util.RulePrinter;
 import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.util.ErrorBodyCache;
+import com.atomgraph.server.util.HeaderCache;
 import com.atomgraph.server.vocabulary.HTTP;
 
 /**
@@ -51,6 +60,8 @@ abstract public class ExceptionMapperBase
     @Context private Providers providers;
     @Context private UriInfo uriInfo;
     
+    private final ConcurrentMap<MediaTypes, List<Variant>> variantLists = new ConcurrentHashMap<>();
+    
     public Resource toResource(Exception ex, Response.StatusType status, Resource statusResource)
     {
         if (ex == null) throw new IllegalArgumentException("Exception cannot be null");
@@ -68,6 +79,34 @@ abstract public class ExceptionMapperBase
         return resource;
     }
     
+    /**
+     * Builds error response. Bodies of RDF media types are serialized once and taken from {@link ErrorBodyCache}.
+     * 
+     * @param ex exception
+     * @param status response status
+     * @param statusResource status code resource
+     * @return response
+     */
+    public Response getResponse(Exception ex, Response.StatusType status, Resource statusResource)
+    {
+        if (ex == null) throw new IllegalArgumentException("Exception cannot be null");
+        if (status == null) throw new IllegalArgumentException("Response.Status cannot be null");
+
+        Variant variant = getVariant();
+        byte[] body = variant != null ? ErrorBodyCache.get().getBody(status, statusResource, ex.getMessage(), variant.getMediaType()) : null;
+        if (body == null)
+            return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
+                    getResponseBuilder(toResource(ex, status, statusResource).getModel(), getVariants()).
+                    status(status.getStatusCode()).
+                    build();
+        
+        return Response.status(status.getStatusCode()).
+                entity(body).
+                type(variant.getMediaType()).
+                header(HttpHeaders.VARY, HttpHeaders.ACCEPT).
+                build();
+    }
+    
     public MediaTypes getMediaTypes()
     {
         ContextResolver<MediaTypes> cr = getProviders().getContextResolver(MediaTypes.class, null);
@@ -79,9 +118,23 @@ abstract public class ExceptionMapperBase
         return getRequest().selectVariant(getVariants());
     }
     
+    /**
+     * Returns response variants. They only depend on the media type configuration, so they are built once per
+     * {@link MediaTypes} instance.
+     * 
+     * @return variant list
+     */
     public List<Variant> getVariants()
     {
-        return getVariantListBuilder().add().build();
+        MediaTypes mediaTypes = getMediaTypes();
+        List<Variant> variants = variantLists.get(mediaTypes);
+        if (variants == null)
+        {
+            variants = Collections.unmodifiableList(getVariantListBuilder().add().build());
+            variantLists.putIfAbsent(mediaTypes, variants);
+        }
+        
+        return variants;
     }
 
     public Variant.VariantListBuilder getVariantListBuilder()
@@ -127,6 +180,27 @@ abstract public class ExceptionMapperBase
         return cr.getContext(Ontology.class);
     }
     
+    /**
+     * Returns the <pre>Link</pre> and <pre>Rules</pre> headers of the matched template.
+     * 
+     * @return response headers
+     */
+    public HeaderCache.Headers getResponseHeaders()
+    {
+        HeaderCache headerCache = getHeaderCache();
+        if (headerCache != null) return headerCache.get(getOntology(), getStateBuilder().getTemplate(), getUriInfo().getBaseUri());
+        
+        Reasoner reasoner = getOntology().getOntModel().getSpecification().getReasoner();
+        String rules = reasoner instanceof GenericRuleReasoner ? RulePrinter.print(((GenericRuleReasoner)reasoner).getRules()) : null;
+        return HeaderCache.createHeaders(getOntology(), getStateBuilder().getTemplate(), getUriInfo().getBaseUri(), rules);
+    }
+    
+    public HeaderCache getHeaderCache()
+    {
+        ContextResolver<HeaderCache> cr = getProviders().getContextResolver(HeaderCache.class, null);
+        return cr.getContext(HeaderCache.class);
+    }
+    
     public UriInfo getUriInfo()
     {
         return uriInfo;
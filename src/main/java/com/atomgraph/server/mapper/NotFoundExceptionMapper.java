@@ -31,12 +31,8 @@ public class NotFoundExceptionMapper extends ExceptionMapperBase implements Exce
     @Override
     public Response toResponse(NotFoundException ex)
     {
-        return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.NOT_FOUND,
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#NotFound")).
-                    getModel(), getVariants()).
-                status(Response.Status.NOT_FOUND).
-                build();
+        return getResponse(ex, Response.Status.NOT_FOUND,
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#NotFound"));
     }
     
 }
\ No newline at end of file
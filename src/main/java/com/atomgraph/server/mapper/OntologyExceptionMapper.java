@@ -30,12 +30,8 @@ public class OntologyExceptionMapper extends ExceptionMapperBase implements Exce
     @Override
     public Response toResponse(OntologyException ex)
     {
-        return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.INTERNAL_SERVER_ERROR,
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError")).
-                    getModel(), getVariants()).
-                status(Response.Status.INTERNAL_SERVER_ERROR).
-                build();    
+        return getResponse(ex, Response.Status.INTERNAL_SERVER_ERROR,
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError"));
     }
 
 }
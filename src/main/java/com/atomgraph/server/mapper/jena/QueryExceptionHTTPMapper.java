@@ -37,19 +37,11 @@ public class QueryExceptionHTTPMapper extends ExceptionMapperBase implements Exc
     public Response toResponse(QueryExceptionHTTP ex)
     {        
         if (ex.getResponseCode() > 0)
-            return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.fromStatusCode(ex.getResponseCode()),
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError")).
-                    getModel(), getVariants()).
-                status(ex.getResponseCode()).
-                build();
+            return getResponse(ex, Response.Status.fromStatusCode(ex.getResponseCode()),
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError"));
         else
-            return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.INTERNAL_SERVER_ERROR,
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError")).
-                    getModel(), getVariants()).
-                status(Response.Status.INTERNAL_SERVER_ERROR).
-                build();
+            return getResponse(ex, Response.Status.INTERNAL_SERVER_ERROR,
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError"));
     }
 
 }
\ No newline at end of file
@@ -34,12 +34,8 @@ public class QueryParseExceptionMapper extends ExceptionMapperBase implements Ex
     @Override
     public Response toResponse(QueryParseException ex)
     {
-        return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.INTERNAL_SERVER_ERROR,
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError")).
-                    getModel(), getVariants()).
-                status(Response.Status.INTERNAL_SERVER_ERROR).
-                build();
+        return getResponse(ex, Response.Status.INTERNAL_SERVER_ERROR,
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError"));
 
         /*
 	return Response.status(Response.Status.INTERNAL_SERVER_ERROR).
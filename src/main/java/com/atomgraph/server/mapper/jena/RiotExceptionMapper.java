@@ -31,12 +31,8 @@ public class RiotExceptionMapper extends ExceptionMapperBase implements Exceptio
     @Override
     public Response toResponse(RiotException ex)
     {
-        return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
-                getResponseBuilder(toResource(ex, Response.Status.BAD_REQUEST,
-                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#BadRequest")).
-                    getModel(), getVariants()).
-                status(Response.Status.BAD_REQUEST).
-                build();
+        return getResponse(ex, Response.Status.BAD_REQUEST,
+                ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#BadRequest"));
     }
     
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ * Values are grouped by their power of two, and every power of two is split into {@link #SUB_BUCKET_COUNT} linear
+ * sub-buckets, which bounds the relative error of percentiles to about 3% over the whole range.
+ * Values are in microseconds; values above {@link #MAX_VALUE} (about 25 days) are recorded as the maximum.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class Histogram
+{
+
+    public static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    public static final long MAX_VALUE = (1L << 41) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(getIndex(MAX_VALUE) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value)
+    {
+        if (value < 0) value = 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        while (true)
+        {
+            long current = max.get();
+            if (current >= value || max.compareAndSet(current, value)) break;
+        }
+    }
+
+    // values below SUB_BUCKET_COUNT are exact, larger ones keep their SUB_BUCKET_BITS + 1 most significant bits
+    protected static int getIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT) return (int)value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int)((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    // highest value that falls into the bucket
+    protected static long getUpperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long mantissa = SUB_BUCKET_COUNT + (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns value at the given percentile. Concurrent recording can make the result slightly inaccurate.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket containing the percentile, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long total = getCount();
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) return Math.min(getUpperBound(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+}
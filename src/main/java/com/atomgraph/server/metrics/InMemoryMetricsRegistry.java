@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics registry that keeps latency histograms in memory, for exposition by the metrics resource.
+ * Memory is proportional to the number of distinct stage/template/method/status combinations.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry
+{
+
+    private final ConcurrentMap<MetricKey, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(String stage, String templateURI, String method, int status, long nanos)
+    {
+        MetricKey key = new MetricKey(stage, templateURI, method, status);
+        Histogram histogram = histograms.get(key);
+        if (histogram == null)
+        {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null) histogram = created;
+        }
+
+        histogram.record(nanos / 1000);
+    }
+
+    @Override
+    public Map<MetricKey, Histogram> getHistograms()
+    {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.util.Objects;
+
+/**
+ * Identity of a latency histogram: processing stage, template, HTTP method and response status.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class MetricKey
+{
+
+    private final String stage;
+    private final String templateURI;
+    private final String method;
+    private final int status;
+
+    public MetricKey(String stage, String templateURI, String method, int status)
+    {
+        if (stage == null) throw new IllegalArgumentException("Stage cannot be null");
+
+        this.stage = stage;
+        this.templateURI = templateURI;
+        this.method = method;
+        this.status = status;
+    }
+
+    public String getStage()
+    {
+        return stage;
+    }
+
+    public String getTemplateURI()
+    {
+        return templateURI;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 7;
+        hash = 59 * hash + Objects.hashCode(getStage());
+        hash = 59 * hash + Objects.hashCode(getTemplateURI());
+        hash = 59 * hash + Objects.hashCode(getMethod());
+        hash = 59 * hash + getStatus();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        final MetricKey other = (MetricKey) obj;
+        return Objects.equals(getStage(), other.getStage()) && Objects.equals(getTemplateURI(), other.getTemplateURI()) &&
+                Objects.equals(getMethod(), other.getMethod()) && getStatus() == other.getStatus();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + getStage() + ", <" + getTemplateURI() + ">, " + getMethod() + ", " + getStatus() + "]";
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.util.Map;
+
+/**
+ * Registry of request processing metrics.
+ * Latencies are recorded per processing stage (e.g. template matching, SPARQL execution, serialization), tagged by the
+ * matched template, HTTP method and response status. Implementations can keep the data in memory or forward it to an
+ * external monitoring system.
+ * Metrics are disabled when no registry is configured, in which case instrumented code does not take timestamps.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see InMemoryMetricsRegistry
+ */
+public interface MetricsRegistry
+{
+
+    public static final String STAGE_MATCH = "match";
+    public static final String STAGE_TEMPLATE_CALL = "template_call";
+    public static final String STAGE_QUERY_BUILDER = "query_builder";
+    public static final String STAGE_QUERY = "query";
+    public static final String STAGE_SPARQL = "sparql";
+    public static final String STAGE_HYPERMEDIA = "hypermedia";
+    public static final String STAGE_SERIALIZATION = "serialization";
+    public static final String STAGE_REQUEST = "request";
+
+    /**
+     * Records latency of a processing stage.
+     *
+     * @param stage stage name
+     * @param templateURI URI of the matched template, or null if none
+     * @param method HTTP method, or null if not known
+     * @param status response status, or 0 if not known yet
+     * @param nanos latency in nanoseconds
+     */
+    void record(String stage, String templateURI, String method, int status, long nanos);
+
+    /**
+     * Returns latency histograms recorded so far, or an empty map if the data is not kept in this process.
+     *
+     * @return histograms by key
+     */
+    Map<MetricKey, Histogram> getHistograms();
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4).
+ * Latency histograms are exposed as summaries in seconds, with precomputed quantiles.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Exposition formats</a>
+ */
+public class PrometheusWriter
+{
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String DURATION_METRIC = "processor_stage_duration_seconds";
+    public static final double[] QUANTILES = { 0.5, 0.9, 0.99, 1 };
+
+    private final Writer writer;
+
+    public PrometheusWriter(Writer writer)
+    {
+        if (writer == null) throw new IllegalArgumentException("Writer cannot be null");
+        this.writer = writer;
+    }
+
+    public PrometheusWriter writeHistograms(Map<MetricKey, Histogram> histograms) throws IOException
+    {
+        if (histograms == null) throw new IllegalArgumentException("Histogram Map cannot be null");
+
+        writer.write("# HELP " + DURATION_METRIC + " Latency of request processing stages by template, method and status\n");
+        writer.write("# TYPE " + DURATION_METRIC + " summary\n");
+        for (Map.Entry<MetricKey, Histogram> entry : histograms.entrySet())
+        {
+            String labels = getLabels(entry.getKey());
+            Histogram histogram = entry.getValue();
+
+            for (double quantile : QUANTILES)
+                writeSample(DURATION_METRIC, labels + ",quantile=\"" + format(quantile) + "\"", histogram.getPercentile(quantile * 100) / 1000000d);
+            writeSample(DURATION_METRIC + "_sum", labels, histogram.getSum() / 1000000d);
+            writeSample(DURATION_METRIC + "_count", labels, histogram.getCount());
+        }
+
+        return this;
+    }
+
+    public PrometheusWriter writeGauge(String name, String help, double value) throws IOException
+    {
+        if (name == null) throw new IllegalArgumentException("Name cannot be null");
+
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " gauge\n");
+        writeSample(name, null, value);
+        return this;
+    }
+
+    public PrometheusWriter writeGauges(String name, String help, String label, Map<String, ? extends Number> values) throws IOException
+    {
+        if (name == null) throw new IllegalArgumentException("Name cannot be null");
+        if (label == null) throw new IllegalArgumentException("Label cannot be null");
+        if (values == null) throw new IllegalArgumentException("Value Map cannot be null");
+
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " gauge\n");
+        for (Map.Entry<String, ? extends Number> entry : values.entrySet())
+            writeSample(name, label + "=\"" + escape(entry.getKey()) + "\"", entry.getValue().doubleValue());
+        return this;
+    }
+
+    protected void writeSample(String name, String labels, double value) throws IOException
+    {
+        writer.write(name);
+        if (labels != null) writer.write("{" + labels + "}");
+        writer.write(" ");
+        writer.write(format(value));
+        writer.write("\n");
+    }
+
+    protected String getLabels(MetricKey key)
+    {
+        StringBuilder labels = new StringBuilder("stage=\"").append(escape(key.getStage())).append("\"");
+        if (key.getTemplateURI() != null) labels.append(",template=\"").append(escape(key.getTemplateURI())).append("\"");
+        if (key.getMethod() != null) labels.append(",method=\"").append(escape(key.getMethod())).append("\"");
+        if (key.getStatus() != 0) labels.append(",status=\"").append(key.getStatus()).append("\"");
+        return labels.toString();
+    }
+
+    public static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static String format(double value)
+    {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) return String.valueOf((long)value);
+        return Double.toString(value); // Prometheus parses Java scientific notation as well
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+/**
+ * Query and backend statistics of a single request, collected for the slow-query log.
+ * Not thread-safe, as it belongs to one request.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see SlowQueryLog
+ */
+public class QueryProfile
+{
+
+    private String query, bindings;
+    private long backendTime, resultSize = -1;
+
+    public String getQuery()
+    {
+        return query;
+    }
+
+    /**
+     * Sets the final query or update string. Replaces the previous one, so the last query executed by the request is
+     * logged.
+     *
+     * @param query query or update string
+     */
+    public void setQuery(String query)
+    {
+        this.query = query;
+    }
+
+    public String getBindings()
+    {
+        return bindings;
+    }
+
+    public void setBindings(String bindings)
+    {
+        this.bindings = bindings;
+    }
+
+    /**
+     * Returns the total time spent waiting for the SPARQL backend.
+     *
+     * @return time in nanoseconds
+     */
+    public long getBackendTime()
+    {
+        return backendTime;
+    }
+
+    public void addBackendTime(long nanos)
+    {
+        backendTime += nanos;
+    }
+
+    /**
+     * Returns the number of triples retrieved from the backend.
+     *
+     * @return result size, or -1 if nothing was retrieved
+     */
+    public long getResultSize()
+    {
+        return resultSize;
+    }
+
+    public void setResultSize(long resultSize)
+    {
+        this.resultSize = resultSize;
+    }
+
+}
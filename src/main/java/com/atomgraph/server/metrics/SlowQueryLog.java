@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded log of requests slower than a threshold, and aggregate statistics of all requests per template.
+ * Entries are kept in a ring buffer that is written without locks: once it is full, the oldest entries are
+ * overwritten. Readers get a snapshot that can miss entries written concurrently.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see QueryProfile
+ */
+public class SlowQueryLog
+{
+
+    private final long threshold;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong index = new AtomicLong();
+    private final ConcurrentMap<String, TemplateStats> templateStats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs log.
+     *
+     * @param threshold minimum request duration in milliseconds
+     * @param capacity maximum number of entries
+     */
+    public SlowQueryLog(long threshold, int capacity)
+    {
+        if (threshold < 0) throw new IllegalArgumentException("Slow query threshold cannot be negative");
+        if (capacity < 1) throw new IllegalArgumentException("Slow query log capacity must be positive");
+
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Records a finished request. Updates the statistics of its template, and logs it if it is over the threshold.
+     *
+     * @param entry request entry
+     * @return true if the entry was logged as slow
+     */
+    public boolean record(Entry entry)
+    {
+        if (entry == null) throw new IllegalArgumentException("Entry cannot be null");
+
+        boolean slow = entry.getDuration() >= threshold;
+        if (entry.getTemplateURI() != null) getStats(entry.getTemplateURI()).record(entry, slow);
+        if (slow) entries.set((int)(index.getAndIncrement() % entries.length()), entry);
+
+        return slow;
+    }
+
+    private TemplateStats getStats(String templateURI)
+    {
+        TemplateStats stats = templateStats.get(templateURI);
+        if (stats != null) return stats;
+
+        TemplateStats created = new TemplateStats();
+        stats = templateStats.putIfAbsent(templateURI, created);
+        return stats != null ? stats : created;
+    }
+
+    /**
+     * Returns logged entries, newest first.
+     *
+     * @return list of entries
+     */
+    public List<Entry> getEntries()
+    {
+        long end = index.get();
+        long start = Math.max(0, end - entries.length());
+        List<Entry> list = new ArrayList<>((int)(end - start));
+
+        for (long i = end - 1; i >= start; i--)
+        {
+            Entry entry = entries.get((int)(i % entries.length()));
+            if (entry != null) list.add(entry);
+        }
+
+        return list;
+    }
+
+    public Map<String, TemplateStats> getTemplateStats()
+    {
+        return Collections.unmodifiableMap(templateStats);
+    }
+
+    /**
+     * Returns the duration threshold.
+     *
+     * @return threshold in nanoseconds
+     */
+    public long getThreshold()
+    {
+        return threshold;
+    }
+
+    public int getCapacity()
+    {
+        return entries.length();
+    }
+
+    /**
+     * Finished request. Times are in nanoseconds.
+     */
+    public static class Entry
+    {
+        private final long time = System.currentTimeMillis();
+        private final String templateURI, method, requestURI;
+        private final int status;
+        private final String query, bindings;
+        private final long backendTime, resultSize, serializationTime, duration;
+
+        public Entry(String templateURI, String method, String requestURI, int status, QueryProfile profile, long serializationTime, long duration)
+        {
+            if (profile == null) throw new IllegalArgumentException("QueryProfile cannot be null");
+
+            this.templateURI = templateURI;
+            this.method = method;
+            this.requestURI = requestURI;
+            this.status = status;
+            this.query = profile.getQuery();
+            this.bindings = profile.getBindings();
+            this.backendTime = profile.getBackendTime();
+            this.resultSize = profile.getResultSize();
+            this.serializationTime = serializationTime;
+            this.duration = duration;
+        }
+
+        public long getTime()
+        {
+            return time;
+        }
+
+        public String getTemplateURI()
+        {
+            return templateURI;
+        }
+
+        public String getMethod()
+        {
+            return method;
+        }
+
+        public String getRequestURI()
+        {
+            return requestURI;
+        }
+
+        public int getStatus()
+        {
+            return status;
+        }
+
+        public String getQuery()
+        {
+            return query;
+        }
+
+        public String getBindings()
+        {
+            return bindings;
+        }
+
+        public long getBackendTime()
+        {
+            return backendTime;
+        }
+
+        public long getResultSize()
+        {
+            return resultSize;
+        }
+
+        public long getSerializationTime()
+        {
+            return serializationTime;
+        }
+
+        public long getDuration()
+        {
+            return duration;
+        }
+
+    }
+
+    /**
+     * Aggregate statistics of requests matching one template. Times are in nanoseconds.
+     */
+    public static class TemplateStats
+    {
+        private final AtomicLong count = new AtomicLong(), slowCount = new AtomicLong();
+        private final AtomicLong duration = new AtomicLong(), maxDuration = new AtomicLong();
+        private final AtomicLong backendTime = new AtomicLong(), serializationTime = new AtomicLong();
+        private final AtomicLong resultSize = new AtomicLong();
+
+        protected void record(Entry entry, boolean slow)
+        {
+            count.incrementAndGet();
+            if (slow) slowCount.incrementAndGet();
+            duration.addAndGet(entry.getDuration());
+            backendTime.addAndGet(entry.getBackendTime());
+            serializationTime.addAndGet(entry.getSerializationTime());
+            if (entry.getResultSize() > 0) resultSize.addAndGet(entry.getResultSize());
+
+            long max = maxDuration.get();
+            while (entry.getDuration() > max && !maxDuration.compareAndSet(max, entry.getDuration())) max = maxDuration.get();
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        public long getSlowCount()
+        {
+            return slowCount.get();
+        }
+
+        public long getDuration()
+        {
+            return duration.get();
+        }
+
+        public long getMaxDuration()
+        {
+            return maxDuration.get();
+        }
+
+        public long getBackendTime()
+        {
+            return backendTime.get();
+        }
+
+        public long getSerializationTime()
+        {
+            return serializationTime.get();
+        }
+
+        public long getResultSize()
+        {
+            return resultSize.get();
+        }
+
+    }
+
+}
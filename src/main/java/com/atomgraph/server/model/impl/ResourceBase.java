@@ -22,13 +22,41 @@ import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.reasoner.Reasoner;
 import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.E_Exists;
+import org.apache.jena.sparql.expr.E_IsLiteral;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.E_Regex;
+import org.apache.jena.sparql.expr.E_Str;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.sparql.modify.request.UpdateData;
+import org.apache.jena.sparql.modify.request.UpdateDeleteWhere;
+import org.apache.jena.sparql.modify.request.UpdateModify;
 import org.apache.jena.sparql.util.Loader;
+import org.apache.jena.update.Update;
 import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.vocabulary.RDF;
 import com.sun.jersey.api.core.ResourceContext;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import javax.ws.rs.Path;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.*;
@@ -36,28 +64,46 @@ import javax.ws.rs.core.Response.ResponseBuilder;
 import com.atomgraph.core.exception.NotFoundException;
 import com.atomgraph.core.model.GraphStore;
 import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.query.LanguageFilter;
+import com.atomgraph.processor.query.PropertyProjection;
+import com.atomgraph.processor.query.QueryOptimizer;
 import com.atomgraph.processor.query.QueryBuilder;
 import com.atomgraph.processor.update.InsertDataBuilder;
-import com.atomgraph.core.util.Link;
-import com.atomgraph.processor.vocabulary.LDT;
 import com.atomgraph.core.model.impl.QueriedResourceBase;
 import com.atomgraph.core.util.ModelUtils;
 import com.atomgraph.processor.exception.OntologyException;
 import com.atomgraph.processor.model.Template;
 import com.atomgraph.processor.query.SelectBuilder;
 import com.atomgraph.processor.update.ModifyBuilder;
+import com.atomgraph.processor.update.UpdatePlan;
 import com.atomgraph.processor.util.RulePrinter;
 import com.atomgraph.processor.util.TemplateCall;
 import com.atomgraph.processor.vocabulary.DH;
 import com.atomgraph.processor.vocabulary.DHT;
+import com.atomgraph.processor.vocabulary.APT;
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.metrics.QueryProfile;
+import com.atomgraph.server.metrics.SlowQueryLog;
+import com.atomgraph.server.util.ExistenceChecker;
+import com.atomgraph.server.util.TextIndex;
+import com.atomgraph.server.util.HeaderCache;
+import com.atomgraph.server.util.InsertDataCoalescer;
+import com.atomgraph.server.util.UpdatePlanCache;
+import com.atomgraph.server.util.UpdateQueue;
+import com.atomgraph.server.util.VersionRegistry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.PostConstruct;
+import javax.ws.rs.ext.Providers;
 import org.apache.jena.sparql.vocabulary.FOAF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spinrdf.model.Construct;
 import org.spinrdf.model.NamedGraph;
 import org.spinrdf.model.SPINFactory;
 import org.spinrdf.vocabulary.SP;
 import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
 
 /**
  * Base class of generic read-write Linked Data resources.
@@ -79,9 +125,15 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     private final OntResource ontResource;
     private final ResourceContext resourceContext;
     private final HttpHeaders httpHeaders;  
+    @Context private Providers providers;
     private final QuerySolutionMap querySolutionMap;
     private QueryBuilder queryBuilder;
     private ModifyBuilder modifyBuilder;
+    private UpdatePlan updatePlan;
+    private EntityTag entityTag;
+    private Date lastModified;
+    private QueryProfile queryProfile;
+    private HeaderCache.Headers responseHeaders;
 
     /**
      * Public JAX-RS instance. Suitable for subclassing.
@@ -149,8 +201,15 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     @PostConstruct
     public void init()
     {
+        if (getSlowQueryLog() != null) queryProfile = new QueryProfile();
+        long start = getMetricsRegistry() != null ? System.nanoTime() : 0;
+        
         if (getRequest().getMethod().equalsIgnoreCase("PUT") || getRequest().getMethod().equalsIgnoreCase("DELETE"))
-            modifyBuilder = getTemplateCall().getTemplate().getModifyBuilder(getUriInfo().getBaseUri(), ModelFactory.createDefaultModel());
+        {
+            // compiled updates are reused between requests, the SPIN builder is only needed as fallback
+            if (getUpdatePlanCache() != null) updatePlan = getUpdatePlanCache().get(getTemplateCall().getTemplate(), getUriInfo().getBaseUri());
+            if (updatePlan == null) modifyBuilder = getTemplateCall().getTemplate().getModifyBuilder(getUriInfo().getBaseUri(), ModelFactory.createDefaultModel());
+        }
         else
         {
             queryBuilder = getTemplateCall().getTemplate().getQueryBuilder(getUriInfo().getBaseUri(), ModelFactory.createDefaultModel());
@@ -164,6 +223,36 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
                     queryBuilder = getPageQueryBuilder(queryBuilder);
             }
         }
+        
+        if (start != 0) recordMetric(MetricsRegistry.STAGE_QUERY_BUILDER, start);
+    }
+    
+    /**
+     * Records latency of a processing stage of this request, if metrics are enabled.
+     * 
+     * @param stage stage name
+     * @param start start of the stage as returned by {@link System#nanoTime()}
+     */
+    public void recordMetric(String stage, long start)
+    {
+        MetricsRegistry metrics = getMetricsRegistry();
+        if (metrics != null) metrics.record(stage, getTemplateCall().getTemplate().getURI(), getRequest().getMethod(), 0, System.nanoTime() - start);
+    }
+    
+    /**
+     * Adds a backend call to the query profile of this request, if the slow-query log is enabled.
+     * 
+     * @param query query or update string, or null to keep the query recorded by {@link #getQuery()}
+     * @param start start of the call as returned by {@link System#nanoTime()}
+     * @param result retrieved model, or null if nothing was retrieved
+     */
+    public void profile(String query, long start, Model result)
+    {
+        if (getQueryProfile() == null) return;
+        
+        getQueryProfile().addBackendTime(System.nanoTime() - start);
+        if (query != null) getQueryProfile().setQuery(query);
+        if (result != null) getQueryProfile().setResultSize(result.size());
     }
     
     /**
@@ -214,9 +303,149 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
             return Response.seeOther(URI.create(getTemplateCall().getURI())).build();
         }
         
+        ResponseBuilder rb = evaluatePreconditions();
+        if (rb != null)
+        {
+            if (log.isDebugEnabled()) log.debug("GET preconditions evaluated against version entity tag {} and last modified {}, not querying", entityTag, lastModified);
+            return rb.build();
+        }
+        
         return super.get();
     }
     
+    /**
+     * Evaluates request preconditions against the version entity tag and last modification date, before the
+     * description is queried.
+     * Both are retained and set on the response, since the data can change while the query is running.
+     * 
+     * @return response builder if preconditions were not met, or null if they were met or versions are not tracked
+     */
+    public ResponseBuilder evaluatePreconditions()
+    {
+        entityTag = getEntityTag();
+        lastModified = getLastModified();
+        if (entityTag == null) return null;
+        
+        if (lastModified == null) return getRequest().evaluatePreconditions(entityTag);
+        return getRequest().evaluatePreconditions(lastModified, entityTag);
+    }
+    
+    /**
+     * Returns entity tag of the representation this request refers to.
+     * 
+     * @return entity tag or null, if versions are not tracked
+     * @see #getEntityMediaType()
+     */
+    public EntityTag getEntityTag()
+    {
+        return getEntityTag(getEntityMediaType());
+    }
+    
+    /**
+     * Returns entity tag of the current data and template version in the specified media type. Any write can change the
+     * description, so the global data version is used.
+     * 
+     * @param mediaType representation media type, can be null
+     * @return entity tag or null, if versions are not tracked
+     */
+    public EntityTag getEntityTag(MediaType mediaType)
+    {
+        return getEntityTag(getTemplateCall().getTemplate(), mediaType);
+    }
+    
+    /**
+     * Returns entity tag that a request for a resource matching the specified template would get in this request's
+     * context.
+     * 
+     * @param template matching template
+     * @param mediaType representation media type, can be null
+     * @return entity tag or null, if versions are not tracked
+     */
+    public EntityTag getEntityTag(Template template, MediaType mediaType)
+    {
+        if (template == null) throw new IllegalArgumentException("Template cannot be null");
+        VersionRegistry versionRegistry = getVersionRegistry();
+        if (versionRegistry == null) return null;
+        
+        List<String> languages = isLanguageFiltered(template) ? getQueryLanguages(template.getLanguages()) : Collections.<String>emptyList();
+        if (!languages.isEmpty()) // language-filtered descriptions are different representations
+            return versionRegistry.getEntityTag(mediaType, versionRegistry.getVersion(),
+                versionRegistry.getTemplateVersion(template.getURI()), languages.hashCode());
+        
+        return versionRegistry.getEntityTag(mediaType, versionRegistry.getVersion(),
+                versionRegistry.getTemplateVersion(template.getURI()));
+    }
+    
+    /**
+     * Returns media type of the representation that preconditions refer to: the request entity type for writes, so
+     * that <code>If-Match</code> compares against the representation the client retrieved and edited, otherwise the
+     * negotiated response type.
+     * 
+     * @return media type or null, if no variant is acceptable
+     */
+    public MediaType getEntityMediaType()
+    {
+        MediaType mediaType = getHttpHeaders().getMediaType();
+        if (mediaType != null) return mediaType;
+        
+        return getVariantMediaType();
+    }
+    
+    /**
+     * Returns media type of the negotiated response variant.
+     * 
+     * @return media type or null, if no variant is acceptable
+     */
+    public MediaType getVariantMediaType()
+    {
+        Variant variant = getRequest().selectVariant(getVariants());
+        if (variant == null) return null;
+        
+        return variant.getMediaType();
+    }
+    
+    /**
+     * Returns response variants of RDF representations.
+     * 
+     * @return variant list
+     */
+    public List<Variant> getVariants()
+    {
+        return com.atomgraph.core.model.impl.Response.fromRequest(getRequest()).
+                getVariantListBuilder(getProviders().getContextResolver(MediaTypes.class, null).getContext(MediaTypes.class).getWritable(Model.class), getLanguages(), Collections.<String>emptyList()).
+                add().build();
+    }
+    
+    /**
+     * Returns the later of the last data modification and the last template modification.
+     * 
+     * @return last modification date or null, if versions are not tracked
+     */
+    public Date getLastModified()
+    {
+        VersionRegistry versionRegistry = getVersionRegistry();
+        if (versionRegistry == null) return null;
+        
+        return later(versionRegistry.getLastModified(),
+                versionRegistry.getTemplateLastModified(getTemplateCall().getTemplate().getURI()));
+    }
+    
+    public static Date later(Date date1, Date date2)
+    {
+        return date1.after(date2) ? date1 : date2;
+    }
+    
+    /**
+     * Records a completed write in the version registry, if versions are tracked.
+     * 
+     * @param graphURI URI of the written named graph, or null if the write can affect any graph
+     */
+    public void bumpVersion(String graphURI)
+    {
+        VersionRegistry versionRegistry = getVersionRegistry();
+        if (versionRegistry != null) versionRegistry.bump(graphURI);
+    }
+    
     /**
      * Checks whether the URi of the template call matches the request URI.
      * 
@@ -265,9 +494,33 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
         insertDataRequest.setBaseURI(getUriInfo().getBaseUri().toString());
         if (log.isDebugEnabled()) log.debug("INSERT DATA request: {}", insertDataRequest);
 
-        getSPARQLEndpoint().post(insertDataRequest, null, null);
-	
 	URI createdURI = UriBuilder.fromUri(created.getURI()).build();
+        Runnable indexUpdate = getIndexUpdate(graphURI != null ? graphURI.toString() : null, null, infModel.getRawModel());
+        if (isRespondAsync())
+            return submit(graphURI != null ? graphURI.toString() : null, insertDataRequest, indexUpdate, Response.Status.CREATED, createdURI);
+
+        long start = System.nanoTime();
+        try
+        {
+            final String graph = graphURI != null ? graphURI.toString() : null;
+            // batches are collected before they are queued, so POSTs coalesce while earlier writes to the graph are pending
+            if (getInsertDataCoalescer() != null) getInsertDataCoalescer().insert(graph, insertDataRequest, new InsertDataCoalescer.Writer()
+            {
+                @Override
+                public void write(UpdateRequest merged)
+                {
+                    update(graph, merged);
+                }
+            });
+            else update(graph, insertDataRequest);
+        }
+        finally
+        {
+            bumpVersion(graphURI != null ? graphURI.toString() : null);
+            if (getQueryProfile() != null) profile(insertDataRequest.toString(), start, null);
+        }
+        if (indexUpdate != null) indexUpdate.run();
+	
 	if (log.isDebugEnabled()) log.debug("Redirecting to POSTed Resource URI: {}", createdURI);
 	// http://stackoverflow.com/questions/3383725/post-redirect-get-prg-vs-meaningful-2xx-response-codes
 	// http://www.blackpepper.co.uk/posts/201-created-or-post-redirect-get/
@@ -318,9 +571,19 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
 	    throw new WebApplicationException(Response.Status.BAD_REQUEST);
 	}
 	
-	Model description = describe();	
+        if (getVersionRegistry() != null) // version entity tag is checked before the description is queried
+        {
+            ResponseBuilder rb = evaluatePreconditions();
+	    if (rb != null)
+	    {
+		if (log.isDebugEnabled()) log.debug("PUT preconditions were not met for resource: {} with entity tag: {}", this, entityTag);
+		return rb.build();
+	    }
+        }
+        
+	boolean exists = exists();
 	
-	if (!description.isEmpty()) // remove existing representation
+	if (getVersionRegistry() == null && exists) // remove existing representation
 	{
 	    EntityTag entityTag = new EntityTag(Long.toHexString(ModelUtils.hashModel(model)));
 	    Response.ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
@@ -333,11 +596,83 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
         
         UpdateRequest deleteInsertRequest = getUpdateRequest(model);
         if (log.isDebugEnabled()) log.debug("DELETE/INSERT UpdateRequest: {}", deleteInsertRequest);
-        getSPARQLEndpoint().post(deleteInsertRequest, null, null);
+        String graphURI = getTargetGraphURI(deleteInsertRequest);
+        Runnable indexUpdate = getIndexUpdate(graphURI, getURI().toString(), model);
+        if (isRespondAsync())
+            return submit(graphURI, deleteInsertRequest, indexUpdate, exists ? Response.Status.OK : Response.Status.CREATED, getURI());
         
-	if (description.isEmpty()) return Response.created(getURI()).build();
+        long start = System.nanoTime();
+        try
+        {
+            update(graphURI, deleteInsertRequest);
+        }
+        finally
+        {
+            bumpVersion(graphURI);
+            if (getQueryProfile() != null) profile(deleteInsertRequest.toString(), start, null);
+            entityTag = getEntityTag(getVariantMediaType()); // tag the response with the version after the write
+            lastModified = getLastModified();
+        }
+        if (indexUpdate != null) indexUpdate.run();
+        
+	if (!exists) return Response.created(getURI()).build();
 	else return getResponse(model);
     }
+    
+    /**
+     * Checks whether this resource has a description, without retrieving it if an existence checker is available.
+     * 
+     * @return true if the description is not empty
+     * @see #getExistsQuery()
+     */
+    public boolean exists()
+    {
+        ExistenceChecker checker = getExistenceChecker();
+        if (checker == null) return !describe().isEmpty();
+        
+        long start = System.nanoTime();
+        Query query = getExistsQuery();
+        try
+        {
+            return checker.ask(query);
+        }
+        finally
+        {
+            if (getMetricsRegistry() != null) recordMetric(MetricsRegistry.STAGE_SPARQL, start);
+            if (getQueryProfile() != null) profile(query.toString(), start, null);
+        }
+    }
+    
+    /**
+     * Returns <code>ASK</code> form of the description query: its pattern, dataset and bindings.
+     * It is built from the template query before search, projection and language filtering, which only restrict what
+     * is described, not whether the resource exists.
+     * Queries without a pattern, such as <code>DESCRIBE &lt;uri&gt;</code>, are checked for any triple with this
+     * resource as subject.
+     * 
+     * @return ASK query
+     */
+    public Query getExistsQuery()
+    {
+        Query query = getQuery(getQueryBuilder().build().toString(), getQuerySolutionMap(), getUriInfo().getBaseUri().toString());
+        Query ask = new Query();
+        ask.setQueryAskType();
+        ask.setPrefixMapping(query.getPrefixMapping());
+        ask.setBaseURI(query.getBaseURI());
+        for (String graphURI : query.getGraphURIs()) ask.addGraphURI(graphURI);
+        for (String namedGraphURI : query.getNamedGraphURIs()) ask.addNamedGraphURI(namedGraphURI);
+        if (query.hasValues()) ask.setValuesDataBlock(query.getValuesVariables(), query.getValuesData());
+        
+        if (query.getQueryPattern() != null) ask.setQueryPattern(query.getQueryPattern());
+        else
+        {
+            ElementTriplesBlock block = new ElementTriplesBlock();
+            block.addTriple(Triple.create(NodeFactory.createURI(getURI().toString()), Var.alloc("p"), Var.alloc("o")));
+            ask.setQueryPattern(block);
+        }
+        
+        return ask;
+    }
 
     /**
      * Handles DELETE method, deletes the RDF representation of this resource from the default SPARQL endpoint, and
@@ -350,12 +685,274 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     {	
         UpdateRequest request = getUpdateRequest((Model)null);
         if (log.isDebugEnabled()) log.debug("DELETE UpdateRequest: {}", request);
-        getSPARQLEndpoint().post(request, null, null);
+        String graphURI = getTargetGraphURI(request);
+        Runnable indexUpdate = getIndexUpdate(graphURI, getURI().toString(), null);
+        if (isRespondAsync()) return submit(graphURI, request, indexUpdate, Response.Status.NO_CONTENT, null);
+        
+        long start = System.nanoTime();
+        try
+        {
+            update(graphURI, request);
+        }
+        finally
+        {
+            bumpVersion(graphURI);
+            if (getQueryProfile() != null) profile(request.toString(), start, null);
+        }
+        if (indexUpdate != null) indexUpdate.run();
 	
 	return Response.noContent().build();
     }
     
+    /**
+     * Returns text index update that follows a write. It runs after the write has been executed, either on the request
+     * thread or on the update queue.
+     * 
+     * @param graphURI URI of the written graph, or null for the default graph
+     * @param removedURI URI of the resource whose index entries are removed first, can be null
+     * @param model written model, can be null
+     * @return index update, or null if the text index is not configured
+     */
+    public Runnable getIndexUpdate(final String graphURI, final String removedURI, final Model model)
+    {
+        final TextIndex textIndex = getTextIndex();
+        if (textIndex == null) return null;
+        
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (removedURI != null) textIndex.remove(removedURI);
+                if (model != null) textIndex.index(model, graphURI);
+            }
+        };
+    }
+    
 
+    /**
+     * Returns the named graph that an update writes to, so that it is ordered with the other writes to that graph.
+     * A <code>WITH</code> graph applies to the quads of the default graph.
+     * 
+     * @param updateRequest update request
+     * @return graph URI, or null if the update writes to the default graph, to several graphs, or to a variable graph
+     */
+    public static String getTargetGraphURI(UpdateRequest updateRequest)
+    {
+        if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+        
+        Set<Node> graphs = new HashSet<>();
+        for (Update update : updateRequest.getOperations())
+        {
+            if (update instanceof UpdateModify)
+            {
+                UpdateModify modify = (UpdateModify)update;
+                addGraphs(graphs, modify.getDeleteQuads(), modify.getWithIRI());
+                addGraphs(graphs, modify.getInsertQuads(), modify.getWithIRI());
+            }
+            else if (update instanceof UpdateData) addGraphs(graphs, ((UpdateData)update).getQuads(), null);
+            else if (update instanceof UpdateDeleteWhere) addGraphs(graphs, ((UpdateDeleteWhere)update).getQuads(), null);
+            else return null; // graph management operations are not ordered per graph
+        }
+        
+        if (graphs.size() != 1) return null;
+        Node graph = graphs.iterator().next();
+        if (!graph.isURI() || Quad.isDefaultGraph(graph)) return null;
+        return graph.getURI();
+    }
+    
+    private static void addGraphs(Set<Node> graphs, List<Quad> quads, Node withIRI)
+    {
+        for (Quad quad : quads)
+            if (quad.isDefaultGraph()) graphs.add(withIRI != null ? withIRI : Quad.defaultGraphNodeGenerated);
+            else graphs.add(quad.getGraph());
+    }
+    
+    /**
+     * Executes SPARQL update synchronously, in order with the queued writes to the same graph.
+     * 
+     * @param graphURI URI of the graph the update is ordered within, or null for the default graph
+     * @param updateRequest update request
+     * @see #execute(java.lang.String, java.util.concurrent.Callable)
+     */
+    public void update(String graphURI, final UpdateRequest updateRequest)
+    {
+        if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+        
+        final SPARQLEndpoint endpoint = getSPARQLEndpoint();
+        execute(graphURI, new Callable<Void>()
+        {
+            @Override
+            public Void call()
+            {
+                endpoint.post(updateRequest, null, null);
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Executes write synchronously. While asynchronous writes to the same graph are pending, the write waits behind
+     * them on the update queue, so that it does not overtake writes submitted before it.
+     * 
+     * @param <T> result type
+     * @param graphURI URI of the graph the write is ordered within, or null for the default graph
+     * @param write write operation
+     * @return result of the write
+     */
+    public <T> T execute(String graphURI, Callable<T> write)
+    {
+        try
+        {
+            if (getUpdateQueue() == null) return write.call();
+            return getUpdateQueue().execute(graphURI, write);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Update queue is full ({} pending writes), rejecting request", getUpdateQueue().getDepth());
+            throw new WebApplicationException(ex, Response.status(Response.Status.SERVICE_UNAVAILABLE).
+                    header("Retry-After", 1).build());
+        }
+        catch (RuntimeException ex)
+        {
+            throw ex;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(ex, Response.Status.SERVICE_UNAVAILABLE);
+        }
+        catch (Exception ex)
+        {
+            throw new WebApplicationException(ex);
+        }
+    }
+    
+    /**
+     * Checks whether the client prefers asynchronous processing (<code>Prefer: respond-async</code>) and the update queue
+     * is configured.
+     * 
+     * @return true if the write should be queued
+     * @see <a href="https://tools.ietf.org/html/rfc7240#section-4.1">RFC 7240: The "respond-async" Preference</a>
+     */
+    public boolean isRespondAsync()
+    {
+        if (getUpdateQueue() == null) return false;
+        
+        List<String> preferences = getHttpHeaders().getRequestHeader("Prefer");
+        if (preferences != null)
+            for (String header : preferences)
+                for (String preference : header.split(","))
+                    if (preference.split(";")[0].trim().equalsIgnoreCase("respond-async")) return true;
+        
+        return false;
+    }
+    
+    /**
+     * Queues SPARQL update for asynchronous execution.
+     * 
+     * @param graphURI URI of the graph the update is ordered within, or null for the default graph
+     * @param updateRequest update request
+     * @param successStatus response status once the update succeeds
+     * @param location URI of the written resource, can be null
+     * @return <code>202 Accepted</code> response
+     */
+    public Response submit(String graphURI, UpdateRequest updateRequest, Response.StatusType successStatus, URI location)
+    {
+        return submit(graphURI, updateRequest, null, successStatus, location);
+    }
+    
+    /**
+     * Queues SPARQL update for asynchronous execution, followed by a text index update.
+     * 
+     * @param graphURI URI of the graph the update is ordered within, or null for the default graph
+     * @param updateRequest update request
+     * @param indexUpdate index update run after the update succeeds, can be null
+     * @param successStatus response status once the update succeeds
+     * @param location URI of the written resource, can be null
+     * @return <code>202 Accepted</code> response
+     * @see #getIndexUpdate(java.lang.String, java.lang.String, org.apache.jena.rdf.model.Model)
+     */
+    public Response submit(String graphURI, final UpdateRequest updateRequest, final Runnable indexUpdate, Response.StatusType successStatus, URI location)
+    {
+        if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+        
+        final SPARQLEndpoint endpoint = getSPARQLEndpoint();
+        return submit(graphURI, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                endpoint.post(updateRequest, null, null);
+                if (indexUpdate != null) indexUpdate.run();
+            }
+        }, successStatus, location);
+    }
+    
+    /**
+     * Queues write for asynchronous execution and returns <code>202 Accepted</code> with the URI of the status resource in
+     * the <code>Location</code> header. Returns <code>503 Service Unavailable</code> if the queue is full.
+     * 
+     * @param graphURI URI of the graph the write is ordered within, or null for the default graph
+     * @param update write operation
+     * @param successStatus response status once the write succeeds
+     * @param location URI of the written resource, can be null
+     * @return <code>202 Accepted</code> response
+     */
+    public Response submit(final String graphURI, final Runnable update, Response.StatusType successStatus, URI location)
+    {
+        final VersionRegistry versionRegistry = getVersionRegistry();
+        Runnable versionedUpdate = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    update.run();
+                }
+                finally
+                {
+                    if (versionRegistry != null) versionRegistry.bump(graphURI);
+                }
+            }
+        };
+        
+        final UpdateQueue.Job job;
+        try
+        {
+            job = getUpdateQueue().submit(graphURI, versionedUpdate, successStatus, location);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Update queue is full ({} pending writes), rejecting request", getUpdateQueue().getDepth());
+            throw new WebApplicationException(ex, Response.status(Response.Status.SERVICE_UNAVAILABLE).
+                    header("Retry-After", 1).build());
+        }
+        
+        ResponseBuilder rb = Response.status(Response.Status.ACCEPTED).header("Preference-Applied", "respond-async");
+        URI statusURI = getUpdateStatusURI(job);
+        if (statusURI != null) rb.location(statusURI);
+        return rb.build();
+    }
+    
+    /**
+     * Builds URI of the status resource of an asynchronous write.
+     * Returns null if the sitemap does not import the <code>apt:UpdateStatus</code> template.
+     * 
+     * @param job queued job
+     * @return status URI or null
+     */
+    public URI getUpdateStatusURI(UpdateQueue.Job job)
+    {
+        if (job == null) throw new IllegalArgumentException("UpdateQueue.Job cannot be null");
+
+        Resource statusTemplate = getOntology().getOntModel().createResource(APT.UpdateStatus.getURI());
+        if (!statusTemplate.canAs(Template.class)) return null;
+        
+        return getUriInfo().getBaseUriBuilder().path(statusTemplate.as(Template.class).getPath().getTemplate()).build(job.getId());
+    }
+    
     /**
      * Returns variable bindings for description query.
      * 
@@ -366,6 +963,29 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
         return querySolutionMap;
     }
         
+    /**
+     * Returns the <pre>Link</pre>, <pre>Rules</pre> and <pre>Cache-Control</pre> headers of the matched template.
+     * They are built once per template and sitemap snapshot if the header cache is available.
+     * 
+     * @return response headers
+     */
+    public HeaderCache.Headers getResponseHeaders()
+    {
+        if (responseHeaders == null)
+        {
+            HeaderCache headerCache = getHeaderCache();
+            if (headerCache != null) responseHeaders = headerCache.get(getApplication().getOntology(), getTemplateCall().getTemplate(), getUriInfo().getBaseUri());
+            else
+            {
+                Reasoner reasoner = getTemplateCall().getTemplate().getOntModel().getSpecification().getReasoner();
+                String rules = reasoner instanceof GenericRuleReasoner ? RulePrinter.print(((GenericRuleReasoner)reasoner).getRules()) : null; // grr.getRules().toString() - prevented by JENA-1030 bug
+                responseHeaders = HeaderCache.createHeaders(getApplication().getOntology(), getTemplateCall().getTemplate(), getUriInfo().getBaseUri(), rules);
+            }
+        }
+        
+        return responseHeaders;
+    }
+    
     /**
      * Adds matched sitemap class as affordance metadata in <pre>Link</pre> header.
      * 
@@ -378,24 +998,12 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
         ResponseBuilder rb = super.getResponseBuilder(model);
         
         rb.cacheControl(getCacheControl());
+        if (entityTag != null) rb.tag(entityTag); // version tag replaces the model hash
+        if (lastModified != null) rb.lastModified(lastModified);
 
         //rb.header("Query", getQuery().toString());
         
-        Link classLink = new Link(URI.create(getTemplateCall().getTemplate().getURI()), RDF.type.getLocalName(), null);
-        rb.header("Link", classLink.toString());
-        
-        Link ontologyLink = new Link(URI.create(getApplication().getOntology().getURI()), LDT.ontology.getURI(), null);
-        rb.header("Link", ontologyLink.toString());
-
-        Link baseLink = new Link(getUriInfo().getBaseUri(), LDT.base.getURI(), null);
-        rb.header("Link", baseLink.toString());
-        
-        Reasoner reasoner = getTemplateCall().getTemplate().getOntModel().getSpecification().getReasoner();
-        if (reasoner instanceof GenericRuleReasoner)
-        {
-            GenericRuleReasoner grr = (GenericRuleReasoner)reasoner;
-            rb.header("Rules", RulePrinter.print(grr.getRules())); // grr.getRules().toString() - prevented by JENA-1030 bug
-        }
+        getResponseHeaders().apply(rb);
         
         return rb;
     }
@@ -437,7 +1045,7 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
      */
     public CacheControl getCacheControl()
     {
-	return getTemplateCall().getTemplate().getCacheControl();
+	return getResponseHeaders().getCacheControl();
     }
     
     /**
@@ -450,7 +1058,303 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     @Override
     public Query getQuery()
     {
-        return getQuery(getQueryBuilder().build().toString(), getQuerySolutionMap(), getUriInfo().getBaseUri().toString());
+        long start = getMetricsRegistry() != null ? System.nanoTime() : 0;
+        Query query = getQuery(getQueryBuilder().build().toString(), getQuerySolutionMap(), getUriInfo().getBaseUri().toString());
+        String search = getTemplateCall().hasArgument(APT.search) ? getTemplateCall().getArgumentProperty(APT.search).getString() : null;
+        query = rewrite(query, search, getTextIndex(), getQueryLanguages(), getProjectedProperties(), getQueryOptimizer());
+        if (start != 0) recordMetric(MetricsRegistry.STAGE_QUERY, start);
+        
+        if (getQueryProfile() != null)
+        {
+            getQueryProfile().setQuery(query.toString());
+            getQueryProfile().setBindings(getQuerySolutionMap().toString());
+        }
+        
+        return query;
+    }
+    
+    /**
+     * Applies the per-request rewrites to the description query: search, language filter, property projection and
+     * optimization.
+     * 
+     * @param query query with applied bindings
+     * @param search search text, or null
+     * @param textIndex text index, or null
+     * @param languages acceptable languages, empty if literals are not filtered
+     * @param properties projected properties, empty if the description is not projected
+     * @param optimizer query optimizer, or null
+     * @return rewritten query
+     */
+    public static Query rewrite(Query query, String search, TextIndex textIndex, List<String> languages, List<String> properties, QueryOptimizer optimizer)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (languages == null) throw new IllegalArgumentException("Language List cannot be null");
+        if (properties == null) throw new IllegalArgumentException("Property List cannot be null");
+        
+        if (search != null) query = getSearchQuery(query, search, textIndex);
+        if (!languages.isEmpty()) query = new LanguageFilter(languages).apply(query);
+        // after the language filter, so that DESCRIBE rewritten into CONSTRUCT keeps its language-independent entity tag
+        if (!properties.isEmpty()) query = new PropertyProjection(properties).apply(query);
+        if (optimizer != null) query = optimizer.optimize(query);
+        
+        return query;
+    }
+    
+    /**
+     * Restricts the main sub-SELECT of the query to resources matching the search text, using the configured text index.
+     * 
+     * @param query query
+     * @param text search text
+     * @return query, unchanged if it has no sub-SELECT
+     * @see #getSearchQuery(org.apache.jena.query.Query, java.lang.String, com.atomgraph.server.util.TextIndex)
+     */
+    public Query getSearchQuery(Query query, String text)
+    {
+        return getSearchQuery(query, text, getTextIndex());
+    }
+    
+    /**
+     * Restricts the main sub-SELECT of the query to resources matching the search text. Matches are resolved with the
+     * text index if it is configured and the search is selective enough, and bound with a <code>VALUES</code> block;
+     * otherwise the sub-SELECT is filtered with <code>regex()</code> over the literals of the resources, with the same
+     * semantics: every token has to match the start of a word in a literal of one of the indexed properties.
+     * 
+     * @param query query
+     * @param text search text
+     * @param textIndex text index, or null
+     * @return query, unchanged if it has no sub-SELECT
+     */
+    public static Query getSearchQuery(Query query, String text, TextIndex textIndex)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (text == null) throw new IllegalArgumentException("Search text cannot be null");
+        
+        final List<ElementSubQuery> subQueries = new ArrayList<>();
+        if (query.getQueryPattern() != null)
+            ElementWalker.walk(query.getQueryPattern(), new ElementVisitorBase()
+            {
+                @Override
+                public void visit(ElementSubQuery el)
+                {
+                    subQueries.add(el);
+                }
+            });
+        if (subQueries.isEmpty() || subQueries.get(0).getQuery().getProjectVars().isEmpty())
+        {
+            if (log.isDebugEnabled()) log.debug("Query has no sub-SELECT to search in: {}", query);
+            return query;
+        }
+        
+        Query subQuery = subQueries.get(0).getQuery();
+        Var var = subQuery.getProjectVars().get(0);
+        ElementGroup group = new ElementGroup();
+        
+        Set<String> uris = textIndex != null ? textIndex.search(text) : null;
+        if (uris != null)
+        {
+            if (log.isDebugEnabled()) log.debug("Text index resolved search '{}' to {} resources", text, uris.size());
+            ElementData data = new ElementData();
+            data.add(var);
+            for (String uri : uris) data.add(BindingFactory.binding(var, NodeFactory.createURI(uri)));
+            group.addElement(data);
+            if (subQuery.getQueryPattern() != null) group.addElement(subQuery.getQueryPattern());
+        }
+        else
+        {
+            if (subQuery.getQueryPattern() != null) group.addElement(subQuery.getQueryPattern());
+            Set<String> tokens = TextIndex.tokenize(text);
+            if (tokens.isEmpty()) group.addElement(new ElementFilter(getSearchExists(var, QueryBuilder.quoteRegexMeta(text), textIndex)));
+            else
+                for (String token : tokens) // word prefix, as matched by the text index
+                    group.addElement(new ElementFilter(getSearchExists(var, "(^|[^\\p{L}\\p{Nd}])" + QueryBuilder.quoteRegexMeta(token), textIndex)));
+        }
+        subQuery.setQueryPattern(group);
+        
+        return query;
+    }
+    
+    /**
+     * Returns <code>FILTER EXISTS</code> expression that matches resources with a literal matching the regex.
+     * The literal properties are restricted to the text index properties, if the index is configured.
+     * 
+     * @param var resource variable
+     * @param regex case-insensitive regex
+     * @param textIndex text index, or null
+     * @return expression
+     */
+    public static E_Exists getSearchExists(Var var, String regex, TextIndex textIndex)
+    {
+        Var property = Var.alloc("searchProperty"), literal = Var.alloc("search");
+        ElementGroup group = new ElementGroup();
+        
+        if (textIndex != null)
+        {
+            ElementData data = new ElementData();
+            data.add(property);
+            for (Property indexed : textIndex.getProperties()) data.add(BindingFactory.binding(property, indexed.asNode()));
+            group.addElement(data);
+        }
+        
+        ElementTriplesBlock block = new ElementTriplesBlock();
+        block.addTriple(Triple.create(var, property, literal));
+        group.addElement(block);
+        group.addElement(new ElementFilter(new E_LogicalAnd(new E_IsLiteral(new ExprVar(literal)),
+                new E_Regex(new E_Str(new ExprVar(literal)), regex, "i"))));
+        
+        return new E_Exists(group);
+    }
+    
+    /**
+     * Returns the template languages (<code>ldt:lang</code>) acceptable to the client. Literals in other languages
+     * would be discarded by content negotiation, so they are filtered out in the query.
+     * 
+     * @return language tags, empty if the template has no languages or the client accepts any language
+     */
+    public List<String> getQueryLanguages()
+    {
+        return getQueryLanguages(getLanguages());
+    }
+    
+    /**
+     * Returns the specified template languages acceptable to the client.
+     * 
+     * @param templateLanguages template languages
+     * @return language tags, empty if there are no template languages or the client accepts any language
+     */
+    public List<String> getQueryLanguages(List<Locale> templateLanguages)
+    {
+        if (templateLanguages == null) throw new IllegalArgumentException("Locale List cannot be null");
+        
+        List<String> languages = new ArrayList<>();
+        List<String> acceptable = getAcceptableLanguageRanges();
+        if (templateLanguages.isEmpty() || acceptable.isEmpty() || acceptable.contains("*")) return languages;
+        
+        for (Locale language : templateLanguages)
+        {
+            String tag = language.toLanguageTag().toLowerCase(Locale.ROOT);
+            for (String rangeTag : acceptable)
+            {
+                if (tag.equals(rangeTag) || tag.startsWith(rangeTag + "-") || rangeTag.startsWith(tag + "-"))
+                {
+                    languages.add(tag);
+                    break;
+                }
+            }
+        }
+        
+        return languages;
+    }
+    
+    /**
+     * Returns the lower-cased language ranges of the <code>Accept-Language</code> request header. Ranges with
+     * <code>q=0</code> are not acceptable and are left out.
+     * 
+     * @return language ranges, empty if the header is missing
+     */
+    public List<String> getAcceptableLanguageRanges()
+    {
+        List<String> ranges = new ArrayList<>();
+        List<String> headers = getHttpHeaders().getRequestHeader(HttpHeaders.ACCEPT_LANGUAGE);
+        if (headers == null) return ranges;
+        
+        for (String header : headers)
+            for (String value : header.split(","))
+            {
+                String[] params = value.split(";");
+                String range = params[0].trim().toLowerCase(Locale.ROOT);
+                if (range.isEmpty()) continue;
+                
+                boolean acceptable = true;
+                for (int i = 1; i < params.length; i++)
+                {
+                    String param = params[i].trim().toLowerCase(Locale.ROOT);
+                    if (param.startsWith("q="))
+                        try
+                        {
+                            acceptable = Double.parseDouble(param.substring(2).trim()) > 0;
+                        }
+                        catch (NumberFormatException ex)
+                        {
+                            if (log.isDebugEnabled()) log.debug("Ignoring Accept-Language range with invalid quality: {}", value);
+                            acceptable = false;
+                        }
+                }
+                if (acceptable) ranges.add(range);
+            }
+        
+        return ranges;
+    }
+    
+    /**
+     * Returns true if descriptions of resources matching the template are language-filtered, which is the case for
+     * <code>CONSTRUCT</code> queries only.
+     * 
+     * @param template template
+     * @return true if the template query is a <code>CONSTRUCT</code>
+     * @see LanguageFilter
+     */
+    public static boolean isLanguageFiltered(Template template)
+    {
+        if (template == null) throw new IllegalArgumentException("Template cannot be null");
+        if (template.getQuery() == null) return false;
+        
+        org.spinrdf.model.TemplateCall spinTemplateCall = SPINFactory.asTemplateCall(template.getQuery());
+        if (spinTemplateCall != null) return spinTemplateCall.getTemplate() != null && spinTemplateCall.getTemplate().getBody() instanceof Construct;
+        
+        return SPINFactory.asQuery(template.getQuery()) instanceof Construct;
+    }
+    
+    /**
+     * Returns properties selected with the <code>apt:property</code> param, if the template declares it.
+     * 
+     * @return property URIs, empty if the description is not projected
+     */
+    public List<String> getProjectedProperties()
+    {
+        List<String> properties = new ArrayList<>();
+        StmtIterator it = getTemplateCall().listArguments();
+        try
+        {
+            while (it.hasNext())
+            {
+                Resource arg = it.next().getResource();
+                if (arg.getPropertyResourceValue(SPL.predicate).equals(APT.property))
+                {
+                    RDFNode value = arg.getRequiredProperty(RDF.value).getObject();
+                    if (value.isURIResource()) properties.add(value.asResource().getURI());
+                }
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+        
+        return properties;
+    }
+    
+    /**
+     * Retrieves RDF description of this resource. Timed as the SPARQL execution stage, which includes building the query.
+     * 
+     * @return description model
+     */
+    @Override
+    public Model describe()
+    {
+        if (getMetricsRegistry() == null && getQueryProfile() == null) return super.describe();
+        
+        long start = System.nanoTime();
+        Model model = null;
+        try
+        {
+            model = super.describe();
+            return model;
+        }
+        finally
+        {
+            if (getMetricsRegistry() != null) recordMetric(MetricsRegistry.STAGE_SPARQL, start);
+            profile(null, start, model);
+        }
     }
 
     public QueryBuilder getPageQueryBuilder(QueryBuilder builder)
@@ -521,20 +1425,40 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
 
     /**
      * Returns query builder, which is used to build SPARQL query to retrieve RDF description of this resource.
+     * Built on demand for PUT and DELETE requests, which only need it for existence checks.
      * 
      * @return query builder
      */
     @Override
     public QueryBuilder getQueryBuilder()
     {        
+        if (queryBuilder == null) queryBuilder = getTemplateCall().getTemplate().getQueryBuilder(getUriInfo().getBaseUri(), ModelFactory.createDefaultModel());
+        
 	return queryBuilder;
     }
 
+    /**
+     * Returns SPIN builder of the template update, if the template has one. Built on demand if the update is compiled.
+     * 
+     * @return modify builder
+     */
     @Override
     public ModifyBuilder getModifyBuilder()
     {        
+        if (modifyBuilder == null && getTemplateCall().getTemplate().getUpdate() != null) modifyBuilder = getTemplateCall().getTemplate().getModifyBuilder(getUriInfo().getBaseUri(), ModelFactory.createDefaultModel());
+        
 	return modifyBuilder;
     }
+    
+    /**
+     * Returns compiled template update, if available.
+     * 
+     * @return update plan or null
+     */
+    public UpdatePlan getUpdatePlan()
+    {
+        return updatePlan;
+    }
 
     public ModifyBuilder getModifyBuilderWithData(ModifyBuilder builder, Model model)
     {
@@ -559,6 +1483,8 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     
     public UpdateRequest getUpdateRequest(Model model)
     {
+        if (getUpdatePlan() != null) return getUpdatePlan().getUpdateRequest(getQuerySolutionMap(), model);
+        
         if (model != null && !model.isEmpty())
             return new ParameterizedSparqlString(getModifyBuilderWithData(getModifyBuilder(), model).build().toString(),
                     getQuerySolutionMap(), getUriInfo().getBaseUri().toString()).asUpdate();
@@ -581,6 +1507,117 @@ public class ResourceBase extends QueriedResourceBase implements com.atomgraph.s
     {
         return resourceContext;
     }
+
+    /**
+     * Returns JAX-RS providers. They are injected into the field after construction, so they are available from
+     * {@link #init()} on, but not in constructors.
+     * 
+     * @return providers
+     */
+    public Providers getProviders()
+    {
+        return providers;
+    }
+    
+    /**
+     * Returns <code>INSERT DATA</code> coalescer, if write batching is configured.
+     * 
+     * @return coalescer or null
+     */
+    public InsertDataCoalescer getInsertDataCoalescer()
+    {
+        return getProviders().getContextResolver(InsertDataCoalescer.class, null).getContext(InsertDataCoalescer.class);
+    }
+    
+    /**
+     * Returns queue of asynchronous writes, if configured.
+     * 
+     * @return update queue or null
+     */
+    public UpdateQueue getUpdateQueue()
+    {
+        return getProviders().getContextResolver(UpdateQueue.class, null).getContext(UpdateQueue.class);
+    }
+    
+    /**
+     * Returns data version registry, if versions are tracked.
+     * 
+     * @return version registry or null
+     */
+    public VersionRegistry getVersionRegistry()
+    {
+        return getProviders().getContextResolver(VersionRegistry.class, null).getContext(VersionRegistry.class);
+    }
+
+    public MetricsRegistry getMetricsRegistry()
+    {
+        return getProviders().getContextResolver(MetricsRegistry.class, null).getContext(MetricsRegistry.class);
+    }
+
+    public SlowQueryLog getSlowQueryLog()
+    {
+        return getProviders().getContextResolver(SlowQueryLog.class, null).getContext(SlowQueryLog.class);
+    }
+    
+    /**
+     * Returns checker of resource and graph existence, if configured.
+     * 
+     * @return existence checker or null
+     */
+    public ExistenceChecker getExistenceChecker()
+    {
+        return getProviders().getContextResolver(ExistenceChecker.class, null).getContext(ExistenceChecker.class);
+    }
+    
+    /**
+     * Returns optimizer of built queries, if enabled.
+     * 
+     * @return query optimizer or null
+     */
+    public QueryOptimizer getQueryOptimizer()
+    {
+        return getProviders().getContextResolver(QueryOptimizer.class, null).getContext(QueryOptimizer.class);
+    }
+    
+    /**
+     * Returns full-text index of literals, if configured.
+     * 
+     * @return text index or null
+     */
+    public TextIndex getTextIndex()
+    {
+        return getProviders().getContextResolver(TextIndex.class, null).getContext(TextIndex.class);
+    }
+    
+    /**
+     * Returns cache of compiled template updates, if configured.
+     * 
+     * @return update plan cache or null
+     */
+    public UpdatePlanCache getUpdatePlanCache()
+    {
+        return getProviders().getContextResolver(UpdatePlanCache.class, null).getContext(UpdatePlanCache.class);
+    }
+    
+    /**
+     * Returns cache of precomputed response headers, if configured.
+     * 
+     * @return header cache or null
+     */
+    public HeaderCache getHeaderCache()
+    {
+        return getProviders().getContextResolver(HeaderCache.class, null).getContext(HeaderCache.class);
+    }
+    
+    /**
+     * Returns query statistics of this request, if the slow-query log is enabled.
+     * 
+     * @return query profile or null
+     */
+    public QueryProfile getQueryProfile()
+    {
+        return queryProfile;
+    }
  
     @Override
     public com.atomgraph.processor.model.Application getApplication()
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.provider;
+
+import com.atomgraph.server.util.GraphStreamer;
+import com.sun.jersey.core.spi.component.ComponentContext;
+import com.sun.jersey.spi.inject.Injectable;
+import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Graph streamer provider.
+ * Provides null if neither dataset nor SPARQL endpoint is configured.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@Provider
+public class GraphStreamerProvider extends PerRequestTypeInjectableProvider<Context, GraphStreamer> implements ContextResolver<GraphStreamer>
+{
+
+    private final GraphStreamer graphStreamer;
+
+    public GraphStreamerProvider(GraphStreamer graphStreamer)
+    {
+        super(GraphStreamer.class);
+        this.graphStreamer = graphStreamer;
+    }
+
+    @Override
+    public Injectable<GraphStreamer> getInjectable(ComponentContext cc, Context context)
+    {
+	return new Injectable<GraphStreamer>()
+	{
+	    @Override
+	    public GraphStreamer getValue()
+	    {
+                return getGraphStreamer();
+	    }
+	};
+    }
+
+    @Override
+    public GraphStreamer getContext(Class<?> type)
+    {
+        return getGraphStreamer();
+    }
+
+    public GraphStreamer getGraphStreamer()
+    {
+        return graphStreamer;
+    }
+
+}
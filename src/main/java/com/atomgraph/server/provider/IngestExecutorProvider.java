@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.provider;
+
+import com.atomgraph.server.util.IngestExecutor;
+import com.sun.jersey.core.spi.component.ComponentContext;
+import com.sun.jersey.spi.inject.Injectable;
+import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Ingest worker pool provider.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@Provider
+public class IngestExecutorProvider extends PerRequestTypeInjectableProvider<Context, IngestExecutor> implements ContextResolver<IngestExecutor>
+{
+
+    private final IngestExecutor ingestExecutor;
+
+    public IngestExecutorProvider(IngestExecutor ingestExecutor)
+    {
+        super(IngestExecutor.class);
+        this.ingestExecutor = ingestExecutor;
+    }
+
+    @Override
+    public Injectable<IngestExecutor> getInjectable(ComponentContext cc, Context context)
+    {
+	return new Injectable<IngestExecutor>()
+	{
+	    @Override
+	    public IngestExecutor getValue()
+	    {
+                return getIngestExecutor();
+	    }
+	};
+    }
+
+    @Override
+    public IngestExecutor getContext(Class<?> type)
+    {
+        return getIngestExecutor();
+    }
+
+    public IngestExecutor getIngestExecutor()
+    {
+        return ingestExecutor;
+    }
+
+}
@@ -22,23 +22,34 @@ import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.ontology.OntResource;
 import org.apache.jena.ontology.Ontology;
 import org.apache.jena.util.iterator.ExtendedIterator;
+import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
 import java.util.HashMap;
 import java.util.Map;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
+import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.shared.Lock;
-import com.atomgraph.processor.exception.OntologyException;
+import com.atomgraph.server.util.ImportCache;
+import com.atomgraph.server.util.Sitemap;
+import com.atomgraph.server.util.SitemapCache;
+import com.atomgraph.server.util.SitemapLoader;
+import com.atomgraph.server.util.SitemapRegistry;
 import javax.ws.rs.ext.Providers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Application ontology provider.
+ * If the ontology is materialized, requests read the current snapshot of the {@link SitemapLoader} of their
+ * application, which can be reloaded without restarting the webapp.
+ * The snapshot and the ontology view are resolved once per request and stored as request properties, so that every
+ * component of a request sees the same snapshot even if a reload completes while it is running.
  * 
  * @author Martynas Jusevičius <martynas@atomgraph.com>
  */
@@ -47,12 +58,23 @@ public class OntologyProvider extends PerRequestTypeInjectableProvider<Context,
 {
     private static final Logger log = LoggerFactory.getLogger(OntologyProvider.class);
     
+    public static final String SITEMAP_PROPERTY = OntologyProvider.class.getName() + ".sitemap";
+    public static final String ONTOLOGY_PROPERTY = OntologyProvider.class.getName() + ".ontology";
+    
     @Context Providers providers;
+    @Context UriInfo uriInfo;
+    @Context HttpContext httpContext;
 
     private final OntModelSpec ontModelSpec;
     private final String ontologyURI;
+    private final SitemapRegistry sitemapRegistry;
     
     public OntologyProvider(OntDocumentManager manager, String ontologyURI, OntModelSpec ontModelSpec, boolean materialize)
+    {
+        this(manager, ontologyURI, ontModelSpec, materialize, null);
+    }
+    
+    public OntologyProvider(OntDocumentManager manager, String ontologyURI, OntModelSpec ontModelSpec, boolean materialize, SitemapCache sitemapCache)
     {
         super(Ontology.class);
         
@@ -64,26 +86,27 @@ public class OntologyProvider extends PerRequestTypeInjectableProvider<Context,
         this.ontModelSpec = ontModelSpec;
         
         // materialize OntModel inferences to avoid invoking rules engine on every request
-        if (materialize && ontModelSpec.getReasoner() != null)
-        {
-            OntModel infModel = getOntModel(OntDocumentManager.getInstance(), ontologyURI, ontModelSpec);
-            Ontology ontology = infModel.getOntology(ontologyURI);
-
-            ImportCycleChecker checker = new ImportCycleChecker();
-            checker.check(ontology);
-            if (checker.getCycleOntology() != null)
-            {
-                if (log.isErrorEnabled()) log.error("Sitemap contains an ontology which forms an import cycle: {}", checker.getCycleOntology());
-                throw new OntologyException("Sitemap contains an ontology which forms an import cycle: " + checker.getCycleOntology().getURI());
-            }
-            
-            OntModel materializedModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
-            materializedModel.add(infModel);
-            manager.addModel(ontologyURI, materializedModel, true);
-        }
+        if (materialize && ontModelSpec.getReasoner() != null) this.sitemapRegistry = new SitemapRegistry(new SitemapLoader(manager, ontologyURI, ontModelSpec, sitemapCache));
+        else this.sitemapRegistry = null;
+    }
+    
+    /**
+     * Constructs provider of materialized sitemaps, selected by the base URI of the request.
+     * 
+     * @param sitemapRegistry sitemaps of the hosted applications
+     */
+    public OntologyProvider(SitemapRegistry sitemapRegistry)
+    {
+        super(Ontology.class);
+        
+        if (sitemapRegistry == null) throw new IllegalArgumentException("SitemapRegistry cannot be null");
+        
+        this.ontologyURI = sitemapRegistry.getDefaultLoader().getOntologyURI();
+        this.ontModelSpec = sitemapRegistry.getDefaultLoader().getOntModelSpec();
+        this.sitemapRegistry = sitemapRegistry;
     }
                 
-    public class ImportCycleChecker
+    public static class ImportCycleChecker
     {
         private final Map<Ontology, Boolean> marked = new HashMap<>(), onStack = new HashMap<>();
         private Ontology cycleOntology = null;
@@ -148,11 +171,73 @@ public class OntologyProvider extends PerRequestTypeInjectableProvider<Context,
         return getOntology();
     }
     
+    /**
+     * Returns the ontology view of this request, built on first access.
+     * 
+     * @return ontology
+     */
     public Ontology getOntology()
-    {        
+    {
+        Map<String, Object> properties = getHttpContext().getProperties();
+        Ontology ontology = (Ontology)properties.get(ONTOLOGY_PROPERTY);
+        if (ontology == null)
+        {
+            ontology = createOntology();
+            properties.put(ONTOLOGY_PROPERTY, ontology);
+        }
+        
+        return ontology;
+    }
+    
+    /**
+     * Builds a new ontology view of the snapshot of this request. Views are not thread-safe, so threads working on
+     * the same request need their own.
+     * 
+     * @return ontology
+     */
+    public Ontology createOntology()
+    {
+        Sitemap sitemap = getSitemap();
+        if (sitemap != null) return sitemap.getOntology();
+        
         return getOntModel(OntDocumentManager.getInstance(), getOntologyURI(), OntModelSpec.OWL_MEM).getOntology(getOntologyURI());
     }
     
+    /**
+     * Returns the sitemap snapshot of this request, resolved on first access.
+     * 
+     * @return snapshot, or null if the ontology is not materialized
+     */
+    public Sitemap getSitemap()
+    {
+        if (getSitemapRegistry() == null) return null;
+        
+        return getSitemap(getHttpContext().getProperties(), getSitemapRegistry().getLoader(getUriInfo().getBaseUri()));
+    }
+    
+    /**
+     * Returns the sitemap snapshot stored in the request properties, storing the current snapshot of the loader if
+     * there is none yet.
+     * 
+     * @param properties request properties
+     * @param loader sitemap loader of the request application
+     * @return snapshot
+     */
+    public static Sitemap getSitemap(Map<String, Object> properties, SitemapLoader loader)
+    {
+        if (properties == null) throw new IllegalArgumentException("Property Map cannot be null");
+        if (loader == null) throw new IllegalArgumentException("SitemapLoader cannot be null");
+        
+        Sitemap sitemap = (Sitemap)properties.get(SITEMAP_PROPERTY);
+        if (sitemap == null)
+        {
+            sitemap = loader.getSitemap();
+            properties.put(SITEMAP_PROPERTY, sitemap);
+        }
+        
+        return sitemap;
+    }
+    
     /**
      * Loads ontology by URI.
      * 
@@ -168,6 +253,14 @@ public class OntologyProvider extends PerRequestTypeInjectableProvider<Context,
         if (ontModelSpec == null) throw new IllegalArgumentException("OntModelSpec cannot be null");        
         if (log.isDebugEnabled()) log.debug("Loading sitemap ontology from URI: {}", ontologyURI);
 
+        // parse the import closure in parallel and hand it to the manager, so that the imports are found in its cache
+        if (manager.getProcessImports() && manager.getCacheModels())
+        {
+            Model base = manager.getFileManager().loadModel(ontologyURI); // cached, read by getOntology() anyway
+            for (Map.Entry<String, Model> imported : ImportCache.get().loadImports(manager.getFileManager(), base).entrySet())
+                manager.addModel(imported.getKey(), imported.getValue());
+        }
+        
         OntModel ontModel = manager.getOntology(ontologyURI, ontModelSpec);
         
         // explicitly loading owl:imports -- workaround for Jena bug: https://issues.apache.org/jira/browse/JENA-1210
@@ -204,9 +297,29 @@ public class OntologyProvider extends PerRequestTypeInjectableProvider<Context,
         return ontModelSpec;
     }
     
+    /**
+     * Returns sitemaps of the hosted applications, if the ontology is materialized.
+     * 
+     * @return registry or null
+     */
+    public SitemapRegistry getSitemapRegistry()
+    {
+        return sitemapRegistry;
+    }
+    
+    public UriInfo getUriInfo()
+    {
+        return uriInfo;
+    }
+    
     public Providers getProviders()
     {
         return providers;
     }
     
+    public HttpContext getHttpContext()
+    {
+        return httpContext;
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.provider;
+
+import com.atomgraph.server.metrics.SlowQueryLog;
+import com.sun.jersey.core.spi.component.ComponentContext;
+import com.sun.jersey.spi.inject.Injectable;
+import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Slow-query log provider.
+ * Provides null if the slow-query log is disabled.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@Provider
+public class SlowQueryLogProvider extends PerRequestTypeInjectableProvider<Context, SlowQueryLog> implements ContextResolver<SlowQueryLog>
+{
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SlowQueryLogProvider(SlowQueryLog slowQueryLog)
+    {
+        super(SlowQueryLog.class);
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Injectable<SlowQueryLog> getInjectable(ComponentContext cc, Context context)
+    {
+	return new Injectable<SlowQueryLog>()
+	{
+	    @Override
+	    public SlowQueryLog getValue()
+	    {
+                return getSlowQueryLog();
+	    }
+	};
+    }
+
+    @Override
+    public SlowQueryLog getContext(Class<?> type)
+    {
+        return getSlowQueryLog();
+    }
+
+    public SlowQueryLog getSlowQueryLog()
+    {
+        return slowQueryLog;
+    }
+
+}
@@ -17,6 +17,7 @@ package com.atomgraph.server.provider;
 
 import com.atomgraph.processor.model.Template;
 import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.metrics.MetricsRegistry;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
 import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
@@ -70,10 +71,16 @@ public class TemplateCallProvider extends PerRequestTypeInjectableProvider<Conte
     
     public TemplateCall getTemplateCall()
     {
-        if (getTemplate() != null)
-            return getTemplateCall(getTemplate(), getUriInfo().getAbsolutePath(), getUriInfo().getQueryParameters());
+        Template template = getTemplate();
+        if (template == null) return null;
         
-        return null;
+        MetricsRegistry metrics = getMetricsRegistry();
+        if (metrics == null) return getTemplateCall(template, getUriInfo().getAbsolutePath(), getUriInfo().getQueryParameters());
+        
+        long start = System.nanoTime();
+        TemplateCall templateCall = getTemplateCall(template, getUriInfo().getAbsolutePath(), getUriInfo().getQueryParameters());
+        metrics.record(MetricsRegistry.STAGE_TEMPLATE_CALL, template.getURI(), null, 0, System.nanoTime() - start);
+        return templateCall;
     }
     
     public TemplateCall getTemplateCall(Template template, URI absolutePath, MultivaluedMap<String, String> queryParams)
@@ -97,6 +104,11 @@ public class TemplateCallProvider extends PerRequestTypeInjectableProvider<Conte
 	return getProviders().getContextResolver(Template.class, null).getContext(Template.class);
     }
 
+    public MetricsRegistry getMetricsRegistry()
+    {
+	return getProviders().getContextResolver(MetricsRegistry.class, null).getContext(MetricsRegistry.class);
+    }
+    
     public Providers getProviders()
     {
         return providers;
@@ -26,6 +26,7 @@ import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Providers;
 import com.atomgraph.processor.util.TemplateMatcher;
+import com.atomgraph.server.metrics.MetricsRegistry;
 import javax.ws.rs.ext.Provider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,7 +70,13 @@ public class TemplateProvider extends PerRequestTypeInjectableProvider<Context,
 
     public Template getTemplate()
     {
-        return getTemplate(getOntology(), getUriInfo());
+        MetricsRegistry metrics = getMetricsRegistry();
+        if (metrics == null) return getTemplate(getOntology(), getUriInfo());
+        
+        long start = System.nanoTime();
+        Template template = getTemplate(getOntology(), getUriInfo());
+        metrics.record(MetricsRegistry.STAGE_MATCH, template != null ? template.getURI() : null, null, 0, System.nanoTime() - start);
+        return template;
     }
 
     public Template getTemplate(Ontology ontology, UriInfo uriInfo)
@@ -87,6 +94,11 @@ public class TemplateProvider extends PerRequestTypeInjectableProvider<Context,
 	return getProviders().getContextResolver(Ontology.class, null).getContext(Ontology.class);
     }
     
+    public MetricsRegistry getMetricsRegistry()
+    {
+	return getProviders().getContextResolver(MetricsRegistry.class, null).getContext(MetricsRegistry.class);
+    }
+    
     public Providers getProviders()
     {
         return providers;
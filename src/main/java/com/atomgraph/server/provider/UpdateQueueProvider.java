@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.provider;
+
+import com.atomgraph.server.util.UpdateQueue;
+import com.sun.jersey.core.spi.component.ComponentContext;
+import com.sun.jersey.spi.inject.Injectable;
+import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Asynchronous update queue provider.
+ * Provides null if asynchronous writes are not configured.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@Provider
+public class UpdateQueueProvider extends PerRequestTypeInjectableProvider<Context, UpdateQueue> implements ContextResolver<UpdateQueue>
+{
+
+    private final UpdateQueue updateQueue;
+
+    public UpdateQueueProvider(UpdateQueue updateQueue)
+    {
+        super(UpdateQueue.class);
+        this.updateQueue = updateQueue;
+    }
+
+    @Override
+    public Injectable<UpdateQueue> getInjectable(ComponentContext cc, Context context)
+    {
+	return new Injectable<UpdateQueue>()
+	{
+	    @Override
+	    public UpdateQueue getValue()
+	    {
+                return getUpdateQueue();
+	    }
+	};
+    }
+
+    @Override
+    public UpdateQueue getContext(Class<?> type)
+    {
+        return getUpdateQueue();
+    }
+
+    public UpdateQueue getUpdateQueue()
+    {
+        return updateQueue;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.provider;
+
+import com.atomgraph.server.util.VersionRegistry;
+import com.sun.jersey.core.spi.component.ComponentContext;
+import com.sun.jersey.spi.inject.Injectable;
+import com.sun.jersey.spi.inject.PerRequestTypeInjectableProvider;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Data version registry provider.
+ * Provides null if version tracking is not enabled.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+@Provider
+public class VersionRegistryProvider extends PerRequestTypeInjectableProvider<Context, VersionRegistry> implements ContextResolver<VersionRegistry>
+{
+
+    private final VersionRegistry versionRegistry;
+
+    public VersionRegistryProvider(VersionRegistry versionRegistry)
+    {
+        super(VersionRegistry.class);
+        this.versionRegistry = versionRegistry;
+    }
+
+    @Override
+    public Injectable<VersionRegistry> getInjectable(ComponentContext cc, Context context)
+    {
+	return new Injectable<VersionRegistry>()
+	{
+	    @Override
+	    public VersionRegistry getValue()
+	    {
+                return getVersionRegistry();
+	    }
+	};
+    }
+
+    @Override
+    public VersionRegistry getContext(Class<?> type)
+    {
+        return getVersionRegistry();
+    }
+
+    public VersionRegistry getVersionRegistry()
+    {
+        return versionRegistry;
+    }
+
+}
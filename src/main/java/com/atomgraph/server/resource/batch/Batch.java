@@ -0,0 +1,323 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.batch;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.util.TemplateMatcher;
+import com.atomgraph.processor.vocabulary.APT;
+import com.atomgraph.processor.vocabulary.LDT;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.sun.jersey.api.core.ResourceContext;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.UriInfo;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.vocabulary.RDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * Batch description resource.
+ * Describes multiple resources of this application in one request. Resource URIs are passed as <code>uri</code>
+ * query params, or as a <code>text/uri-list</code> POST body. Every URI is matched against the sitemap, and resources
+ * matching the same template are described with a single query that binds <code>?this</code> in a
+ * <code>VALUES</code> block. Template queries with sub-queries or their own <code>VALUES</code> cannot be bound this
+ * way and are executed once per resource. Template params are not applied.
+ * If versions are tracked, the entity tag of every resource is returned in a <code>Resource-ETag</code> header, so that
+ * clients can revalidate the resources separately. The description itself is not changed.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class Batch extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(Batch.class);
+
+    public static final int MAX_RESOURCES = 1000;
+    public static final String RESOURCE_ETAG_HEADER = "Resource-ETag";
+
+    public Batch(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @Override
+    public Response get()
+    {
+        Set<String> uris = new LinkedHashSet<>();
+        StmtIterator it = getTemplateCall().getResource().listProperties(LDT.arg);
+        try
+        {
+            while (it.hasNext())
+            {
+                Resource arg = it.next().getResource();
+                if (arg.getPropertyResourceValue(SPL.predicate).equals(APT.uri))
+                {
+                    Statement value = arg.getRequiredProperty(RDF.value);
+                    if (value.getObject().isURIResource()) uris.add(value.getResource().getURI());
+                }
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return getResponse(getGroups(uris));
+    }
+
+    /**
+     * Handles POST of a URI list.
+     *
+     * @param uriList request body
+     * @return response with merged description
+     */
+    @POST
+    @Consumes("text/uri-list")
+    public Response batch(String uriList)
+    {
+        Set<String> uris = new LinkedHashSet<>();
+        for (String line : uriList.split("\r?\n"))
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) uris.add(line); // # starts a comment line
+        }
+
+        return getResponse(getGroups(uris));
+    }
+
+    /**
+     * Returns response with the merged description of the resources and their entity tags.
+     *
+     * @param groups resource URIs grouped by matching template
+     * @return response
+     */
+    public Response getResponse(Map<Template, List<String>> groups)
+    {
+        ResponseBuilder rb = getResponseBuilder(describe(groups));
+
+        MediaType mediaType = getVariantMediaType();
+        for (Map.Entry<Template, List<String>> group : groups.entrySet())
+        {
+            EntityTag entityTag = getEntityTag(group.getKey(), mediaType);
+            if (entityTag != null)
+                for (String uri : group.getValue()) rb.header(RESOURCE_ETAG_HEADER, "<" + uri + "> " + entityTag);
+        }
+
+        return rb.build();
+    }
+
+    @Override
+    public Response post(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    /**
+     * Groups resources by matching template. URIs outside the application base or not matching any template are
+     * skipped.
+     *
+     * @param uris resource URIs
+     * @return resource URIs by template
+     */
+    public Map<Template, List<String>> getGroups(Set<String> uris)
+    {
+        if (uris == null) throw new IllegalArgumentException("URI Set cannot be null");
+        if (uris.size() > getMaxResources())
+        {
+            if (log.isDebugEnabled()) log.debug("Batch of {} resources exceeds the limit of {}", uris.size(), getMaxResources());
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        URI base = getUriInfo().getBaseUri();
+        TemplateMatcher matcher = new TemplateMatcher(getOntology());
+        Map<Template, List<String>> groups = new LinkedHashMap<>();
+        for (String uri : uris)
+        {
+            URI resourceURI;
+            try
+            {
+                resourceURI = URI.create(uri);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Skipping invalid batch URI: {}", uri);
+                continue;
+            }
+            if (!resourceURI.isAbsolute() || base.relativize(resourceURI).equals(resourceURI))
+            {
+                if (log.isDebugEnabled()) log.debug("Skipping batch URI outside of the base URI: {}", uri);
+                continue;
+            }
+
+            Template template = matcher.match(resourceURI, base);
+            if (template == null)
+            {
+                if (log.isDebugEnabled()) log.debug("Skipping batch URI that did not match any template: {}", uri);
+                continue;
+            }
+
+            List<String> group = groups.get(template);
+            if (group == null)
+            {
+                group = new ArrayList<>();
+                groups.put(template, group);
+            }
+            group.add(uri);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Describes resources with one query per template.
+     *
+     * @param groups resource URIs grouped by matching template
+     * @return merged description
+     */
+    public Model describe(Map<Template, List<String>> groups)
+    {
+        if (groups == null) throw new IllegalArgumentException("Template Map cannot be null");
+
+        URI base = getUriInfo().getBaseUri();
+        Model model = ModelFactory.createDefaultModel();
+        for (Map.Entry<Template, List<String>> group : groups.entrySet())
+        {
+            Template template = group.getKey();
+            String command = template.getQueryBuilder(base, ModelFactory.createDefaultModel()).build().toString();
+            Query query = getBatchQuery(QueryFactory.create(command, base.toString()), group.getValue());
+            if (query != null)
+            {
+                if (log.isDebugEnabled()) log.debug("Describing {} resources of template {} with query: {}", group.getValue().size(), template, query);
+                model.add(getSPARQLEndpoint().loadModel(query));
+            }
+            else
+                for (String uri : group.getValue())
+                {
+                    QuerySolutionMap qsm = new QuerySolutionMap();
+                    qsm.add(SPIN.THIS_VAR_NAME, model.createResource(uri));
+                    model.add(getSPARQLEndpoint().loadModel(getQuery(command, qsm, base.toString())));
+                }
+        }
+
+        return model;
+    }
+
+    /**
+     * Binds <code>?this</code> to the resource URIs with a <code>VALUES</code> block placed before the query pattern.
+     *
+     * @param query template query
+     * @param uris resource URIs
+     * @return bound query, or null if the query cannot be bound in the outermost scope
+     */
+    public static Query getBatchQuery(Query query, List<String> uris)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (uris == null) throw new IllegalArgumentException("URI List cannot be null");
+        if (query.hasValues() || hasSubQuery(query)) return null;
+
+        Var thisVar = Var.alloc(SPIN.THIS_VAR_NAME);
+        ElementData data = new ElementData();
+        data.add(thisVar);
+        for (String uri : uris) data.add(BindingFactory.binding(thisVar, NodeFactory.createURI(uri)));
+
+        ElementGroup group = new ElementGroup();
+        group.addElement(data);
+        if (query.getQueryPattern() != null) group.addElement(query.getQueryPattern());
+        query.setQueryPattern(group);
+
+        return query;
+    }
+
+    // sub-queries have their own ?this scope, so the outer VALUES block would not restrict them
+    private static boolean hasSubQuery(Query query)
+    {
+        if (query.getQueryPattern() == null) return false;
+
+        final boolean[] found = { false };
+        ElementWalker.walk(query.getQueryPattern(), new ElementVisitorBase()
+        {
+            @Override
+            public void visit(ElementSubQuery el)
+            {
+                found[0] = true;
+            }
+        });
+        return found[0];
+    }
+
+    public int getMaxResources()
+    {
+        return MAX_RESOURCES;
+    }
+
+}
@@ -17,27 +17,46 @@
 package com.atomgraph.server.resource.graph;
 
 import com.atomgraph.core.MediaTypes;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.Callable;
 import org.apache.jena.ontology.Ontology;
 import org.apache.jena.rdf.model.Model;
 import com.sun.jersey.api.core.ResourceContext;
 import javax.ws.rs.core.Context;
+import java.util.Date;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 import com.atomgraph.core.model.GraphStore;
 import com.atomgraph.core.model.SPARQLEndpoint;
 import com.atomgraph.server.model.impl.ResourceBase;
 import com.atomgraph.core.util.ModelUtils;
 import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.util.ExistenceChecker;
+import com.atomgraph.server.util.GraphStreamer;
+import com.atomgraph.server.util.TextIndex;
+import com.atomgraph.processor.vocabulary.DH;
+import org.apache.jena.riot.RDFFormat;
+import com.atomgraph.server.util.VersionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Named graph resource.
  * Implements direct graph identification of the SPARQL Graph Store Protocol.
+ * If graph streaming is enabled, N-Triples, N-Quads and Turtle representations are streamed from the local dataset,
+ * other formats are serialized from a model.
+ * If the template declares <code>dh:offset</code> and <code>dh:limit</code> params, they select a range of triples.
  * 
  * @author Martynas Jusevičius <martynas@atomgraph.com>
  * @see com.atomgraph.core.model.GraphStore
@@ -64,22 +83,151 @@ public class Item extends ResourceBase
     public Response get()
     {
 	if (log.isDebugEnabled()) log.debug("GET GRAPH {} from GraphStore {}", getURI(), getGraphStore());        
-        return getResponse(getGraphStore().getModel(getURI().toString()));
+        ResponseBuilder rb = evaluatePreconditions();
+        if (rb != null) return rb.build();
+        
+        Long offset = null, limit = null; // triple range, if the template declares the paging params
+        if (getTemplateCall().hasArgument(DH.offset)) offset = getTemplateCall().getArgumentProperty(DH.offset).getLong();
+        if (getTemplateCall().hasArgument(DH.limit)) limit = getTemplateCall().getArgumentProperty(DH.limit).getLong();
+        
+        GraphStreamer graphStreamer = getGraphStreamer();
+        if (graphStreamer != null)
+        {
+            Variant variant = getRequest().selectVariant(getVariants());
+            RDFFormat format = variant != null ? GraphStreamer.getFormat(variant.getMediaType()) : null;
+            if (format != null) return getStreamingResponse(graphStreamer.open(getURI().toString(), offset, limit), format, variant);
+        }
+        
+        long start = System.nanoTime();
+        Model model;
+        if (offset != null || limit != null) model = getSPARQLEndpoint().loadModel(GraphStreamer.getQuery(getURI().toString(), offset, limit));
+        else model = getGraphStore().getModel(getURI().toString());
+        if (getMetricsRegistry() != null) recordMetric(MetricsRegistry.STAGE_SPARQL, start);
+        profile(null, start, model);
+        
+        return getResponse(model);
+    }
+    
+    /**
+     * Returns response that writes this graph to the client as it is read from the dataset.
+     * The query is already running, so failures to read the graph surface as an error status; a failure midway aborts
+     * the response.
+     * 
+     * @param triples open triple stream
+     * @param format streaming format
+     * @param variant selected variant
+     * @return response
+     */
+    public Response getStreamingResponse(final GraphStreamer.TripleStream triples, final RDFFormat format, Variant variant)
+    {
+        ResponseBuilder rb = Response.ok(new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream out) throws IOException
+            {
+                triples.write(format, out);
+            }
+        }, variant).
+            header(HttpHeaders.VARY, HttpHeaders.ACCEPT).
+            cacheControl(getCacheControl());
+        
+        EntityTag entityTag = getEntityTag(variant.getMediaType());
+        if (entityTag != null) rb.tag(entityTag);
+        Date lastModified = getLastModified();
+        if (lastModified != null) rb.lastModified(lastModified);
+        getResponseHeaders().apply(rb);
+        
+        return rb.build();
+    }
+    
+    /**
+     * Returns entity tag of the current version of this graph in the specified media type.
+     * 
+     * @param mediaType representation media type, can be null
+     * @return entity tag or null, if versions are not tracked
+     */
+    @Override
+    public EntityTag getEntityTag(MediaType mediaType)
+    {
+        VersionRegistry versionRegistry = getVersionRegistry();
+        if (versionRegistry == null) return null;
+        
+        return versionRegistry.getEntityTag(mediaType, versionRegistry.getVersion(getURI().toString()));
+    }
+
+    /**
+     * Returns last modification date of this graph. The graph is returned as is, so templates do not affect it.
+     * 
+     * @return last modification date or null, if versions are not tracked
+     */
+    @Override
+    public Date getLastModified()
+    {
+        VersionRegistry versionRegistry = getVersionRegistry();
+        if (versionRegistry == null) return null;
+        
+        return versionRegistry.getLastModified(getURI().toString());
     }
 
     @Override
-    public Response post(Model model)
+    public Response post(final Model model)
     {
 	if (log.isDebugEnabled()) log.debug("POST GRAPH {} to GraphStore {}", getURI(), getGraphStore());
-        return getGraphStore().post(model, Boolean.FALSE, getURI());
+        final Runnable indexUpdate = getGraphIndexUpdate(false, model);
+        if (isRespondAsync())
+        {
+            final GraphStore graphStore = getGraphStore();
+            final URI graphURI = getURI();
+            return submit(graphURI.toString(), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    graphStore.post(model, Boolean.FALSE, graphURI);
+                    if (indexUpdate != null) indexUpdate.run();
+                }
+            }, Response.Status.NO_CONTENT, graphURI);
+        }
+        
+        final GraphStore graphStore = getGraphStore();
+        final URI graphURI = getURI();
+        Response response;
+        try
+        {
+            response = execute(graphURI.toString(), new Callable<Response>()
+            {
+                @Override
+                public Response call()
+                {
+                    return graphStore.post(model, Boolean.FALSE, graphURI);
+                }
+            });
+        }
+        finally
+        {
+            bumpVersion(getURI().toString());
+        }
+        if (indexUpdate != null) indexUpdate.run();
+        
+        return response;
     }
 
     @Override
-    public Response put(Model model)
+    public Response put(final Model model)
     {
-	Model existing = getGraphStore().getModel(getURI().toString());
+        if (getVersionRegistry() != null) // version entity tag is checked before the graph is retrieved
+        {
+            ResponseBuilder rb = evaluatePreconditions();
+	    if (rb != null)
+	    {
+		if (log.isDebugEnabled()) log.debug("PUT preconditions were not met for resource: {} with entity tag: {}", this, getEntityTag());
+		return rb.build();
+	    }
+        }
+        
+	boolean exists = containsGraph();
 
-	if (!existing.isEmpty()) // remove existing representation
+	if (getVersionRegistry() == null && exists) // remove existing representation
 	{
 	    EntityTag entityTag = new EntityTag(Long.toHexString(ModelUtils.hashModel(model)));
 	    ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
@@ -91,17 +239,134 @@ public class Item extends ResourceBase
         }
         
         if (log.isDebugEnabled()) log.debug("PUT GRAPH {} to GraphStore {}", getURI(), getGraphStore());
-        getGraphStore().put(model, Boolean.FALSE, getURI());
+        final Runnable indexUpdate = getGraphIndexUpdate(true, model);
+        if (isRespondAsync())
+        {
+            final GraphStore graphStore = getGraphStore();
+            final URI graphURI = getURI();
+            return submit(graphURI.toString(), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    graphStore.put(model, Boolean.FALSE, graphURI);
+                    if (indexUpdate != null) indexUpdate.run();
+                }
+            }, exists ? Response.Status.OK : Response.Status.CREATED, graphURI);
+        }
         
-	if (existing.isEmpty()) return Response.created(getURI()).build();        
+        final GraphStore graphStore = getGraphStore();
+        final URI graphURI = getURI();
+        try
+        {
+            execute(graphURI.toString(), new Callable<Response>()
+            {
+                @Override
+                public Response call()
+                {
+                    return graphStore.put(model, Boolean.FALSE, graphURI);
+                }
+            });
+        }
+        finally
+        {
+            bumpVersion(getURI().toString());
+        }
+        if (indexUpdate != null) indexUpdate.run();
+        
+	if (!exists) return Response.created(getURI()).build();        
         else return Response.ok(model).build();
     }
+    
+    /**
+     * Checks whether this graph exists. Uses the existence checker if it can answer, otherwise retrieves the graph.
+     * 
+     * @return true if the graph is not empty
+     */
+    public boolean containsGraph()
+    {
+        ExistenceChecker checker = getExistenceChecker();
+        Boolean contains = checker != null ? checker.containsGraph(getURI().toString()) : null;
+        if (contains != null) return contains;
+        
+        return !getGraphStore().getModel(getURI().toString()).isEmpty();
+    }
 
+    /**
+     * Returns streamer of named graphs, if streaming is enabled.
+     * 
+     * @return graph streamer or null
+     */
+    public GraphStreamer getGraphStreamer()
+    {
+        return getProviders().getContextResolver(GraphStreamer.class, null).getContext(GraphStreamer.class);
+    }
+    
     @Override
     public Response delete()
     {
 	if (log.isDebugEnabled()) log.debug("DELETE GRAPH {} from GraphStore {}", getURI(), getGraphStore());
-        return getGraphStore().delete(Boolean.FALSE, getURI());
+        final Runnable indexUpdate = getGraphIndexUpdate(true, null);
+        if (isRespondAsync())
+        {
+            final GraphStore graphStore = getGraphStore();
+            final URI graphURI = getURI();
+            return submit(graphURI.toString(), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    graphStore.delete(Boolean.FALSE, graphURI);
+                    if (indexUpdate != null) indexUpdate.run();
+                }
+            }, Response.Status.NO_CONTENT, null);
+        }
+        
+        final GraphStore graphStore = getGraphStore();
+        final URI graphURI = getURI();
+        Response response;
+        try
+        {
+            response = execute(graphURI.toString(), new Callable<Response>()
+            {
+                @Override
+                public Response call()
+                {
+                    return graphStore.delete(Boolean.FALSE, graphURI);
+                }
+            });
+        }
+        finally
+        {
+            bumpVersion(getURI().toString());
+        }
+        if (indexUpdate != null) indexUpdate.run();
+        
+        return response;
+    }
+    
+    /**
+     * Returns text index update that follows a write of this graph.
+     * 
+     * @param replace if true, the resources indexed from this graph are removed first
+     * @param model written model, can be null
+     * @return index update, or null if the text index is not configured
+     */
+    public Runnable getGraphIndexUpdate(final boolean replace, final Model model)
+    {
+        final TextIndex textIndex = getTextIndex();
+        if (textIndex == null) return null;
+        
+        final String graphURI = getURI().toString();
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (replace) textIndex.removeGraph(graphURI);
+                if (model != null) textIndex.index(model, graphURI);
+            }
+        };
     }
     
 }
\ No newline at end of file
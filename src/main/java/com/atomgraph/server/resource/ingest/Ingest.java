@@ -0,0 +1,536 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.ingest;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.Skolemizer;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.util.Validator;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.provider.OntologyProvider;
+import com.atomgraph.server.util.IngestExecutor;
+import com.atomgraph.server.util.Sitemap;
+import com.atomgraph.server.util.TextIndex;
+import com.atomgraph.server.util.UpdateQueue;
+import com.atomgraph.server.util.VersionRegistry;
+import com.atomgraph.server.vocabulary.HTTP;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.core.ResourceContext;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.ontology.OntDocumentManager;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.update.UpdateRequest;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spinrdf.constraints.ConstraintViolation;
+import org.spinrdf.constraints.SPINConstraints;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Bulk ingest resource.
+ * Accepts streamed N-Triples or N-Quads and cuts the stream into chunks aligned on subject and graph boundaries.
+ * Chunks are validated, skolemized and inserted in parallel on the worker pool shared by all ingest requests; parsing
+ * blocks while the maximum number of chunks is in flight, so the upload is never held in memory as a whole.
+ * The response reports status and constraint violations of every chunk. Chunks with violations are not inserted.
+ * Chunks are committed as they are cut, so a syntax error cannot undo the chunks before it: the triples after the last
+ * complete chunk are discarded, and the response is <code>400 Bad Request</code> if nothing was inserted or
+ * <code>207 Multi-Status</code> if some chunks were.
+ * Blank nodes that span chunk boundaries are not merged, since every chunk is inserted as a separate update.
+ * Chunk inserts are ordered on the update queue with the other writes to their graphs, and update the text index.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class Ingest extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(Ingest.class);
+
+    public static final int CHUNK_SIZE = 10000;
+    public static final Response.StatusType MULTI_STATUS = new Response.StatusType()
+    {
+        @Override
+        public int getStatusCode()
+        {
+            return 207;
+        }
+
+        @Override
+        public Response.Status.Family getFamily()
+        {
+            return Response.Status.Family.SUCCESSFUL;
+        }
+
+        @Override
+        public String getReasonPhrase()
+        {
+            return "Multi-Status";
+        }
+    };
+
+    @Context private HttpContext httpContext;
+
+    public Ingest(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    /**
+     * Handles POST of an N-Triples or N-Quads stream.
+     *
+     * @param entityStream request body
+     * @return response with ingest report
+     */
+    @POST
+    @Consumes({"application/n-triples", "application/n-quads"})
+    public Response ingest(InputStream entityStream)
+    {
+        MediaType mediaType = getHttpHeaders().getMediaType();
+        Lang lang = RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+
+        Model report = ModelFactory.createDefaultModel();
+        Resource result = report.createResource().addProperty(RDF.type, HTTP.Response);
+
+        // one processor per chunk in flight, so that a pooled worker never waits for a processor of this request
+        int maxChunksInFlight = getMaxChunksInFlight();
+        BlockingQueue<ChunkProcessor> processors = new ArrayBlockingQueue<>(maxChunksInFlight);
+        for (int i = 0; i < maxChunksInFlight; i++)
+            processors.add(new ChunkProcessor(getWorkerOntology(), getUriInfo().getBaseUriBuilder(), getUriInfo().getBaseUri().toString(),
+                    getVersionRegistry(), getUpdateQueue(), getTextIndex()));
+
+        Chunker chunker = new Chunker(getIngestExecutor(), new Semaphore(maxChunksInFlight), processors, report, result);
+        boolean parsed = false;
+        try
+        {
+            RDFDataMgr.parse(chunker, entityStream, getURI().toString(), lang);
+            chunker.flush(); // the incomplete chunk is only submitted once the whole stream has parsed
+            parsed = true;
+        }
+        catch (RiotException ex)
+        {
+            if (log.isDebugEnabled()) log.debug("Ingest stream could not be parsed after {} triples", chunker.getCount(), ex);
+            synchronized (report)
+            {
+                result.addLiteral(DCTerms.title, ex.getMessage());
+            }
+        }
+        finally
+        {
+            chunker.await();
+        }
+
+        // chunks that were inserted before a failure stay committed, which is reported as a partial success
+        final Response.StatusType status;
+        if (parsed && chunker.getFailedCount() == 0) status = Response.Status.OK;
+        else if (chunker.getInsertedCount() == 0) status = Response.Status.BAD_REQUEST;
+        else status = MULTI_STATUS;
+
+        if (log.isDebugEnabled()) log.debug("Ingested {} triples in {} chunks, {} of them inserted", chunker.getCount(), chunker.getChunkCount(), chunker.getInsertedCount());
+        result.addLiteral(HTTP.statusCodeValue, status.getStatusCode()).
+            addLiteral(HTTP.reasonPhrase, status.getReasonPhrase()).
+            addLiteral(ResourceFactory.createProperty("http://rdfs.org/ns/void#triples"), chunker.getCount());
+
+        return getResponseBuilder(report).status(status).build();
+    }
+
+    /**
+     * Returns a separate ontology instance for a worker thread, as ontology models are not thread-safe. It is built
+     * from the same sitemap snapshot as the ontology of this request.
+     *
+     * @return ontology
+     */
+    public Ontology getWorkerOntology()
+    {
+        Sitemap sitemap = (Sitemap)httpContext.getProperties().get(OntologyProvider.SITEMAP_PROPERTY);
+        if (sitemap != null) return sitemap.getOntology();
+
+        String ontologyURI = getOntology().getURI();
+        return OntologyProvider.getOntModel(OntDocumentManager.getInstance(), ontologyURI, OntModelSpec.OWL_MEM).getOntology(ontologyURI);
+    }
+
+    public int getChunkSize()
+    {
+        return CHUNK_SIZE;
+    }
+
+    public IngestExecutor getIngestExecutor()
+    {
+        return getProviders().getContextResolver(IngestExecutor.class, null).getContext(IngestExecutor.class);
+    }
+
+    public int getMaxChunksInFlight()
+    {
+        return getIngestExecutor().getThreadCount();
+    }
+
+    /**
+     * RDF stream sink that cuts the stream into chunks and submits them for processing.
+     */
+    public class Chunker extends StreamRDFBase
+    {
+
+        private final Executor executor;
+        private final Semaphore permits;
+        private final BlockingQueue<ChunkProcessor> processors;
+        private final Model report;
+        private final Resource result;
+        private List<Quad> quads = new ArrayList<>();
+        private Node subject, graph;
+        private long count = 0;
+        private int chunkCount = 0;
+        private final AtomicInteger insertedCount = new AtomicInteger(), failedCount = new AtomicInteger();
+
+        public Chunker(Executor executor, Semaphore permits, BlockingQueue<ChunkProcessor> processors, Model report, Resource result)
+        {
+            this.executor = executor;
+            this.permits = permits;
+            this.processors = processors;
+            this.report = report;
+            this.result = result;
+        }
+
+        @Override
+        public void triple(Triple triple)
+        {
+            quad(new Quad(Quad.defaultGraphNodeGenerated, triple));
+        }
+
+        @Override
+        public void quad(Quad quad)
+        {
+            // only cut the chunk when the resource changes, so that its description is validated as a whole
+            if (quads.size() >= getChunkSize() && (!quad.getSubject().equals(subject) || !quad.getGraph().equals(graph)))
+                flush();
+
+            subject = quad.getSubject();
+            graph = quad.getGraph();
+            quads.add(quad);
+            count++;
+        }
+
+        /**
+         * Submits the buffered chunk. Blocks while the maximum number of chunks is in flight.
+         */
+        public void flush()
+        {
+            if (quads.isEmpty()) return;
+
+            final List<Quad> chunk = quads;
+            final int number = ++chunkCount;
+            quads = new ArrayList<>();
+
+            try
+            {
+                permits.acquire();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new WebApplicationException(ex);
+            }
+
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        ChunkProcessor processor = processors.take();
+                        try
+                        {
+                            Model chunkReport = ModelFactory.createDefaultModel();
+                            Resource chunkResult = processor.process(number, chunk, chunkReport);
+                            if (chunkResult.hasLiteral(HTTP.statusCodeValue, (long)Response.Status.CREATED.getStatusCode())) insertedCount.incrementAndGet();
+                            else failedCount.incrementAndGet();
+                            synchronized (report)
+                            {
+                                report.add(chunkReport);
+                                result.addProperty(DCTerms.hasPart, chunkResult);
+                            }
+                        }
+                        finally
+                        {
+                            processors.add(processor);
+                        }
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Waits until all submitted chunks of this stream are processed.
+         */
+        public void await()
+        {
+            int all = getMaxChunksInFlight();
+            permits.acquireUninterruptibly(all);
+            permits.release(all);
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public int getChunkCount()
+        {
+            return chunkCount;
+        }
+
+        public int getInsertedCount()
+        {
+            return insertedCount.get();
+        }
+
+        public int getFailedCount()
+        {
+            return failedCount.get();
+        }
+
+    }
+
+    /**
+     * Validates, skolemizes and inserts chunks. Used by one worker thread at a time.
+     */
+    public class ChunkProcessor
+    {
+
+        private final Validator validator;
+        private final Skolemizer skolemizer;
+        private final String baseURI;
+        private final VersionRegistry versionRegistry;
+        private final UpdateQueue updateQueue;
+        private final TextIndex textIndex;
+
+        public ChunkProcessor(Ontology ontology, UriBuilder baseUriBuilder, String baseURI,
+                VersionRegistry versionRegistry, UpdateQueue updateQueue, TextIndex textIndex)
+        {
+            this.validator = new Validator(ontology.getOntModel());
+            this.skolemizer = new Skolemizer(ontology, baseUriBuilder, baseUriBuilder);
+            this.baseURI = baseURI; // request-scoped UriInfo is not available on worker threads
+            this.versionRegistry = versionRegistry;
+            this.updateQueue = updateQueue;
+            this.textIndex = textIndex;
+        }
+
+        public Resource process(int number, List<Quad> quads, Model chunkReport)
+        {
+            Map<Node, Model> graphModels = new HashMap<>();
+            for (Quad quad : quads)
+            {
+                Node graphNode = quad.isDefaultGraph() ? Quad.defaultGraphNodeGenerated : quad.getGraph();
+                Model model = graphModels.get(graphNode);
+                if (model == null)
+                {
+                    model = ModelFactory.createDefaultModel();
+                    graphModels.put(graphNode, model);
+                }
+                model.getGraph().add(quad.asTriple());
+            }
+
+            List<ConstraintViolation> cvs = new ArrayList<>();
+            for (Model model : graphModels.values())
+                cvs.addAll(validator.validate(model));
+            if (!cvs.isEmpty())
+            {
+                if (log.isDebugEnabled()) log.debug("Chunk #{} has SPIN constraint violations: {}", number, cvs);
+                Resource chunkResult = toResource(chunkReport, number, quads.size(), Response.Status.BAD_REQUEST,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#BadRequest"));
+
+                SPINConstraints.addConstraintViolationsRDF(cvs, chunkReport, true);
+                ResIterator it = chunkReport.listSubjectsWithProperty(RDF.type, SPIN.ConstraintViolation);
+                try
+                {
+                    while (it.hasNext())
+                        chunkResult.addProperty(ResourceFactory.createProperty("http://www.w3.org/ns/prov#wasDerivedFrom"), it.next());
+                }
+                finally
+                {
+                    it.close();
+                }
+
+                return chunkResult;
+            }
+
+            try
+            {
+                // the whole chunk is skolemized before any of its graphs is written
+                Map<Node, Model> skolemized = new LinkedHashMap<>();
+                for (Map.Entry<Node, Model> entry : graphModels.entrySet())
+                    skolemized.put(entry.getKey(), skolemizer.build(entry.getValue()));
+
+                for (Map.Entry<Node, Model> entry : skolemized.entrySet())
+                {
+                    String graphURI = Quad.isDefaultGraph(entry.getKey()) ? null : entry.getKey().getURI();
+                    try
+                    {
+                        insert(graphURI, getInsertDataRequest(entry.getKey(), entry.getValue()));
+                    }
+                    finally
+                    {
+                        if (versionRegistry != null) versionRegistry.bump(graphURI);
+                    }
+                    if (textIndex != null) textIndex.index(entry.getValue(), graphURI);
+                }
+                if (log.isDebugEnabled()) log.debug("Inserted chunk #{} of {} triples", number, quads.size());
+
+                return toResource(chunkReport, number, quads.size(), Response.Status.CREATED,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#Created"));
+            }
+            catch (IllegalArgumentException ex) // skolemization failure
+            {
+                if (log.isDebugEnabled()) log.debug("Chunk #{} could not be skolemized", number, ex);
+                return toResource(chunkReport, number, quads.size(), Response.Status.BAD_REQUEST,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#BadRequest")).
+                    addLiteral(DCTerms.title, ex.getMessage());
+            }
+            catch (RejectedExecutionException ex)
+            {
+                if (log.isWarnEnabled()) log.warn("Update queue is full, chunk #{} was not inserted", number);
+                return toResource(chunkReport, number, quads.size(), Response.Status.SERVICE_UNAVAILABLE,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#ServiceUnavailable"));
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                return toResource(chunkReport, number, quads.size(), Response.Status.SERVICE_UNAVAILABLE,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#ServiceUnavailable"));
+            }
+            catch (Exception ex)
+            {
+                if (log.isErrorEnabled()) log.error("Chunk #{} could not be inserted", number, ex);
+                Resource chunkResult = toResource(chunkReport, number, quads.size(), Response.Status.INTERNAL_SERVER_ERROR,
+                        ResourceFactory.createResource("http://www.w3.org/2011/http-statusCodes#InternalServerError"));
+                if (ex.getMessage() != null) chunkResult.addLiteral(DCTerms.title, ex.getMessage());
+                return chunkResult;
+            }
+        }
+
+        /**
+         * Inserts data of one graph, ordered behind the pending writes to that graph.
+         *
+         * @param graphURI graph URI or null for the default graph
+         * @param insertDataRequest <code>INSERT DATA</code> request
+         * @throws Exception if the insert fails or the wait is interrupted
+         */
+        public void insert(String graphURI, final UpdateRequest insertDataRequest) throws Exception
+        {
+            final SPARQLEndpoint endpoint = getSPARQLEndpoint();
+            Callable<Void> write = new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    endpoint.post(insertDataRequest, null, null);
+                    return null;
+                }
+            };
+
+            if (updateQueue != null) updateQueue.execute(graphURI, write);
+            else write.call();
+        }
+
+        public UpdateRequest getInsertDataRequest(Node graphNode, Model model)
+        {
+            QuadDataAcc quadData = new QuadDataAcc();
+            ExtendedIterator<Triple> it = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+            try
+            {
+                while (it.hasNext())
+                    quadData.addQuad(new Quad(graphNode, it.next()));
+            }
+            finally
+            {
+                it.close();
+            }
+
+            UpdateRequest insertDataRequest = new UpdateRequest(new UpdateDataInsert(quadData));
+            insertDataRequest.setBaseURI(baseURI);
+            return insertDataRequest;
+        }
+
+        public Resource toResource(Model model, int number, long size, Response.StatusType status, Resource statusResource)
+        {
+            return model.createResource().
+                addProperty(RDF.type, HTTP.Response).
+                addLiteral(DCTerms.identifier, number).
+                addLiteral(ResourceFactory.createProperty("http://rdfs.org/ns/void#triples"), size).
+                addLiteral(HTTP.statusCodeValue, status.getStatusCode()).
+                addLiteral(HTTP.reasonPhrase, status.getReasonPhrase()).
+                addProperty(HTTP.sc, statusResource);
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.metrics;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.exception.NotFoundException;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.metrics.MetricsRegistry;
+import com.atomgraph.server.metrics.PrometheusWriter;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.util.SitemapRegistry;
+import com.atomgraph.server.util.UpdateQueue;
+import com.sun.jersey.api.core.ResourceContext;
+import java.io.IOException;
+import java.io.StringWriter;
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request metrics in Prometheus text exposition format.
+ * Exposes latency quantiles per processing stage, template, method and status, the asynchronous write queue gauges if
+ * the queue is enabled, and the size of the loaded sitemaps. Read-only.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.metrics.MetricsRegistry
+ */
+public class Metrics extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    public Metrics(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @GET
+    @Produces("text/plain")
+    public Response getMetrics()
+    {
+        MetricsRegistry metricsRegistry = getMetricsRegistry();
+        if (metricsRegistry == null) throw new NotFoundException("Metrics are not enabled");
+
+        StringWriter writer = new StringWriter();
+        try
+        {
+            PrometheusWriter prometheus = new PrometheusWriter(writer).writeHistograms(metricsRegistry.getHistograms());
+
+            UpdateQueue updateQueue = getUpdateQueue();
+            if (updateQueue != null)
+                prometheus.writeGauge("processor_update_queue_depth", "Number of queued or running asynchronous writes", updateQueue.getDepth()).
+                    writeGauge("processor_update_queue_lag_seconds", "Age of the oldest pending asynchronous write", updateQueue.getLag() / 1000d);
+
+            SitemapRegistry sitemapRegistry = getProviders().getContextResolver(SitemapRegistry.class, null).getContext(SitemapRegistry.class);
+            if (sitemapRegistry != null)
+                prometheus.writeGauges("processor_sitemap_triples", "Size of the loaded sitemaps of the hosted applications", "ontology", sitemapRegistry.getUsage());
+        }
+        catch (IOException ex)
+        {
+            throw new WebApplicationException(ex);
+        }
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        return Response.ok(writer.toString(), PrometheusWriter.CONTENT_TYPE).cacheControl(cacheControl).build();
+    }
+
+    @Override
+    public Response post(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.metrics;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.exception.NotFoundException;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.vocabulary.AP;
+import com.atomgraph.server.metrics.SlowQueryLog;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.vocabulary.HTTP;
+import com.sun.jersey.api.core.ResourceContext;
+import java.util.Calendar;
+import java.util.Map;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Slow-query log resource.
+ * Describes the logged requests, newest first, and the aggregate query statistics of each template, averaged per
+ * request. Durations are in milliseconds. Read-only.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.metrics.SlowQueryLog
+ */
+public class SlowQueries extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(SlowQueries.class);
+
+    public SlowQueries(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @Override
+    public Response get()
+    {
+        SlowQueryLog slowQueryLog = getSlowQueryLog();
+        if (slowQueryLog == null) throw new NotFoundException("Slow-query log is not enabled");
+
+        return getResponse(describe(slowQueryLog));
+    }
+
+    @Override
+    public Response post(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    public Model describe(SlowQueryLog slowQueryLog)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Resource resource = model.createResource(getURI().toString()).
+            addLiteral(AP.slowQueryThreshold, toMillis(slowQueryLog.getThreshold())).
+            addLiteral(AP.slowQueryLogSize, slowQueryLog.getCapacity());
+
+        for (SlowQueryLog.Entry entry : slowQueryLog.getEntries())
+        {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(entry.getTime());
+
+            Resource slowQuery = model.createResource().
+                addProperty(RDF.type, AP.SlowQuery).
+                addLiteral(DCTerms.created, model.createTypedLiteral(calendar)).
+                addLiteral(AP.method, entry.getMethod()).
+                addProperty(AP.requestURI, model.createResource(entry.getRequestURI())).
+                addLiteral(HTTP.statusCodeValue, entry.getStatus()).
+                addLiteral(AP.duration, toMillis(entry.getDuration())).
+                addLiteral(AP.backendTime, toMillis(entry.getBackendTime())).
+                addLiteral(AP.serializationTime, toMillis(entry.getSerializationTime()));
+            if (entry.getTemplateURI() != null) slowQuery.addProperty(AP.template, model.createResource(entry.getTemplateURI()));
+            if (entry.getQuery() != null) slowQuery.addLiteral(AP.query, entry.getQuery());
+            if (entry.getBindings() != null) slowQuery.addLiteral(AP.bindings, entry.getBindings());
+            if (entry.getResultSize() >= 0) slowQuery.addLiteral(AP.resultSize, entry.getResultSize());
+
+            resource.addProperty(AP.slowQuery, slowQuery);
+        }
+
+        for (Map.Entry<String, SlowQueryLog.TemplateStats> entry : slowQueryLog.getTemplateStats().entrySet())
+        {
+            SlowQueryLog.TemplateStats stats = entry.getValue();
+            long count = stats.getCount();
+            if (count == 0) continue;
+
+            resource.addProperty(AP.templateStats, model.createResource().
+                addProperty(RDF.type, AP.TemplateStats).
+                addProperty(AP.template, model.createResource(entry.getKey())).
+                addLiteral(AP.requestCount, count).
+                addLiteral(AP.slowRequestCount, stats.getSlowCount()).
+                addLiteral(AP.duration, toMillis(stats.getDuration() / count)).
+                addLiteral(AP.maxDuration, toMillis(stats.getMaxDuration())).
+                addLiteral(AP.backendTime, toMillis(stats.getBackendTime() / count)).
+                addLiteral(AP.serializationTime, toMillis(stats.getSerializationTime() / count)).
+                addLiteral(AP.resultSize, stats.getResultSize() / count));
+        }
+
+        return model;
+    }
+
+    public static double toMillis(long nanos)
+    {
+        return nanos / 1000000d;
+    }
+
+}
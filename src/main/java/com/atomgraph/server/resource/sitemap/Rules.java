@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.sitemap;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.exception.NotFoundException;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.RulePrinter;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.util.SitemapRegistry;
+import com.sun.jersey.api.core.ResourceContext;
+import java.util.List;
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sitemap rules resource.
+ * Serves the inference rules of the application as plain text, one rule per line, so that clients can cache them
+ * instead of receiving them in the <code>Rules</code> header of every response. Read-only.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.util.HeaderCache
+ */
+public class Rules extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(Rules.class);
+
+    public Rules(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response getRules()
+    {
+        SitemapRegistry registry = getProviders().getContextResolver(SitemapRegistry.class, null).getContext(SitemapRegistry.class);
+        if (registry == null) throw new NotFoundException("Sitemap rules are not available");
+        List<Rule> rules = registry.getLoader(getUriInfo().getBaseUri()).getRules();
+        if (rules == null) throw new NotFoundException("Sitemap reasoner is not rule-based");
+
+        StringBuilder text = new StringBuilder();
+        for (Rule rule : rules) text.append(RulePrinter.print(rule)).append('\n');
+        
+        EntityTag entityTag = new EntityTag(Integer.toHexString(text.toString().hashCode()));
+        Response.ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
+        if (rb == null) rb = Response.ok(text.toString(), MediaType.TEXT_PLAIN_TYPE).tag(entityTag);
+        
+        return rb.cacheControl(getCacheControl()).build();
+    }
+
+    @Override
+    public Response post(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+}
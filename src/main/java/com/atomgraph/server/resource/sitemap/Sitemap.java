@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.sitemap;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.exception.NotFoundException;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.util.SitemapLoader;
+import com.atomgraph.server.util.SitemapRegistry;
+import com.sun.jersey.api.core.ResourceContext;
+import java.util.Calendar;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sitemap administration resource.
+ * GET describes the loaded sitemap snapshot, POST starts a background reload and returns immediately. Requests keep
+ * using the previous snapshot until the reload completes. Reloads are expensive, so POST is only allowed if enabled
+ * with <code>ap:sitemapReload</code>, and requests made while a reload is waiting to start are merged into it.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.util.SitemapLoader
+ */
+public class Sitemap extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(Sitemap.class);
+
+    public Sitemap(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @Override
+    public Response get()
+    {
+        return getResponse(describe(getLoader().getSitemap()));
+    }
+
+    /**
+     * Starts sitemap reload. The request body is ignored.
+     *
+     * @param model ignored
+     * @return <code>202 Accepted</code> response
+     */
+    @Override
+    public Response post(Model model)
+    {
+        if (!getSitemapRegistry().isReloadable())
+        {
+            if (log.isDebugEnabled()) log.debug("Sitemap reload requested, but reloads are not enabled");
+            throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+        }
+
+        getLoader().reload();
+        return Response.accepted().build();
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    public Model describe(com.atomgraph.server.util.Sitemap sitemap)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Calendar loaded = Calendar.getInstance();
+        loaded.setTimeInMillis(sitemap.getLoaded());
+
+        model.createResource(getURI().toString()).
+            addProperty(RDFS.seeAlso, model.createResource(sitemap.getOntologyURI())).
+            addLiteral(DCTerms.modified, model.createTypedLiteral(loaded)).
+            addLiteral(DCTerms.extent, sitemap.getModel().size());
+        for (String documentURI : sitemap.getDocumentURIs())
+            if (!documentURI.equals(sitemap.getOntologyURI())) model.createResource(sitemap.getOntologyURI()).addProperty(OWL.imports, model.createResource(documentURI));
+
+        return model;
+    }
+
+    public SitemapLoader getLoader()
+    {
+        return getSitemapRegistry().getLoader(getUriInfo().getBaseUri());
+    }
+
+    public SitemapRegistry getSitemapRegistry()
+    {
+        SitemapRegistry registry = getProviders().getContextResolver(SitemapRegistry.class, null).getContext(SitemapRegistry.class);
+        if (registry == null) throw new NotFoundException("Sitemap is not reloadable");
+        return registry;
+    }
+
+}
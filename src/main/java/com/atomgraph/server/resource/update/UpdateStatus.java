@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.resource.update;
+
+import com.atomgraph.core.MediaTypes;
+import com.atomgraph.core.exception.NotFoundException;
+import com.atomgraph.core.model.GraphStore;
+import com.atomgraph.core.model.SPARQLEndpoint;
+import com.atomgraph.processor.util.TemplateCall;
+import com.atomgraph.processor.vocabulary.AP;
+import com.atomgraph.server.model.impl.ResourceBase;
+import com.atomgraph.server.util.UpdateQueue;
+import com.atomgraph.server.vocabulary.HTTP;
+import com.sun.jersey.api.core.ResourceContext;
+import java.util.Calendar;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Status resource of an asynchronous write.
+ * Describes the response of the deferred request: <code>202 Accepted</code> while the write is pending, and its final
+ * status once it is executed. Read-only.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see com.atomgraph.server.util.UpdateQueue
+ */
+public class UpdateStatus extends ResourceBase
+{
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateStatus.class);
+
+    public UpdateStatus(@Context UriInfo uriInfo, @Context Request request, @Context MediaTypes mediaTypes,
+            @Context SPARQLEndpoint sparqlEndpoint, @Context GraphStore graphStore,
+            @Context com.atomgraph.processor.model.Application application, @Context Ontology ontology, @Context TemplateCall templateCall,
+            @Context HttpHeaders httpHeaders, @Context ResourceContext resourceContext)
+    {
+	super(uriInfo, request, mediaTypes,
+                sparqlEndpoint, graphStore,
+                application, ontology, templateCall,
+                httpHeaders, resourceContext);
+	if (log.isDebugEnabled()) log.debug("Constructing {}", getClass());
+    }
+
+    @Override
+    public Response get()
+    {
+        UpdateQueue updateQueue = getUpdateQueue();
+        if (updateQueue == null) throw new NotFoundException("Asynchronous writes are not enabled");
+
+        String path = getURI().getPath();
+        UpdateQueue.Job job = updateQueue.getJob(path.substring(path.lastIndexOf('/') + 1));
+        if (job == null) throw new NotFoundException("Update job not found");
+
+        return getResponse(describe(updateQueue, job));
+    }
+
+    @Override
+    public Response post(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response put(Model model)
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    @Override
+    public Response delete()
+    {
+        throw new WebApplicationException(Response.Status.METHOD_NOT_ALLOWED);
+    }
+
+    public Model describe(UpdateQueue updateQueue, UpdateQueue.Job job)
+    {
+        Model model = ModelFactory.createDefaultModel();
+        Response.StatusType status = job.getStatus();
+
+        Resource resource = model.createResource(getURI().toString()).
+            addProperty(RDF.type, HTTP.Response).
+            addLiteral(HTTP.statusCodeValue, status.getStatusCode()).
+            addLiteral(HTTP.reasonPhrase, status.getReasonPhrase()).
+            addProperty(HTTP.sc, model.createResource("http://www.w3.org/2011/http-statusCodes#" + status.getReasonPhrase().replace(" ", ""))).
+            addLiteral(DCTerms.created, toDateTime(model, job.getSubmitted())).
+            addLiteral(AP.queueDepth, updateQueue.getDepth()).
+            addLiteral(AP.queueLag, updateQueue.getLag());
+
+        if (job.getStarted() > 0) resource.addLiteral(ResourceFactory.createProperty("http://www.w3.org/ns/prov#startedAtTime"), toDateTime(model, job.getStarted()));
+        if (job.getFinished() > 0) resource.addLiteral(ResourceFactory.createProperty("http://www.w3.org/ns/prov#endedAtTime"), toDateTime(model, job.getFinished()));
+        if (job.getMessage() != null) resource.addLiteral(DCTerms.title, job.getMessage());
+        if (job.getLocation() != null) resource.addProperty(RDFS.seeAlso, model.createResource(job.getLocation().toString()));
+
+        return model;
+    }
+
+    public Literal toDateTime(Model model, long millis)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        return model.createTypedLiteral(calendar);
+    }
+
+}
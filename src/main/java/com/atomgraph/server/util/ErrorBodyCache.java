@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.server.vocabulary.HTTP;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.vocabulary.DCTerms;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Serialized error response bodies, by status, status resource and media type.
+ * Error descriptions only differ in these parts and the message, so every combination is serialized once, with a
+ * placeholder in place of the message. The message of each request is escaped for the syntax and written between the
+ * bytes before and after the placeholder, instead of building and writing a new model.
+ * Syntaxes whose string escaping is not known here are not cached. The number of templates is bounded and they are
+ * shared by the whole JVM.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ErrorBodyCache
+{
+
+    public static final int MAX_TEMPLATES = 1000;
+    public static final String PLACEHOLDER = "urn-atomgraph-error-message-placeholder";
+
+    private static final ErrorBodyCache INSTANCE = new ErrorBodyCache();
+
+    private final ConcurrentMap<String, BodyTemplate> templates = new ConcurrentHashMap<>();
+
+    public static ErrorBodyCache get()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns serialized error description.
+     *
+     * @param status response status
+     * @param statusResource status code resource, can be null
+     * @param message error message, can be null
+     * @param mediaType response media type
+     * @return body bytes, or null if the media type has no RDF writer or its strings cannot be escaped
+     */
+    public byte[] getBody(Response.StatusType status, Resource statusResource, String message, MediaType mediaType)
+    {
+        if (status == null) throw new IllegalArgumentException("Response.Status cannot be null");
+        if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+
+        Lang lang = RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+        if (lang == null || !RDFWriterRegistry.contains(lang) || getSyntax(lang) == null) return null;
+
+        String key = status.getStatusCode() + " " + (statusResource != null ? statusResource.getURI() : "") + " " + lang.getName() + " " + (message != null);
+        BodyTemplate template = templates.get(key);
+        if (template == null)
+        {
+            template = createTemplate(status, statusResource, message != null, lang);
+            if (template == null) return null;
+            if (templates.size() < MAX_TEMPLATES) templates.putIfAbsent(key, template);
+        }
+
+        return template.getBody(message);
+    }
+
+    /**
+     * Serializes error description with a placeholder message.
+     *
+     * @param status response status
+     * @param statusResource status code resource, can be null
+     * @param hasMessage true if the description has a message
+     * @param lang RDF syntax
+     * @return body template, or null if the placeholder does not occur exactly once in the serialization
+     */
+    public BodyTemplate createTemplate(Response.StatusType status, Resource statusResource, boolean hasMessage, Lang lang)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFDataMgr.write(out, createModel(status, statusResource, hasMessage ? PLACEHOLDER : null), lang);
+        String body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        if (!hasMessage) return new BodyTemplate(body, "", getSyntax(lang));
+
+        int index = body.indexOf(PLACEHOLDER);
+        if (index == -1 || body.indexOf(PLACEHOLDER, index + 1) != -1) return null;
+        return new BodyTemplate(body.substring(0, index), body.substring(index + PLACEHOLDER.length()), getSyntax(lang));
+    }
+
+    /**
+     * Returns string escaping of an RDF syntax.
+     *
+     * @param lang RDF syntax
+     * @return escaping syntax, or null if it is not known
+     */
+    public static Syntax getSyntax(Lang lang)
+    {
+        if (lang.equals(Lang.NTRIPLES) || lang.equals(Lang.NQUADS) || lang.equals(Lang.TURTLE) || lang.equals(Lang.TRIG) || lang.equals(Lang.N3)) return Syntax.TURTLE;
+        if (lang.equals(Lang.RDFXML) || lang.equals(Lang.TRIX)) return Syntax.XML;
+        if (lang.equals(Lang.JSONLD) || lang.equals(Lang.RDFJSON)) return Syntax.JSON;
+        return null;
+    }
+
+    /**
+     * Builds error description.
+     *
+     * @param status response status
+     * @param statusResource status code resource, can be null
+     * @param message error message, can be null
+     * @return description model
+     */
+    public static Model createModel(Response.StatusType status, Resource statusResource, String message)
+    {
+        if (status == null) throw new IllegalArgumentException("Response.Status cannot be null");
+
+        Resource resource = ModelFactory.createDefaultModel().createResource().
+                addProperty(RDF.type, HTTP.Response).
+                addLiteral(HTTP.statusCodeValue, status.getStatusCode()).
+                addLiteral(HTTP.reasonPhrase, status.getReasonPhrase());
+
+        if (statusResource != null) resource.addProperty(HTTP.sc, statusResource);
+        if (message != null) resource.addLiteral(DCTerms.title, message);
+
+        return resource.getModel();
+    }
+
+    /**
+     * String escaping of RDF syntaxes.
+     */
+    public enum Syntax
+    {
+
+        TURTLE, XML, JSON;
+
+        public String escape(String string)
+        {
+            StringBuilder sb = new StringBuilder(string.length() + 16);
+            for (int i = 0; i < string.length(); i++)
+            {
+                char c = string.charAt(i);
+                switch (this)
+                {
+                    case XML:
+                        if (c == '&') sb.append("&amp;");
+                        else if (c == '<') sb.append("&lt;");
+                        else if (c == '>') sb.append("&gt;");
+                        else if (c == '"') sb.append("&quot;");
+                        else if (c == '\'') sb.append("&apos;");
+                        else if (c == '\t' || c == '\n' || c == '\r') sb.append("&#").append((int)c).append(';'); // survive attribute and line-end normalization
+                        else if (c < 0x20) sb.append(' '); // not allowed in XML 1.0
+                        else sb.append(c);
+                        break;
+                    default: // Turtle and JSON share the escapes of quotes, backslashes and control characters
+                        if (c == '"') sb.append("\\\"");
+                        else if (c == '\\') sb.append("\\\\");
+                        else if (c == '\n') sb.append("\\n");
+                        else if (c == '\r') sb.append("\\r");
+                        else if (c == '\t') sb.append("\\t");
+                        else if (c < 0x20) sb.append(String.format("\\u%04X", (int)c));
+                        else sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+    }
+
+    /**
+     * Serialized error description, split at the message.
+     */
+    public static class BodyTemplate
+    {
+
+        private final byte[] prefix, suffix;
+        private final Syntax syntax;
+
+        public BodyTemplate(String prefix, String suffix, Syntax syntax)
+        {
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+            this.suffix = suffix.getBytes(StandardCharsets.UTF_8);
+            this.syntax = syntax;
+        }
+
+        /**
+         * Returns body with the message.
+         *
+         * @param message message, or null if the template has none
+         * @return body bytes
+         */
+        public byte[] getBody(String message)
+        {
+            if (message == null) return prefix; // templates without a message are not split
+
+            byte[] escaped = syntax.escape(message).getBytes(StandardCharsets.UTF_8);
+            byte[] body = new byte[prefix.length + escaped.length + suffix.length];
+            System.arraycopy(prefix, 0, body, 0, prefix.length);
+            System.arraycopy(escaped, 0, body, prefix.length, escaped.length);
+            System.arraycopy(suffix, 0, body, prefix.length + escaped.length, suffix.length);
+            return body;
+        }
+
+    }
+
+}
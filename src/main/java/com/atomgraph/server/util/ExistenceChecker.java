@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks whether resources and graphs exist without retrieving their representations.
+ * Resources are checked with a SPARQL <code>ASK</code> query, named graphs with a Graph Store Protocol
+ * <code>HEAD</code> request, or directly against the dataset if it is local.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ExistenceChecker
+{
+
+    private static final Logger log = LoggerFactory.getLogger(ExistenceChecker.class);
+
+    private final Dataset dataset;
+    private final String endpointURI, graphStoreURI;
+    private final Client client;
+    private final String authUser, authPwd;
+
+    /**
+     * Constructs checker over a local dataset.
+     *
+     * @param dataset dataset
+     */
+    public ExistenceChecker(Dataset dataset)
+    {
+        if (dataset == null) throw new IllegalArgumentException("Dataset cannot be null");
+
+        this.dataset = dataset;
+        this.endpointURI = this.graphStoreURI = null;
+        this.client = null;
+        this.authUser = this.authPwd = null;
+    }
+
+    /**
+     * Constructs checker over a remote SPARQL endpoint and Graph Store.
+     *
+     * @param endpointURI SPARQL endpoint URI
+     * @param graphStoreURI Graph Store URI, can be null
+     * @param client HTTP client
+     * @param authUser username, can be null
+     * @param authPwd password, can be null
+     */
+    public ExistenceChecker(String endpointURI, String graphStoreURI, Client client, String authUser, String authPwd)
+    {
+        if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI cannot be null");
+        if (client == null) throw new IllegalArgumentException("Client cannot be null");
+
+        this.dataset = null;
+        this.endpointURI = endpointURI;
+        this.graphStoreURI = graphStoreURI;
+        this.client = client;
+        this.authUser = authUser;
+        this.authPwd = authPwd;
+    }
+
+    /**
+     * Executes <code>ASK</code> query.
+     *
+     * @param query ASK query
+     * @return query result
+     */
+    public boolean ask(Query query)
+    {
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (!query.isAskType()) throw new IllegalArgumentException("Existence query must be ASK");
+
+        try (QueryExecution qex = createQueryExecution(query))
+        {
+            return qex.execAsk();
+        }
+    }
+
+    public QueryExecution createQueryExecution(Query query)
+    {
+        if (getDataset() != null) return QueryExecutionFactory.create(query, getDataset());
+
+        QueryEngineHTTP qex = QueryExecutionFactory.createServiceRequest(getEndpointURI(), query);
+        if (authUser != null && authPwd != null) qex.setBasicAuthentication(authUser, authPwd.toCharArray());
+        return qex;
+    }
+
+    /**
+     * Checks whether named graph exists.
+     *
+     * @param graphURI graph URI
+     * @return true or false, or null if the Graph Store did not give a definite answer
+     */
+    public Boolean containsGraph(String graphURI)
+    {
+        if (graphURI == null) throw new IllegalArgumentException("Graph URI cannot be null");
+
+        if (getDataset() != null) return getDataset().containsNamedModel(graphURI);
+        if (getGraphStoreURI() == null) return null;
+
+        WebResource resource = getClient().resource(getGraphStoreURI()).queryParam("graph", graphURI);
+        if (authUser != null && authPwd != null) resource.addFilter(new HTTPBasicAuthFilter(authUser, authPwd));
+        ClientResponse cr = resource.head();
+        try
+        {
+            if (cr.getStatus() >= 200 && cr.getStatus() < 300) return true;
+            if (cr.getStatus() == ClientResponse.Status.NOT_FOUND.getStatusCode()) return false;
+
+            if (log.isDebugEnabled()) log.debug("Graph Store HEAD request for graph <{}> returned status {}", graphURI, cr.getStatus());
+            return null;
+        }
+        finally
+        {
+            cr.close();
+        }
+    }
+
+    public Dataset getDataset()
+    {
+        return dataset;
+    }
+
+    public String getEndpointURI()
+    {
+        return endpointURI;
+    }
+
+    public String getGraphStoreURI()
+    {
+        return graphStoreURI;
+    }
+
+    public Client getClient()
+    {
+        return client;
+    }
+
+}
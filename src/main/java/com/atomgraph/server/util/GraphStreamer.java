@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import javax.ws.rs.core.MediaType;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams named graphs from a local dataset to the client without materializing them as models.
+ * Triples are retrieved with a <code>CONSTRUCT</code> query and written as they arrive, in formats that can be
+ * serialized triple by triple. Graphs can be retrieved in ranges of triples, ordered by subject, predicate and object.
+ * Remote stores are read through the Graph Store and SPARQL clients instead, so that their client configuration applies.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class GraphStreamer
+{
+
+    private static final Logger log = LoggerFactory.getLogger(GraphStreamer.class);
+
+    private static final Var SUBJECT = Var.alloc("s"), PREDICATE = Var.alloc("p"), OBJECT = Var.alloc("o");
+
+    private final Dataset dataset;
+
+    /**
+     * Constructs streamer over a local dataset.
+     *
+     * @param dataset dataset
+     */
+    public GraphStreamer(Dataset dataset)
+    {
+        if (dataset == null) throw new IllegalArgumentException("Dataset cannot be null");
+
+        this.dataset = dataset;
+    }
+
+    /**
+     * Returns streaming format for the media type.
+     *
+     * @param mediaType media type
+     * @return format, or null if the media type cannot be written as a stream
+     */
+    public static RDFFormat getFormat(MediaType mediaType)
+    {
+        if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+
+        Lang lang = RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+        if (lang == null) return null;
+
+        if (lang.equals(Lang.NTRIPLES)) return RDFFormat.NTRIPLES;
+        if (lang.equals(Lang.NQUADS)) return RDFFormat.NQUADS;
+        if (lang.equals(Lang.TURTLE)) return RDFFormat.TURTLE_BLOCKS;
+        return null;
+    }
+
+    /**
+     * Builds query that retrieves the triples of a named graph.
+     *
+     * @param graphURI graph URI
+     * @param offset number of triples to skip, can be null
+     * @param limit maximum number of triples, can be null
+     * @return <code>CONSTRUCT</code> query, ordered if offset or limit is set
+     */
+    public static Query getQuery(String graphURI, Long offset, Long limit)
+    {
+        if (graphURI == null) throw new IllegalArgumentException("Graph URI cannot be null");
+
+        Triple pattern = Triple.create(SUBJECT, PREDICATE, OBJECT);
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(pattern);
+        ElementTriplesBlock block = new ElementTriplesBlock();
+        block.addTriple(pattern);
+
+        Query query = new Query();
+        query.setQueryConstructType();
+        query.setConstructTemplate(new Template(bgp));
+        query.setQueryPattern(new ElementNamedGraph(NodeFactory.createURI(graphURI), block));
+
+        if (offset != null || limit != null) // ranges are only stable over a total order
+        {
+            query.addOrderBy(SUBJECT, Query.ORDER_DEFAULT);
+            query.addOrderBy(PREDICATE, Query.ORDER_DEFAULT);
+            query.addOrderBy(OBJECT, Query.ORDER_DEFAULT);
+            if (offset != null) query.setOffset(offset);
+            if (limit != null) query.setLimit(limit);
+        }
+
+        return query;
+    }
+
+    /**
+     * Executes the query of a named graph and retrieves its first triple, so that query failures surface before the
+     * response is committed. The returned stream has to be written or closed.
+     *
+     * @param graphURI graph URI
+     * @param offset number of triples to skip, can be null
+     * @param limit maximum number of triples, can be null
+     * @return open triple stream
+     */
+    public TripleStream open(String graphURI, Long offset, Long limit)
+    {
+        QueryExecution qex = createQueryExecution(getQuery(graphURI, offset, limit));
+        try
+        {
+            Iterator<Triple> triples = qex.execConstructTriples();
+            triples.hasNext();
+            return new TripleStream(graphURI, qex, triples);
+        }
+        catch (RuntimeException ex)
+        {
+            qex.close();
+            throw ex;
+        }
+    }
+
+    public QueryExecution createQueryExecution(Query query)
+    {
+        return QueryExecutionFactory.create(query, getDataset());
+    }
+
+    public Dataset getDataset()
+    {
+        return dataset;
+    }
+
+    /**
+     * Triples of a named graph that are being read from the dataset.
+     */
+    public static class TripleStream implements AutoCloseable
+    {
+
+        private final String graphURI;
+        private final QueryExecution qex;
+        private final Iterator<Triple> triples;
+
+        protected TripleStream(String graphURI, QueryExecution qex, Iterator<Triple> triples)
+        {
+            this.graphURI = graphURI;
+            this.qex = qex;
+            this.triples = triples;
+        }
+
+        /**
+         * Writes the triples to the output stream and closes the query execution. Quad formats write the triples into
+         * the named graph.
+         * If reading fails midway, the serialization is not finished and an <code>IOException</code> is thrown, so that
+         * the container aborts the response instead of completing a truncated one.
+         *
+         * @param format streaming format
+         * @param out output stream
+         * @return number of written triples
+         * @throws IOException if the triples could not be read or written
+         */
+        public long write(RDFFormat format, OutputStream out) throws IOException
+        {
+            if (format == null) throw new IllegalArgumentException("RDFFormat cannot be null");
+            if (out == null) throw new IllegalArgumentException("OutputStream cannot be null");
+
+            boolean quads = RDFLanguages.isQuads(format.getLang());
+            Node graph = NodeFactory.createURI(graphURI);
+            StreamRDF stream = StreamRDFWriter.getWriterStream(out, format);
+            long count = 0;
+
+            try
+            {
+                stream.start();
+                while (triples.hasNext())
+                {
+                    Triple triple = triples.next();
+                    if (quads) stream.quad(new Quad(graph, triple));
+                    else stream.triple(triple);
+                    count++;
+                }
+                stream.finish();
+            }
+            catch (RuntimeException ex)
+            {
+                if (log.isErrorEnabled()) log.error("Streaming graph <{}> failed after {} triples, aborting response", graphURI, count, ex);
+                throw new IOException("Graph stream aborted after " + count + " triples", ex);
+            }
+            finally
+            {
+                close();
+            }
+
+            if (log.isDebugEnabled()) log.debug("Streamed {} triples of graph <{}>", count, graphURI);
+            return count;
+        }
+
+        @Override
+        public void close()
+        {
+            qex.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.core.util.Link;
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.util.RulePrinter;
+import com.atomgraph.processor.vocabulary.AP;
+import com.atomgraph.processor.vocabulary.APT;
+import com.atomgraph.processor.vocabulary.LDT;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.UriBuilder;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Precomputed response headers per sitemap snapshot, template, sitemap ontology and base URI.
+ * <code>Link</code> values, the printed <code>Rules</code> value and the parsed <code>Cache-Control</code> are built
+ * once and reused as long as the snapshot is. If the <code>Rules</code> header is disabled, a <code>Link</code> to
+ * the <code>apt:Rules</code> resource is sent instead, if the sitemap imports it.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class HeaderCache
+{
+
+    public static final int MAX_ENTRIES = 10000;
+
+    private final boolean rulesHeader;
+    private final Map<Graph, ConcurrentMap<String, Headers>> snapshots = new WeakHashMap<>(); // guarded by itself
+    private final Map<Reasoner, String> printedRules = Collections.synchronizedMap(new WeakHashMap<Reasoner, String>());
+
+    /**
+     * Constructs cache.
+     *
+     * @param rulesHeader if true, sitemap rules are sent in the <code>Rules</code> header
+     */
+    public HeaderCache(boolean rulesHeader)
+    {
+        this.rulesHeader = rulesHeader;
+    }
+
+    /**
+     * Returns headers of a template response.
+     *
+     * @param ontology sitemap ontology
+     * @param template matched template
+     * @param baseURI application base URI
+     * @return headers
+     */
+    public Headers get(Ontology ontology, Template template, URI baseURI)
+    {
+        if (ontology == null) throw new IllegalArgumentException("Ontology cannot be null");
+        if (template == null) throw new IllegalArgumentException("Template cannot be null");
+        if (baseURI == null) throw new IllegalArgumentException("URI cannot be null");
+
+        ConcurrentMap<String, Headers> headers = getHeaders(Sitemap.getSnapshotGraph(ontology.getOntModel()));
+        String key = template.getURI() + " " + ontology.getURI() + " " + baseURI;
+        Headers existing = headers.get(key);
+        if (existing != null) return existing;
+
+        if (headers.size() >= MAX_ENTRIES) headers.clear(); // base URIs come from requests, so the key space is open
+        Headers created = createHeaders(ontology, template, baseURI, isRulesHeader() ? getRules(template) : null);
+        existing = headers.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    // snapshots are weakly referenced, so headers of replaced sitemaps are dropped once no request uses them
+    private ConcurrentMap<String, Headers> getHeaders(Graph snapshotGraph)
+    {
+        synchronized (snapshots)
+        {
+            ConcurrentMap<String, Headers> headers = snapshots.get(snapshotGraph);
+            if (headers == null)
+            {
+                headers = new ConcurrentHashMap<>();
+                snapshots.put(snapshotGraph, headers);
+            }
+            return headers;
+        }
+    }
+
+    // prints each rule set once, not once per template
+    private String getRules(Template template)
+    {
+        Reasoner reasoner = template.getOntModel().getSpecification().getReasoner();
+        if (!(reasoner instanceof GenericRuleReasoner)) return null;
+
+        String rules = printedRules.get(reasoner);
+        if (rules == null)
+        {
+            rules = RulePrinter.print(((GenericRuleReasoner)reasoner).getRules()); // grr.getRules().toString() - prevented by JENA-1030 bug
+            printedRules.put(reasoner, rules);
+        }
+        return rules;
+    }
+
+    /**
+     * Builds headers of a template response without caching them.
+     *
+     * @param ontology sitemap ontology
+     * @param template matched template
+     * @param baseURI application base URI
+     * @param rules printed rules, or null if the <code>Rules</code> header is not sent
+     * @return headers
+     */
+    public static Headers createHeaders(Ontology ontology, Template template, URI baseURI, String rules)
+    {
+        List<String> links = new ArrayList<>();
+        links.add(new Link(URI.create(template.getURI()), RDF.type.getLocalName(), null).toString());
+        links.add(new Link(URI.create(ontology.getURI()), LDT.ontology.getURI(), null).toString());
+        links.add(new Link(baseURI, LDT.base.getURI(), null).toString());
+
+        if (rules == null)
+        {
+            Resource rulesTemplate = ontology.getOntModel().createResource(APT.Rules.getURI());
+            if (rulesTemplate.canAs(Template.class))
+            {
+                URI rulesURI = UriBuilder.fromUri(baseURI).path(rulesTemplate.as(Template.class).getPath().getTemplate()).build();
+                links.add(new Link(rulesURI, AP.sitemapRules.getURI(), null).toString());
+            }
+        }
+
+        return new Headers(Collections.unmodifiableList(links), rules, template.getCacheControl());
+    }
+
+    public boolean isRulesHeader()
+    {
+        return rulesHeader;
+    }
+
+    /**
+     * Immutable header values of one template.
+     */
+    public static class Headers
+    {
+        private final List<String> links;
+        private final String rules;
+        private final CacheControl cacheControl;
+
+        public Headers(List<String> links, String rules, CacheControl cacheControl)
+        {
+            this.links = links;
+            this.rules = rules;
+            this.cacheControl = cacheControl;
+        }
+
+        /**
+         * Adds <code>Link</code> and <code>Rules</code> headers to the response.
+         *
+         * @param rb response builder
+         * @return the same builder
+         */
+        public ResponseBuilder apply(ResponseBuilder rb)
+        {
+            for (String link : getLinks()) rb.header("Link", link);
+            if (getRules() != null) rb.header("Rules", getRules());
+            return rb;
+        }
+
+        public List<String> getLinks()
+        {
+            return links;
+        }
+
+        public String getRules()
+        {
+            return rules;
+        }
+
+        public CacheControl getCacheControl()
+        {
+            return cacheControl;
+        }
+
+    }
+
+}
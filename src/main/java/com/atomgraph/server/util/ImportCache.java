@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.NodeIterator;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.graph.GraphReadOnly;
+import org.apache.jena.util.FileManager;
+import org.apache.jena.vocabulary.OWL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JVM-wide cache of parsed <code>owl:imports</code> documents.
+ * The import closure is fetched breadth-first, with the documents of each level parsed in parallel. Documents are
+ * keyed by their mapped location, so applications in the same JVM share a document only if they resolve it to the
+ * same file. Concurrent requests for the same document wait for a single parse.
+ * Cached models are read-only and never change; {@link #invalidate()} makes the next load read the files again.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ImportCache
+{
+
+    private static final Logger log = LoggerFactory.getLogger(ImportCache.class);
+
+    private static final ImportCache INSTANCE = new ImportCache(Runtime.getRuntime().availableProcessors());
+
+    private final ConcurrentMap<String, Future<Model>> models = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    public ImportCache(int threadCount)
+    {
+        if (threadCount < 1) throw new IllegalArgumentException("Thread count must be positive");
+
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "import-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return import cache
+     */
+    public static ImportCache get()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the import closure of an ontology document.
+     * Documents that fail to load are left out, so that the regular import processing reports the error.
+     *
+     * @param fileManager file manager used to resolve and read the documents
+     * @param model ontology document
+     * @return read-only models by document URI, excluding the ontology document itself
+     */
+    public Map<String, Model> loadImports(FileManager fileManager, Model model)
+    {
+        if (fileManager == null) throw new IllegalArgumentException("FileManager cannot be null");
+        if (model == null) throw new IllegalArgumentException("Model cannot be null");
+
+        Map<String, Model> closure = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        Collection<String> level = getImports(model, seen);
+
+        while (!level.isEmpty())
+        {
+            Map<String, Future<Model>> futures = new HashMap<>();
+            for (String uri : level) futures.put(uri, getFuture(fileManager, uri));
+
+            List<String> next = new ArrayList<>();
+            for (Map.Entry<String, Future<Model>> entry : futures.entrySet())
+            {
+                Model imported = getModel(fileManager, entry.getKey(), entry.getValue());
+                if (imported == null) continue;
+
+                closure.put(entry.getKey(), imported);
+                next.addAll(getImports(imported, seen));
+            }
+            level = next;
+        }
+
+        return closure;
+    }
+
+    private Future<Model> getFuture(final FileManager fileManager, final String uri)
+    {
+        String key = fileManager.mapURI(uri);
+        Future<Model> future = models.get(key);
+        if (future != null) return future;
+
+        FutureTask<Model> task = new FutureTask<>(new Callable<Model>()
+        {
+            @Override
+            public Model call()
+            {
+                if (log.isDebugEnabled()) log.debug("Loading imported document <{}>", uri);
+                Model model = fileManager.readModel(ModelFactory.createDefaultModel(), uri);
+                return ModelFactory.createModelForGraph(new GraphReadOnly(model.getGraph()));
+            }
+        });
+        future = models.putIfAbsent(key, task);
+        if (future != null) return future;
+
+        executor.execute(task);
+        return task;
+    }
+
+    private Model getModel(FileManager fileManager, String uri, Future<Model> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Could not load imported document <{}>", uri, ex.getCause());
+            models.remove(fileManager.mapURI(uri), future); // retried on the next load
+            return null;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static Collection<String> getImports(Model model, Set<String> seen)
+    {
+        List<String> imports = new ArrayList<>();
+
+        NodeIterator it = model.listObjectsOfProperty(OWL.imports);
+        try
+        {
+            while (it.hasNext())
+            {
+                RDFNode imported = it.next();
+                if (imported.isURIResource() && seen.add(imported.asResource().getURI())) imports.add(imported.asResource().getURI());
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return imports;
+    }
+
+    /**
+     * Drops all cached documents.
+     */
+    public void invalidate()
+    {
+        models.clear();
+    }
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.jena.graph.Factory;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.TriplePattern;
+import org.apache.jena.reasoner.rulesys.ClauseEntry;
+import org.apache.jena.reasoner.rulesys.Functor;
+import org.apache.jena.reasoner.rulesys.Node_RuleVariable;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward-chaining materializer that maintains rule inferences incrementally.
+ * Asserted and derived triples are kept apart, so that when the asserted triples change only the affected inferences
+ * are recomputed, using the delete-and-rederive (DRed) algorithm: consequences of removed triples are deleted, the ones
+ * that still have another derivation are derived again, and consequences of added triples are derived semi-naively.
+ * Only forward rules whose body and head consist of triple patterns are supported; rules with builtins, functors or
+ * backward chaining have to be materialized by the rule reasoner.
+ * Not thread-safe.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see <a href="https://doi.org/10.1145/170035.170066">Maintaining Views Incrementally</a>
+ */
+public class IncrementalMaterializer
+{
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalMaterializer.class);
+
+    private final List<Rule> rules;
+    private final Graph asserted = Factory.createGraphMem();
+    private final Graph facts = Factory.createGraphMem(); // asserted and derived
+
+    /**
+     * Constructs materializer with no asserted triples. Axioms (rules without a body) are derived immediately.
+     *
+     * @param rules forward rules
+     * @see #isSupported(java.util.List)
+     */
+    public IncrementalMaterializer(List<Rule> rules)
+    {
+        if (rules == null) throw new IllegalArgumentException("Rule List cannot be null");
+        if (!isSupported(rules)) throw new IllegalArgumentException("Rules are not supported by incremental materialization");
+
+        this.rules = rules;
+
+        Set<Triple> axioms = new HashSet<>();
+        for (Rule rule : rules)
+            if (rule.bodyLength() == 0) join(rule, 0, -1, new Node[rule.getNumVars()], axioms);
+        insert(axioms);
+    }
+
+    /**
+     * Checks if the rules can be materialized incrementally.
+     *
+     * @param rules rules
+     * @return true if all rules are forward rules consisting of triple patterns
+     */
+    public static boolean isSupported(List<Rule> rules)
+    {
+        for (Rule rule : rules)
+        {
+            if (rule.isBackward()) return false;
+            if (!isSupported(rule.getBody()) || !isSupported(rule.getHead())) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isSupported(ClauseEntry[] clauses)
+    {
+        for (ClauseEntry clause : clauses)
+        {
+            if (!(clause instanceof TriplePattern)) return false;
+
+            TriplePattern pattern = (TriplePattern)clause;
+            if (Functor.isFunctor(pattern.getSubject()) || Functor.isFunctor(pattern.getPredicate()) || Functor.isFunctor(pattern.getObject())) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the asserted triples and updates the inferences. The cost depends on the number of changed triples
+     * and their consequences, not on the size of the graph.
+     *
+     * @param graph new asserted triples
+     */
+    public void update(Graph graph)
+    {
+        if (graph == null) throw new IllegalArgumentException("Graph cannot be null");
+
+        List<Triple> removed = new ArrayList<>();
+        ExtendedIterator<Triple> it = asserted.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (it.hasNext())
+            {
+                Triple triple = it.next();
+                if (!graph.contains(triple)) removed.add(triple);
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        List<Triple> added = new ArrayList<>();
+        it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (it.hasNext())
+            {
+                Triple triple = it.next();
+                if (!asserted.contains(triple)) added.add(triple);
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        update(added, removed);
+    }
+
+    /**
+     * Adds and removes asserted triples and updates the inferences.
+     *
+     * @param added triples to assert
+     * @param removed triples to retract
+     */
+    public void update(Collection<Triple> added, Collection<Triple> removed)
+    {
+        if (added == null) throw new IllegalArgumentException("Added Triple Collection cannot be null");
+        if (removed == null) throw new IllegalArgumentException("Removed Triple Collection cannot be null");
+
+        long start = System.currentTimeMillis();
+        int deleted = delete(removed);
+
+        Set<Triple> delta = new HashSet<>();
+        for (Triple triple : added)
+        {
+            asserted.add(triple);
+            if (!facts.contains(triple)) delta.add(triple);
+        }
+        int inserted = insert(delta);
+
+        if (log.isDebugEnabled()) log.debug("Applied {} added and {} removed triples: {} triples inserted, {} deleted in {} ms", added.size(), removed.size(), inserted, deleted, System.currentTimeMillis() - start);
+    }
+
+    // adds the delta and its consequences until fixpoint
+    private int insert(Collection<Triple> delta)
+    {
+        int count = 0;
+        for (Triple triple : delta) facts.add(triple);
+
+        while (!delta.isEmpty())
+        {
+            count += delta.size();
+            Set<Triple> next = new HashSet<>();
+            for (Triple triple : getConsequences(delta))
+                if (!facts.contains(triple))
+                {
+                    facts.add(triple);
+                    next.add(triple);
+                }
+            delta = next;
+        }
+
+        return count;
+    }
+
+    // overdeletes everything derivable from the removed triples, then rederives what still has a derivation
+    private int delete(Collection<Triple> removed)
+    {
+        Set<Triple> overdeleted = new HashSet<>();
+        Collection<Triple> delta = new ArrayList<>();
+        for (Triple triple : removed)
+            if (asserted.contains(triple))
+            {
+                asserted.delete(triple);
+                overdeleted.add(triple);
+                delta.add(triple);
+            }
+
+        while (!delta.isEmpty()) // consequences are computed over the old state, which still contains the delta
+        {
+            Set<Triple> next = new HashSet<>();
+            for (Triple triple : getConsequences(delta))
+                if (!asserted.contains(triple) && facts.contains(triple) && overdeleted.add(triple)) next.add(triple);
+            delta = next;
+        }
+
+        for (Triple triple : overdeleted) facts.delete(triple);
+
+        Set<Triple> rederived = new HashSet<>();
+        for (Triple triple : overdeleted)
+            if (isDerivable(triple)) rederived.add(triple);
+        insert(rederived);
+
+        return overdeleted.size() - rederived.size();
+    }
+
+    // semi-naive step: rule instances where at least one body pattern matches a delta triple
+    private Set<Triple> getConsequences(Collection<Triple> delta)
+    {
+        Set<Triple> consequences = new HashSet<>();
+
+        for (Triple triple : delta)
+            for (Rule rule : rules)
+                for (int i = 0; i < rule.bodyLength(); i++)
+                {
+                    Node[] env = new Node[rule.getNumVars()];
+                    if (match((TriplePattern)rule.getBodyElement(i), triple, env)) join(rule, 0, i, env, consequences);
+                }
+
+        return consequences;
+    }
+
+    private boolean isDerivable(Triple triple)
+    {
+        for (Rule rule : rules)
+            for (ClauseEntry head : rule.getHead())
+            {
+                Node[] env = new Node[rule.getNumVars()];
+                if (match((TriplePattern)head, triple, env))
+                {
+                    Set<Triple> heads = new HashSet<>();
+                    join(rule, 0, -1, env, heads);
+                    if (heads.contains(triple)) return true;
+                }
+            }
+
+        return false;
+    }
+
+    // matches the body patterns from index i onwards against the facts, skipping the pattern already matched by a delta triple
+    private void join(Rule rule, int i, int skip, Node[] env, Collection<Triple> heads)
+    {
+        if (i == skip)
+        {
+            join(rule, i + 1, skip, env, heads);
+            return;
+        }
+
+        if (i >= rule.bodyLength())
+        {
+            for (ClauseEntry head : rule.getHead())
+            {
+                Triple triple = instantiate((TriplePattern)head, env);
+                if (triple != null) heads.add(triple);
+            }
+            return;
+        }
+
+        TriplePattern pattern = (TriplePattern)rule.getBodyElement(i);
+        List<Triple> matches = facts.find(resolve(pattern.getSubject(), env), resolve(pattern.getPredicate(), env), resolve(pattern.getObject(), env)).toList();
+        for (Triple triple : matches)
+        {
+            Node[] branch = env.clone();
+            if (match(pattern, triple, branch)) join(rule, i + 1, skip, branch, heads);
+        }
+    }
+
+    private static boolean match(TriplePattern pattern, Triple triple, Node[] env)
+    {
+        return bind(pattern.getSubject(), triple.getSubject(), env) &&
+            bind(pattern.getPredicate(), triple.getPredicate(), env) &&
+            bind(pattern.getObject(), triple.getObject(), env);
+    }
+
+    private static boolean bind(Node pattern, Node value, Node[] env)
+    {
+        if (pattern instanceof Node_RuleVariable)
+        {
+            int index = ((Node_RuleVariable)pattern).getIndex();
+            if (index < 0) return true; // wildcard
+            if (env[index] == null)
+            {
+                env[index] = value;
+                return true;
+            }
+            return env[index].sameValueAs(value);
+        }
+
+        return pattern.sameValueAs(value);
+    }
+
+    private static Node resolve(Node node, Node[] env)
+    {
+        if (node instanceof Node_RuleVariable)
+        {
+            int index = ((Node_RuleVariable)node).getIndex();
+            return index >= 0 && env[index] != null ? env[index] : Node.ANY;
+        }
+
+        return node;
+    }
+
+    private static Triple instantiate(TriplePattern pattern, Node[] env)
+    {
+        Node s = resolve(pattern.getSubject(), env), p = resolve(pattern.getPredicate(), env), o = resolve(pattern.getObject(), env);
+        if (s == Node.ANY || p == Node.ANY || o == Node.ANY) return null; // unbound head variable
+        if (s.isLiteral() || !p.isURI()) return null; // not a valid RDF triple
+
+        return Triple.create(s, p, o);
+    }
+
+    /**
+     * Returns a copy of the asserted and derived triples.
+     *
+     * @return materialized model
+     */
+    public Model getModel()
+    {
+        Model model = ModelFactory.createDefaultModel();
+        ExtendedIterator<Triple> it = facts.find(Node.ANY, Node.ANY, Node.ANY);
+        try
+        {
+            while (it.hasNext()) model.getGraph().add(it.next());
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return model;
+    }
+
+    public List<Rule> getRules()
+    {
+        return rules;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.core.model.SPARQLEndpoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.update.Update;
+import org.apache.jena.update.UpdateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group commit of concurrent <code>INSERT DATA</code> requests.
+ * The first request to arrive opens a batch and becomes its leader; requests to the same graph arriving within the
+ * batch window join it. When the window elapses or the batch is full, the leader merges all the data into a single
+ * <code>INSERT DATA</code> and passes it to the {@link Writer}. Batches are collected before the writes are ordered,
+ * so requests coalesce even while they would have to wait for earlier writes to the graph.
+ * Every caller blocks until its batch is written, and receives the failure if there was one, so a request is never
+ * acknowledged before its data is written.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see <a href="https://www.w3.org/TR/sparql11-update/#insertData">3.1.1 INSERT DATA</a>
+ */
+public class InsertDataCoalescer
+{
+    private static final Logger log = LoggerFactory.getLogger(InsertDataCoalescer.class);
+
+    private final long window;
+    private final int maxBatchSize;
+    private final Map<String, Batch> openBatches = new HashMap<>(); // guarded by this
+
+    /**
+     * Constructs coalescer.
+     *
+     * @param window batch window in milliseconds
+     * @param maxBatchSize maximum number of requests in a batch
+     */
+    public InsertDataCoalescer(long window, int maxBatchSize)
+    {
+        if (window < 0) throw new IllegalArgumentException("Batch window cannot be negative");
+        if (maxBatchSize < 1) throw new IllegalArgumentException("Max batch size must be positive");
+
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Writes merged <code>INSERT DATA</code> batch.
+     */
+    public interface Writer
+    {
+
+        void write(UpdateRequest updateRequest);
+
+    }
+
+    /**
+     * Submits <code>INSERT DATA</code> request and blocks until the batch it has joined is executed on the endpoint.
+     *
+     * @param endpoint SPARQL endpoint the batch is executed on, if this request becomes the leader
+     * @param updateRequest update request consisting of <code>INSERT DATA</code> operations only
+     */
+    public void insert(final SPARQLEndpoint endpoint, UpdateRequest updateRequest)
+    {
+        if (endpoint == null) throw new IllegalArgumentException("SPARQLEndpoint cannot be null");
+
+        insert(null, updateRequest, new Writer()
+        {
+            @Override
+            public void write(UpdateRequest merged)
+            {
+                endpoint.post(merged, null, null);
+            }
+        });
+    }
+
+    /**
+     * Submits <code>INSERT DATA</code> request and blocks until the batch it has joined is written.
+     * Only requests to the same graph are batched together.
+     *
+     * @param graphURI URI of the graph the request writes to, or null for the default graph
+     * @param updateRequest update request consisting of <code>INSERT DATA</code> operations only
+     * @param writer writer the batch is passed to, if this request becomes the leader
+     */
+    public void insert(String graphURI, UpdateRequest updateRequest, Writer writer)
+    {
+        if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest cannot be null");
+        if (writer == null) throw new IllegalArgumentException("Writer cannot be null");
+        for (Update update : updateRequest.getOperations())
+            if (!(update instanceof UpdateDataInsert)) throw new IllegalArgumentException("Only INSERT DATA operations can be coalesced");
+
+        final String key = graphURI != null ? graphURI : "";
+        final Batch batch;
+        final boolean leader;
+        synchronized (this)
+        {
+            leader = !openBatches.containsKey(key);
+            if (leader) openBatches.put(key, new Batch());
+            batch = openBatches.get(key);
+            batch.add(updateRequest);
+
+            if (batch.size() >= getMaxBatchSize())
+            {
+                openBatches.remove(key); // batch is full, next request opens a new one
+                notifyAll();
+            }
+        }
+
+        if (leader)
+        {
+            awaitWindow(key, batch);
+            batch.execute(writer);
+        }
+        else batch.await();
+
+        if (batch.getFailure() != null) throw batch.getFailure();
+    }
+
+    /**
+     * Blocks the leader until the batch window elapses or the batch is closed because it is full.
+     *
+     * @param key graph key of the batch
+     * @param batch open batch
+     */
+    protected synchronized void awaitWindow(String key, Batch batch)
+    {
+        long deadline = System.currentTimeMillis() + getWindow();
+        long remaining = getWindow();
+
+        try
+        {
+            while (openBatches.get(key) == batch && remaining > 0)
+            {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt(); // execute what we have so far
+        }
+        finally
+        {
+            if (openBatches.get(key) == batch) openBatches.remove(key);
+        }
+    }
+
+    /**
+     * Merges quads of <code>INSERT DATA</code> requests into a single operation.
+     * Blank nodes stay distinct as they are not relabeled.
+     *
+     * @param updateRequests list of requests
+     * @return merged request
+     */
+    public static UpdateRequest merge(List<UpdateRequest> updateRequests)
+    {
+        if (updateRequests == null) throw new IllegalArgumentException("UpdateRequest List cannot be null");
+
+        UpdateRequest merged = new UpdateRequest();
+        QuadDataAcc quads = new QuadDataAcc();
+
+        for (UpdateRequest updateRequest : updateRequests)
+        {
+            if (merged.getBaseURI() == null && updateRequest.getBaseURI() != null) merged.setBaseURI(updateRequest.getBaseURI());
+
+            for (Update update : updateRequest.getOperations())
+                for (Quad quad : ((UpdateDataInsert)update).getQuads())
+                    quads.addQuad(quad);
+        }
+
+        return merged.add(new UpdateDataInsert(quads));
+    }
+
+    public long getWindow()
+    {
+        return window;
+    }
+
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    protected static class Batch
+    {
+        private final List<UpdateRequest> updateRequests = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+
+        public void add(UpdateRequest updateRequest)
+        {
+            updateRequests.add(updateRequest);
+        }
+
+        public int size()
+        {
+            return updateRequests.size();
+        }
+
+        public void execute(Writer writer)
+        {
+            try
+            {
+                UpdateRequest merged = merge(updateRequests);
+                if (log.isDebugEnabled()) log.debug("Executing INSERT DATA batch of {} requests", updateRequests.size());
+                writer.write(merged);
+            }
+            catch (RuntimeException ex)
+            {
+                if (log.isErrorEnabled()) log.error("INSERT DATA batch of {} requests failed", updateRequests.size(), ex);
+                failure = ex;
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+
+        public void await()
+        {
+            boolean interrupted = false;
+            try
+            {
+                while (true)
+                {
+                    try
+                    {
+                        done.await();
+                        return;
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        interrupted = true; // the write is in flight, its outcome has to be reported
+                    }
+                }
+            }
+            finally
+            {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        public RuntimeException getFailure()
+        {
+            return failure;
+        }
+
+    }
+
+}
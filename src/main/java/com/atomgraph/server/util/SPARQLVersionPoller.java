@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
+
+/**
+ * Detects external writes by polling a SPARQL <code>SELECT</code> query.
+ * The query returns a change marker per graph, e.g. modification date or transaction ID:
+ * <code>?graph</code> binds the graph URI (unbound for the whole store) and <code>?version</code> the marker.
+ * A graph is reported as changed whenever its marker differs from the previous poll. The first poll only records
+ * the markers.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class SPARQLVersionPoller implements VersionRegistry.Poller
+{
+
+    public static final String GRAPH_VAR_NAME = "graph";
+    public static final String VERSION_VAR_NAME = "version";
+
+    private final Dataset dataset;
+    private final String endpointURI;
+    private final Query query;
+    private final String authUser, authPwd;
+    private Map<String, RDFNode> markers; // confined to the polling thread
+
+    /**
+     * Constructs poller over a local dataset.
+     *
+     * @param dataset dataset
+     * @param query marker query
+     */
+    public SPARQLVersionPoller(Dataset dataset, Query query)
+    {
+        if (dataset == null) throw new IllegalArgumentException("Dataset cannot be null");
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (!query.isSelectType()) throw new IllegalArgumentException("Version query must be SELECT");
+
+        this.dataset = dataset;
+        this.endpointURI = null;
+        this.query = query;
+        this.authUser = null;
+        this.authPwd = null;
+    }
+
+    /**
+     * Constructs poller over a remote SPARQL endpoint.
+     *
+     * @param endpointURI endpoint URI
+     * @param query marker query
+     */
+    public SPARQLVersionPoller(String endpointURI, Query query)
+    {
+        this(endpointURI, query, null, null);
+    }
+
+    /**
+     * Constructs poller over a remote SPARQL endpoint that requires HTTP Basic authentication.
+     *
+     * @param endpointURI endpoint URI
+     * @param query marker query
+     * @param authUser username or null
+     * @param authPwd password or null
+     */
+    public SPARQLVersionPoller(String endpointURI, Query query, String authUser, String authPwd)
+    {
+        if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI cannot be null");
+        if (query == null) throw new IllegalArgumentException("Query cannot be null");
+        if (!query.isSelectType()) throw new IllegalArgumentException("Version query must be SELECT");
+
+        this.dataset = null;
+        this.endpointURI = endpointURI;
+        this.query = query;
+        this.authUser = authUser;
+        this.authPwd = authPwd;
+    }
+
+    @Override
+    public Collection<String> poll()
+    {
+        Map<String, RDFNode> current = new HashMap<>();
+        QueryExecution qex = createQueryExecution();
+        try
+        {
+            ResultSet results = qex.execSelect();
+            while (results.hasNext())
+            {
+                QuerySolution solution = results.next();
+                RDFNode graph = solution.get(GRAPH_VAR_NAME);
+                current.put(graph != null && graph.isURIResource() ? graph.asResource().getURI() : null, solution.get(VERSION_VAR_NAME));
+            }
+        }
+        finally
+        {
+            qex.close();
+        }
+
+        Set<String> changed = new HashSet<>();
+        if (markers != null)
+        {
+            for (Map.Entry<String, RDFNode> entry : current.entrySet())
+                if (!markers.containsKey(entry.getKey()) || !equal(markers.get(entry.getKey()), entry.getValue()))
+                    changed.add(entry.getKey());
+            for (String graphURI : markers.keySet())
+                if (!current.containsKey(graphURI)) changed.add(graphURI); // dropped graph
+        }
+        markers = current;
+
+        return changed;
+    }
+
+    private static boolean equal(RDFNode a, RDFNode b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public QueryExecution createQueryExecution()
+    {
+        if (getDataset() != null) return QueryExecutionFactory.create(getQuery(), getDataset());
+
+        QueryEngineHTTP qex = QueryExecutionFactory.createServiceRequest(getEndpointURI(), getQuery());
+        if (getAuthUser() != null && getAuthPwd() != null) qex.setBasicAuthentication(getAuthUser(), getAuthPwd().toCharArray());
+        return qex;
+    }
+
+    public Dataset getDataset()
+    {
+        return dataset;
+    }
+
+    public String getEndpointURI()
+    {
+        return endpointURI;
+    }
+
+    public String getAuthUser()
+    {
+        return authUser;
+    }
+
+    public String getAuthPwd()
+    {
+        return authPwd;
+    }
+
+    public Query getQuery()
+    {
+        return query;
+    }
+
+}
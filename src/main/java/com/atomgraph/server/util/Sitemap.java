@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.ontology.OntDocumentManager;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.NodeIterator;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.vocabulary.OWL;
+
+/**
+ * Immutable snapshot of the materialized sitemap ontology and the indexes derived from it.
+ * The model is never written after construction, so any number of requests can read it concurrently while a newer
+ * snapshot is being built.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see SitemapLoader
+ */
+public class Sitemap
+{
+
+    private static final OntModelSpec SNAPSHOT_SPEC = createSnapshotSpec();
+
+    private final String ontologyURI;
+    private final Model model;
+    private final Set<String> documentURIs;
+    private final long loaded = System.currentTimeMillis();
+    private volatile TemplateIndex templateIndex;
+
+    /**
+     * Constructs snapshot.
+     *
+     * @param ontologyURI sitemap ontology URI
+     * @param model materialized ontology, including the imports
+     */
+    public Sitemap(String ontologyURI, Model model)
+    {
+        if (ontologyURI == null) throw new IllegalArgumentException("URI cannot be null");
+        if (model == null) throw new IllegalArgumentException("Model cannot be null");
+
+        this.ontologyURI = ontologyURI;
+        this.model = model;
+        this.documentURIs = Collections.unmodifiableSet(getDocumentURIs(ontologyURI, model));
+    }
+
+    // the imports are already materialized, processing them again would read stale models from the document manager
+    private static OntModelSpec createSnapshotSpec()
+    {
+        OntDocumentManager manager = new OntDocumentManager();
+        manager.setProcessImports(false);
+        OntModelSpec spec = new OntModelSpec(OntModelSpec.OWL_MEM);
+        spec.setDocumentManager(manager);
+        return spec;
+    }
+
+    private static Set<String> getDocumentURIs(String ontologyURI, Model model)
+    {
+        Set<String> uris = new HashSet<>();
+        uris.add(ontologyURI);
+
+        NodeIterator it = model.listObjectsOfProperty(OWL.imports);
+        try
+        {
+            while (it.hasNext())
+            {
+                RDFNode imported = it.next();
+                if (imported.isURIResource()) uris.add(imported.asResource().getURI());
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        return uris;
+    }
+
+    /**
+     * Returns a per-request view of the ontology. Writes to the view do not reach the snapshot.
+     *
+     * @return ontology
+     */
+    public Ontology getOntology()
+    {
+        OntModel ontModel = ModelFactory.createOntologyModel(SNAPSHOT_SPEC,
+                ModelFactory.createUnion(ModelFactory.createDefaultModel(), getModel()));
+        return ontModel.getOntology(getOntologyURI());
+    }
+
+    /**
+     * Returns the graph that identifies the snapshot an ontology model was read from. For the per-request views built by
+     * {@link #getOntology()} it is the snapshot graph, otherwise the base graph of the model.
+     * Caches derived from the sitemap are keyed on it, so that a request still running on an older snapshot cannot
+     * populate them for newer ones.
+     *
+     * @param ontModel ontology model
+     * @return snapshot graph
+     */
+    public static Graph getSnapshotGraph(OntModel ontModel)
+    {
+        if (ontModel == null) throw new IllegalArgumentException("OntModel cannot be null");
+
+        Graph base = ontModel.getBaseGraph();
+        if (base instanceof Union) return ((Union)base).getR();
+        return base;
+    }
+
+    public String getOntologyURI()
+    {
+        return ontologyURI;
+    }
+
+    public Model getModel()
+    {
+        return model;
+    }
+
+    /**
+     * Returns URIs of the sitemap ontology and all its imports.
+     *
+     * @return document URIs
+     */
+    public Set<String> getDocumentURIs()
+    {
+        return documentURIs;
+    }
+
+    /**
+     * Returns the template index of this snapshot, built on first use.
+     *
+     * @return template index
+     */
+    public TemplateIndex getTemplateIndex()
+    {
+        TemplateIndex index = templateIndex;
+        if (index == null) templateIndex = index = new TemplateIndex(getOntology()); // racing builds are equivalent
+
+        return index;
+    }
+
+    /**
+     * Returns the time the snapshot was built.
+     *
+     * @return time in milliseconds
+     */
+    public long getLoaded()
+    {
+        return loaded;
+    }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.util.FileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of materialized sitemap snapshots.
+ * A snapshot is stored as RDF Thrift, next to an index file that lists the source documents of the sitemap and the
+ * hash of their content and of the rules. On startup the documents listed in the index are hashed again, and if the
+ * hash matches, the snapshot is read instead of running the inference. The import closure cannot change without one of
+ * the listed documents changing, so the documents do not have to be parsed to compute the hash.
+ * Files are replaced atomically, so nodes can share the cache directory.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see SitemapLoader
+ */
+public class SitemapCache
+{
+
+    private static final Logger log = LoggerFactory.getLogger(SitemapCache.class);
+
+    /** Changes whenever the materialization output changes, so that old snapshots are not reused */
+    public static final String FORMAT_VERSION = "1";
+
+    private final File dir;
+    private final String rules;
+
+    /**
+     * Constructs cache.
+     *
+     * @param dir cache directory, created if it does not exist
+     * @param ontModelSpec specification with the sitemap rule reasoner
+     */
+    public SitemapCache(File dir, OntModelSpec ontModelSpec)
+    {
+        if (dir == null) throw new IllegalArgumentException("Directory cannot be null");
+        if (ontModelSpec == null) throw new IllegalArgumentException("OntModelSpec cannot be null");
+
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IllegalArgumentException("Sitemap cache directory '" + dir + "' cannot be created");
+        this.dir = dir;
+        this.rules = getRules(ontModelSpec);
+    }
+
+    private static String getRules(OntModelSpec ontModelSpec)
+    {
+        if (ontModelSpec.getReasoner() instanceof GenericRuleReasoner)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (Rule rule : ((GenericRuleReasoner)ontModelSpec.getReasoner()).getRules()) sb.append(rule).append('\n');
+            return sb.toString();
+        }
+
+        return String.valueOf(ontModelSpec.getReasoner());
+    }
+
+    /**
+     * Reads snapshot if the source documents and rules did not change since it was written.
+     *
+     * @param ontologyURI sitemap ontology URI
+     * @param fileManager file manager used to read the source documents
+     * @return snapshot, or null if there is none or it is outdated
+     */
+    public Sitemap read(String ontologyURI, FileManager fileManager)
+    {
+        File indexFile = getIndexFile(ontologyURI);
+        if (!indexFile.exists()) return null;
+
+        try
+        {
+            Properties index = new Properties();
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(indexFile.toPath())))
+            {
+                index.load(in);
+            }
+
+            List<String> documentURIs = Arrays.asList(index.getProperty("documents", "").trim().split("\\s+"));
+            String hash = getHash(ontologyURI, documentURIs, fileManager);
+            if (hash == null || !hash.equals(index.getProperty("hash")))
+            {
+                if (log.isDebugEnabled()) log.debug("Sitemap <{}> snapshot is outdated", ontologyURI);
+                return null;
+            }
+
+            Model model = ModelFactory.createDefaultModel();
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(getSnapshotFile(hash).toPath())))
+            {
+                RDFDataMgr.read(model, in, Lang.RDFTHRIFT);
+            }
+
+            if (log.isDebugEnabled()) log.debug("Read sitemap <{}> snapshot {} with {} triples", ontologyURI, hash, model.size());
+            return new Sitemap(ontologyURI, model);
+        }
+        catch (IOException | RuntimeException ex) // a broken snapshot is rebuilt
+        {
+            if (log.isWarnEnabled()) log.warn("Could not read sitemap <{}> snapshot", ontologyURI, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes snapshot and its index. Failures are logged, as the snapshot only speeds up the next startup.
+     *
+     * @param sitemap sitemap snapshot
+     * @param fileManager file manager used to read the source documents
+     */
+    public void write(Sitemap sitemap, FileManager fileManager)
+    {
+        if (sitemap == null) throw new IllegalArgumentException("Sitemap cannot be null");
+
+        List<String> documentURIs = new ArrayList<>(sitemap.getDocumentURIs());
+        Collections.sort(documentURIs);
+        String hash = getHash(sitemap.getOntologyURI(), documentURIs, fileManager);
+        if (hash == null)
+        {
+            if (log.isDebugEnabled()) log.debug("Sitemap <{}> has documents that cannot be read, not writing snapshot", sitemap.getOntologyURI());
+            return;
+        }
+
+        try
+        {
+            String previousHash = getPreviousHash(sitemap.getOntologyURI());
+            Path snapshot = Files.createTempFile(dir.toPath(), "sitemap", ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(snapshot)))
+            {
+                RDFDataMgr.write(out, sitemap.getModel(), RDFFormat.RDF_THRIFT);
+            }
+            Files.move(snapshot, getSnapshotFile(hash).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            StringBuilder documents = new StringBuilder();
+            for (String documentURI : documentURIs) documents.append(documentURI).append(' ');
+            Properties index = new Properties();
+            index.setProperty("ontology", sitemap.getOntologyURI());
+            index.setProperty("hash", hash);
+            index.setProperty("documents", documents.toString().trim());
+            index.setProperty("triples", String.valueOf(sitemap.getModel().size()));
+
+            Path indexTemp = Files.createTempFile(dir.toPath(), "sitemap", ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(indexTemp)))
+            {
+                index.store(out, "Sitemap snapshot index");
+            }
+            Files.move(indexTemp, getIndexFile(sitemap.getOntologyURI()).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (previousHash != null && !previousHash.equals(hash)) Files.deleteIfExists(getSnapshotFile(previousHash).toPath());
+            if (log.isDebugEnabled()) log.debug("Wrote sitemap <{}> snapshot {}", sitemap.getOntologyURI(), hash);
+        }
+        catch (IOException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Could not write sitemap <{}> snapshot", sitemap.getOntologyURI(), ex);
+        }
+    }
+
+    private String getPreviousHash(String ontologyURI)
+    {
+        File indexFile = getIndexFile(ontologyURI);
+        if (!indexFile.exists()) return null;
+
+        Properties index = new Properties();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(indexFile.toPath())))
+        {
+            index.load(in);
+            return index.getProperty("hash");
+        }
+        catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Hashes the content of the source documents together with the rules.
+     *
+     * @param ontologyURI sitemap ontology URI
+     * @param documentURIs sorted URIs of the ontology and its imports
+     * @param fileManager file manager used to read the documents
+     * @return hex-encoded hash, or null if a document cannot be read
+     */
+    public String getHash(String ontologyURI, Collection<String> documentURIs, FileManager fileManager)
+    {
+        MessageDigest digest = getDigest();
+        digest.update((FORMAT_VERSION + '\n' + ontologyURI + '\n' + rules).getBytes(StandardCharsets.UTF_8));
+
+        byte[] buffer = new byte[8192];
+        for (String documentURI : documentURIs)
+        {
+            digest.update(documentURI.getBytes(StandardCharsets.UTF_8));
+
+            try (InputStream in = fileManager.open(documentURI))
+            {
+                if (in == null) return null; // e.g. model added to the document manager programmatically
+
+                int read;
+                while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+            }
+            catch (IOException ex)
+            {
+                if (log.isDebugEnabled()) log.debug("Could not read sitemap document <{}>", documentURI, ex);
+                return null;
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    public File getIndexFile(String ontologyURI)
+    {
+        return new File(dir, "sitemap-" + toHex(getDigest().digest(ontologyURI.getBytes(StandardCharsets.UTF_8))).substring(0, 16) + ".properties");
+    }
+
+    public File getSnapshotFile(String hash)
+    {
+        return new File(dir, "sitemap-" + hash + ".trdf");
+    }
+
+    private static MessageDigest getDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex); // every JVM supports SHA-256
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    public File getDir()
+    {
+        return dir;
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.processor.exception.OntologyException;
+import com.atomgraph.server.provider.OntologyProvider;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.apache.jena.ontology.OntDocumentManager;
+import org.apache.jena.ontology.OntModel;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.util.FileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads and materializes the sitemap ontology, and reloads it in the background.
+ * The current {@link Sitemap} snapshot is replaced atomically once a reload completes, so that in-flight requests
+ * finish on the snapshot they started with and new requests do not wait for the reload. If a reload fails, the
+ * previous snapshot stays in use.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class SitemapLoader
+{
+
+    private static final Logger log = LoggerFactory.getLogger(SitemapLoader.class);
+
+    private final OntDocumentManager manager;
+    private final String ontologyURI;
+    private final OntModelSpec ontModelSpec;
+    private final SitemapCache cache;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "sitemap-loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile Sitemap sitemap;
+    private IncrementalMaterializer materializer; // guarded by this
+    private final Object reloadLock = new Object();
+    private Future<Sitemap> pending; // reload that has not started yet, guarded by reloadLock
+
+    /**
+     * Constructs loader and loads the initial snapshot on the calling thread.
+     *
+     * @param manager document manager used to resolve the ontology and its imports
+     * @param ontologyURI sitemap ontology URI
+     * @param ontModelSpec specification with the sitemap rule reasoner
+     * @throws OntologyException if the sitemap is not valid
+     */
+    public SitemapLoader(OntDocumentManager manager, String ontologyURI, OntModelSpec ontModelSpec)
+    {
+        this(manager, ontologyURI, ontModelSpec, null);
+    }
+    
+    /**
+     * Constructs loader and loads the initial snapshot on the calling thread, from the persistent cache if it is
+     * up to date.
+     *
+     * @param manager document manager used to resolve the ontology and its imports
+     * @param ontologyURI sitemap ontology URI
+     * @param ontModelSpec specification with the sitemap rule reasoner
+     * @param cache snapshot cache, or null to always materialize
+     * @throws OntologyException if the sitemap is not valid
+     */
+    public SitemapLoader(OntDocumentManager manager, String ontologyURI, OntModelSpec ontModelSpec, SitemapCache cache)
+    {
+        if (manager == null) throw new IllegalArgumentException("OntDocumentManager cannot be null");
+        if (ontologyURI == null) throw new IllegalArgumentException("URI cannot be null");
+        if (ontModelSpec == null) throw new IllegalArgumentException("OntModelSpec cannot be null");
+
+        this.manager = manager;
+        this.ontologyURI = ontologyURI;
+        this.ontModelSpec = ontModelSpec;
+        this.cache = cache;
+        this.sitemap = load(manager);
+        manager.addModel(ontologyURI, sitemap.getModel(), true);
+    }
+
+    /**
+     * Returns the cached snapshot if it is up to date, or builds a new one and caches it.
+     *
+     * @param manager document manager
+     * @return snapshot
+     */
+    public Sitemap load(OntDocumentManager manager)
+    {
+        if (getCache() == null) return materialize(manager);
+        
+        Sitemap cached = getCache().read(getOntologyURI(), manager.getFileManager());
+        if (cached != null) return cached;
+        
+        Sitemap materialized = materialize(manager);
+        getCache().write(materialized, manager.getFileManager());
+        return materialized;
+    }
+    
+    /**
+     * Builds a new snapshot. Inferences are materialized to avoid invoking the rules engine on every request.
+     * If the rules allow it, the inferences of the previous snapshot are updated incrementally instead of being
+     * recomputed.
+     *
+     * @param manager document manager
+     * @return snapshot
+     */
+    public Sitemap materialize(OntDocumentManager manager)
+    {
+        long start = System.currentTimeMillis();
+        List<Rule> rules = getRules();
+        boolean incremental = rules != null && IncrementalMaterializer.isSupported(rules);
+        
+        OntModel ontModel = OntologyProvider.getOntModel(manager, getOntologyURI(), getOntModelSpec(manager, incremental ? null : getOntModelSpec().getReasoner()));
+        Ontology ontology = ontModel.getOntology(getOntologyURI());
+        if (ontology == null) throw new OntologyException("Sitemap ontology '" + getOntologyURI() + "' not found");
+
+        OntologyProvider.ImportCycleChecker checker = new OntologyProvider.ImportCycleChecker();
+        checker.check(ontology);
+        if (checker.getCycleOntology() != null)
+        {
+            if (log.isErrorEnabled()) log.error("Sitemap contains an ontology which forms an import cycle: {}", checker.getCycleOntology());
+            throw new OntologyException("Sitemap contains an ontology which forms an import cycle: " + checker.getCycleOntology().getURI());
+        }
+
+        Model materializedModel;
+        if (incremental)
+            synchronized (this)
+            {
+                if (materializer == null) materializer = new IncrementalMaterializer(rules);
+                materializer.update(ontModel.getGraph()); // no reasoner, so the graph contains the asserted triples only
+                materializedModel = materializer.getModel();
+            }
+        else
+        {
+            materializedModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
+            materializedModel.add(ontModel);
+        }
+
+        Sitemap loaded = new Sitemap(getOntologyURI(), materializedModel);
+        if (log.isDebugEnabled()) log.debug("Loaded sitemap <{}> with {} triples in {} ms", getOntologyURI(), materializedModel.size(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * Reloads the sitemap on the background thread. Reloads are executed one after another, and a reload requested
+     * while another one is waiting to start is merged into it, since it would read the same files.
+     * The ontology and its imports are read again through a new document manager with an empty model cache, and the
+     * shared import cache is invalidated, so that changed files are not served from a cache.
+     *
+     * @return future of the new snapshot
+     */
+    public Future<Sitemap> reload()
+    {
+        synchronized (reloadLock)
+        {
+            if (pending != null)
+            {
+                if (log.isDebugEnabled()) log.debug("Sitemap <{}> reload is already pending", getOntologyURI());
+                return pending;
+            }
+
+            pending = executor.submit(new Callable<Sitemap>()
+            {
+                @Override
+                public Sitemap call()
+                {
+                    synchronized (reloadLock)
+                    {
+                        pending = null; // reloads requested from now on can see changes that this one does not
+                    }
+
+                    return reloadSitemap();
+                }
+            });
+            return pending;
+        }
+    }
+
+    private Sitemap reloadSitemap()
+    {
+        try
+        {
+            OntDocumentManager reloadManager = new OntDocumentManager();
+            reloadManager.setFileManager(new FileManager(getManager().getFileManager())); // the copy does not share the model cache
+            reloadManager.setCacheModels(true);
+            ImportCache.get().invalidate();
+
+            Sitemap reloaded = load(reloadManager);
+            sitemap = reloaded;
+            getManager().addModel(getOntologyURI(), reloaded.getModel(), true);
+            if (log.isInfoEnabled()) log.info("Reloaded sitemap <{}>", getOntologyURI());
+
+            for (Listener listener : listeners) listener.loaded(reloaded);
+            return reloaded;
+        }
+        catch (RuntimeException ex)
+        {
+            if (log.isErrorEnabled()) log.error("Sitemap <{}> reload failed, keeping the previous version", getOntologyURI(), ex);
+            throw ex;
+        }
+    }
+
+    // imports have to be resolved by the loading manager, not the one of the specification, which can hold stale models
+    private OntModelSpec getOntModelSpec(OntDocumentManager manager, Reasoner reasoner)
+    {
+        OntModelSpec spec = new OntModelSpec(getOntModelSpec());
+        spec.setDocumentManager(manager);
+        spec.setReasoner(reasoner);
+        return spec;
+    }
+    
+    /**
+     * Returns the sitemap rules.
+     * 
+     * @return rules, or null if the reasoner is not rule-based
+     */
+    public List<Rule> getRules()
+    {
+        if (getOntModelSpec().getReasoner() instanceof GenericRuleReasoner) return ((GenericRuleReasoner)getOntModelSpec().getReasoner()).getRules();
+        
+        return null;
+    }
+    
+    public void addListener(Listener listener)
+    {
+        if (listener == null) throw new IllegalArgumentException("Listener cannot be null");
+        listeners.add(listener);
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the current snapshot.
+     *
+     * @return sitemap snapshot
+     */
+    public Sitemap getSitemap()
+    {
+        return sitemap;
+    }
+
+    public OntDocumentManager getManager()
+    {
+        return manager;
+    }
+
+    public String getOntologyURI()
+    {
+        return ontologyURI;
+    }
+
+    public OntModelSpec getOntModelSpec()
+    {
+        return ontModelSpec;
+    }
+
+    public SitemapCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Notified after a reloaded snapshot is swapped in.
+     */
+    public interface Listener
+    {
+
+        void loaded(Sitemap sitemap);
+
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.apache.jena.ontology.OntDocumentManager;
+import org.apache.jena.util.FileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sitemaps of the applications hosted by this webapp.
+ * Requests are mapped to an application by their base URI, or by the host of the base URI, and fall back to the
+ * default application. Sitemaps of the other applications are loaded on first use, each by its own document manager
+ * with a copy of the default file manager, so that their models do not mix; they share the JVM-wide
+ * {@link ImportCache} with the default one. Loaded sitemaps are accounted by their size in
+ * triples, and the least recently used ones are evicted when there are too many or they are too large. An evicted
+ * sitemap is loaded again on the next request, from the {@link SitemapCache} if one is configured.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class SitemapRegistry
+{
+
+    private static final Logger log = LoggerFactory.getLogger(SitemapRegistry.class);
+
+    private final SitemapLoader defaultLoader;
+    private final Map<String, String> applications;
+    private final SitemapCache cache;
+    private final int maxApplications;
+    private final long maxTriples;
+    private final boolean reloadable;
+    private final List<SitemapLoader.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Future<SitemapLoader>> loaders = new LinkedHashMap<>(16, 0.75f, true); // access order, guarded by itself
+    private final Map<String, SitemapWatcher> watchers = new ConcurrentHashMap<>();
+    private volatile long watchDelay = -1; // negative while sitemap files are not watched
+
+    /**
+     * Constructs single-application registry.
+     *
+     * @param defaultLoader sitemap loader of the default application
+     */
+    public SitemapRegistry(SitemapLoader defaultLoader)
+    {
+        this(defaultLoader, Collections.<String, String>emptyMap(), null, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs registry of sitemaps that cannot be reloaded on request.
+     *
+     * @param defaultLoader sitemap loader of the default application
+     * @param applications sitemap ontology URIs by base URI or host
+     * @param cache snapshot cache, or null
+     * @param maxApplications maximum number of loaded sitemaps besides the default one
+     * @param maxTriples maximum total size of the loaded sitemaps besides the default one
+     */
+    public SitemapRegistry(SitemapLoader defaultLoader, Map<String, String> applications, SitemapCache cache, int maxApplications, long maxTriples)
+    {
+        this(defaultLoader, applications, cache, maxApplications, maxTriples, false);
+    }
+
+    /**
+     * Constructs registry.
+     *
+     * @param defaultLoader sitemap loader of the default application
+     * @param applications sitemap ontology URIs by base URI or host
+     * @param cache snapshot cache, or null
+     * @param maxApplications maximum number of loaded sitemaps besides the default one
+     * @param maxTriples maximum total size of the loaded sitemaps besides the default one
+     * @param reloadable true if clients can request sitemap reloads
+     */
+    public SitemapRegistry(SitemapLoader defaultLoader, Map<String, String> applications, SitemapCache cache, int maxApplications, long maxTriples, boolean reloadable)
+    {
+        if (defaultLoader == null) throw new IllegalArgumentException("Default SitemapLoader cannot be null");
+        if (applications == null) throw new IllegalArgumentException("Application Map cannot be null");
+        if (maxApplications < 1) throw new IllegalArgumentException("Maximum number of applications must be positive");
+
+        this.defaultLoader = defaultLoader;
+        this.applications = applications;
+        this.cache = cache;
+        this.maxApplications = maxApplications;
+        this.maxTriples = maxTriples;
+        this.reloadable = reloadable;
+    }
+
+    /**
+     * Parses application mapping. Entries are whitespace-separated pairs of base URI or host and sitemap ontology URI.
+     *
+     * @param mapping mapping string
+     * @return ontology URIs by base URI or host
+     */
+    public static Map<String, String> parseApplications(String mapping)
+    {
+        if (mapping == null) throw new IllegalArgumentException("Mapping String cannot be null");
+
+        String[] tokens = mapping.trim().split("\\s+");
+        if (tokens.length % 2 != 0) throw new IllegalArgumentException("Application mapping must consist of base URI/host and ontology URI pairs");
+
+        Map<String, String> applications = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < tokens.length; i += 2) applications.put(tokens[i], tokens[i + 1]);
+        return applications;
+    }
+
+    /**
+     * Returns sitemap ontology URI of the application.
+     *
+     * @param baseURI base URI of the request
+     * @return ontology URI
+     */
+    public String getOntologyURI(URI baseURI)
+    {
+        if (applications.isEmpty() || baseURI == null) return getDefaultLoader().getOntologyURI();
+
+        String ontologyURI = applications.get(baseURI.toString());
+        if (ontologyURI == null && baseURI.getHost() != null) ontologyURI = applications.get(baseURI.getHost());
+        return ontologyURI != null ? ontologyURI : getDefaultLoader().getOntologyURI();
+    }
+
+    /**
+     * Returns sitemap loader of the application, loading its sitemap on first use.
+     *
+     * @param baseURI base URI of the request
+     * @return sitemap loader
+     */
+    public SitemapLoader getLoader(URI baseURI)
+    {
+        String ontologyURI = getOntologyURI(baseURI);
+        if (ontologyURI.equals(getDefaultLoader().getOntologyURI())) return getDefaultLoader();
+
+        FutureTask<SitemapLoader> task = null;
+        Future<SitemapLoader> future;
+        synchronized (loaders)
+        {
+            future = loaders.get(ontologyURI);
+            if (future == null)
+            {
+                task = new FutureTask<>(new LoaderCallable(ontologyURI));
+                loaders.put(ontologyURI, task);
+                future = task;
+            }
+        }
+
+        if (task != null) // loaded on the requesting thread, concurrent requests of the same application wait for it
+        {
+            task.run();
+            evict(ontologyURI);
+        }
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException ex)
+        {
+            synchronized (loaders)
+            {
+                if (loaders.get(ontologyURI) == future) loaders.remove(ontologyURI); // retried on the next request
+            }
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // evicts least recently used sitemaps over the limits, except the one just loaded
+    private void evict(String keep)
+    {
+        synchronized (loaders)
+        {
+            long triples = 0;
+            for (Long size : getUsage(loaders).values()) triples += size;
+
+            Iterator<Map.Entry<String, Future<SitemapLoader>>> it = loaders.entrySet().iterator();
+            while ((loaders.size() > getMaxApplications() || triples > getMaxTriples()) && it.hasNext())
+            {
+                Map.Entry<String, Future<SitemapLoader>> entry = it.next();
+                if (entry.getKey().equals(keep) || !entry.getValue().isDone()) continue;
+
+                SitemapLoader loader = getDone(entry.getValue());
+                it.remove();
+                if (loader == null) continue;
+
+                triples -= loader.getSitemap().getModel().size();
+                loader.shutdown();
+                SitemapWatcher watcher = watchers.remove(entry.getKey());
+                if (watcher != null) watcher.stop();
+                if (log.isDebugEnabled()) log.debug("Evicted sitemap <{}>", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns the size of each loaded sitemap, including the default one.
+     *
+     * @return number of triples by sitemap ontology URI
+     */
+    public Map<String, Long> getUsage()
+    {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        usage.put(getDefaultLoader().getOntologyURI(), getDefaultLoader().getSitemap().getModel().size());
+        synchronized (loaders)
+        {
+            usage.putAll(getUsage(loaders));
+        }
+        return usage;
+    }
+
+    private static Map<String, Long> getUsage(Map<String, Future<SitemapLoader>> loaders)
+    {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<SitemapLoader>> entry : loaders.entrySet())
+        {
+            SitemapLoader loader = entry.getValue().isDone() ? getDone(entry.getValue()) : null;
+            if (loader != null) usage.put(entry.getKey(), loader.getSitemap().getModel().size());
+        }
+        return usage;
+    }
+
+    private static SitemapLoader getDone(Future<SitemapLoader> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException | InterruptedException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Adds listener to the loaders of all applications.
+     *
+     * @param listener listener
+     */
+    public void addListener(SitemapLoader.Listener listener)
+    {
+        if (listener == null) throw new IllegalArgumentException("Listener cannot be null");
+
+        listeners.add(listener);
+        getDefaultLoader().addListener(listener);
+    }
+
+    /**
+     * Watches the local sitemap files of the default application and of every application loaded from now on, and
+     * reloads a sitemap when its files change.
+     *
+     * @param delay quiet period in milliseconds after the last change before the reload starts
+     * @throws IOException if the default sitemap files cannot be watched
+     * @see SitemapWatcher
+     */
+    public void watch(long delay) throws IOException
+    {
+        if (delay < 0) throw new IllegalArgumentException("Watch delay cannot be negative");
+
+        startWatcher(getDefaultLoader(), delay);
+        watchDelay = delay;
+    }
+
+    private void startWatcher(SitemapLoader loader, long delay) throws IOException
+    {
+        SitemapWatcher watcher = new SitemapWatcher(loader, delay);
+        watcher.start();
+        watchers.put(loader.getOntologyURI(), watcher);
+    }
+
+    public SitemapLoader getDefaultLoader()
+    {
+        return defaultLoader;
+    }
+
+    public SitemapCache getCache()
+    {
+        return cache;
+    }
+
+    public int getMaxApplications()
+    {
+        return maxApplications;
+    }
+
+    public long getMaxTriples()
+    {
+        return maxTriples;
+    }
+
+    public boolean isReloadable()
+    {
+        return reloadable;
+    }
+
+    private class LoaderCallable implements Callable<SitemapLoader>
+    {
+        private final String ontologyURI;
+
+        LoaderCallable(String ontologyURI)
+        {
+            this.ontologyURI = ontologyURI;
+        }
+
+        @Override
+        public SitemapLoader call()
+        {
+            if (log.isDebugEnabled()) log.debug("Loading sitemap <{}> of a hosted application", ontologyURI);
+            OntDocumentManager manager = new OntDocumentManager();
+            manager.setFileManager(new FileManager(getDefaultLoader().getManager().getFileManager())); // the copy does not share the model cache
+            manager.setCacheModels(true);
+
+            SitemapLoader loader = new SitemapLoader(manager, ontologyURI, getDefaultLoader().getOntModelSpec(), getCache());
+            for (SitemapLoader.Listener listener : listeners) loader.addListener(listener);
+
+            long delay = watchDelay;
+            if (delay >= 0)
+                try
+                {
+                    startWatcher(loader, delay);
+                }
+                catch (IOException ex)
+                {
+                    if (log.isWarnEnabled()) log.warn("Could not watch files of sitemap <{}>, reloading only on request", ontologyURI, ex);
+                }
+
+            return loader;
+        }
+
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.util.LocationMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the local files of the sitemap ontology and its imports, and reloads the sitemap when they change.
+ * Files are resolved through the location mapping, either as file system paths or as classpath resources in
+ * unpacked directories. Documents that do not map to local files are not watched.
+ * Bursts of changes, e.g. editor saves, are merged into one reload.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see SitemapLoader
+ */
+public class SitemapWatcher implements Runnable, SitemapLoader.Listener
+{
+
+    private static final Logger log = LoggerFactory.getLogger(SitemapWatcher.class);
+
+    private final SitemapLoader loader;
+    private final long delay;
+    private final WatchService watchService;
+    private final Map<Path, Set<Path>> watched = new ConcurrentHashMap<>(); // directory -> file names
+    private final Thread thread;
+
+    /**
+     * Constructs watcher.
+     *
+     * @param loader sitemap loader
+     * @param delay quiet period in milliseconds after the last change before the reload starts
+     * @throws IOException if the watch service cannot be created
+     */
+    public SitemapWatcher(SitemapLoader loader, long delay) throws IOException
+    {
+        if (loader == null) throw new IllegalArgumentException("SitemapLoader cannot be null");
+
+        this.loader = loader;
+        this.delay = delay;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this, "sitemap-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        watch(getLoader().getSitemap());
+        getLoader().addListener(this);
+        thread.start();
+    }
+
+    public void stop()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException ex)
+        {
+            if (log.isWarnEnabled()) log.warn("Could not close sitemap watch service", ex);
+        }
+    }
+
+    @Override
+    public void loaded(Sitemap sitemap)
+    {
+        watch(sitemap); // imports may have changed
+    }
+
+    /**
+     * Registers the files of the snapshot's documents.
+     *
+     * @param sitemap sitemap snapshot
+     */
+    public synchronized void watch(Sitemap sitemap)
+    {
+        LocationMapper mapper = getLoader().getManager().getFileManager().getLocationMapper();
+
+        for (String documentURI : sitemap.getDocumentURIs())
+        {
+            String location = mapper != null ? mapper.altMapping(documentURI, documentURI) : documentURI;
+            Path file = getLocalFile(location);
+            if (file == null) continue;
+
+            Path dir = file.getParent();
+            Set<Path> names = watched.get(dir);
+            if (names == null)
+            {
+                try
+                {
+                    dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+                catch (IOException ex)
+                {
+                    if (log.isWarnEnabled()) log.warn("Could not watch sitemap directory {}", dir, ex);
+                    continue;
+                }
+                names = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+                watched.put(dir, names);
+            }
+            if (names.add(file.getFileName()) && log.isDebugEnabled()) log.debug("Watching sitemap document <{}> in file {}", documentURI, file);
+        }
+    }
+
+    public Path getLocalFile(String location)
+    {
+        try
+        {
+            if (location.startsWith("file:")) return Paths.get(URI.create(location)).toAbsolutePath();
+            if (location.contains(":") && !new File(location).exists()) return null; // remote URI
+
+            File file = new File(location);
+            if (file.exists()) return file.toPath().toAbsolutePath();
+
+            URL resource = Thread.currentThread().getContextClassLoader().getResource(location);
+            if (resource != null && resource.getProtocol().equals("file")) return Paths.get(resource.toURI()).toAbsolutePath();
+        }
+        catch (Exception ex) // URISyntaxException, InvalidPathException etc.
+        {
+            if (log.isDebugEnabled()) log.debug("Location '{}' is not a local file", location, ex);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (true)
+            {
+                if (!isChanged(watchService.take())) continue;
+
+                // wait for the changes to settle
+                WatchKey key;
+                while ((key = watchService.poll(delay, TimeUnit.MILLISECONDS)) != null) isChanged(key);
+
+                if (log.isInfoEnabled()) log.info("Sitemap files changed, reloading");
+                getLoader().reload();
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException ex)
+        {
+            if (log.isDebugEnabled()) log.debug("Sitemap watcher stopped");
+        }
+    }
+
+    private boolean isChanged(WatchKey key)
+    {
+        boolean changed = false;
+        Set<Path> names = watched.get((Path)key.watchable());
+
+        for (WatchEvent<?> event : key.pollEvents())
+            if (names != null && event.context() instanceof Path && names.contains((Path)event.context())) changed = true;
+
+        key.reset();
+        return changed;
+    }
+
+    public SitemapLoader getLoader()
+    {
+        return loader;
+    }
+
+    public long getDelay()
+    {
+        return delay;
+    }
+
+}
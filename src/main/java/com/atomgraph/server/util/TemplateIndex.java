@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.vocabulary.LDT;
+import com.sun.jersey.api.uri.UriTemplate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.jena.ontology.OntResource;
+import org.apache.jena.ontology.Ontology;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * URI templates of all templates in the sitemap import closure, and a bounded cache of recently unmatched paths.
+ * Answers only whether any template matches a path, which is enough to reject requests that would end in
+ * <code>404 Not Found</code> without building the ontology view and the template call.
+ * Paths are matched against the templates first, so matching requests do not touch shared state. Only sitemaps with
+ * more than {@link #MAX_SCANNED} templates look unmatched paths up in the cache before scanning the templates. The
+ * cache is lock-free, and it is cleared when it is full.
+ * Selecting the matching template is still left to {@link com.atomgraph.processor.util.TemplateMatcher}.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class TemplateIndex
+{
+
+    public static final int MAX_UNMATCHED = 10000;
+    public static final int MAX_SCANNED = 64;
+
+    private final List<UriTemplate> paths = new ArrayList<>();
+    private final boolean complete;
+    private final Set<String> unmatched = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Indexes templates of the ontology and its imports.
+     *
+     * @param ontology sitemap ontology
+     */
+    public TemplateIndex(Ontology ontology)
+    {
+        if (ontology == null) throw new IllegalArgumentException("Ontology cannot be null");
+
+        this.complete = collect(ontology, new HashSet<Ontology>());
+    }
+
+    // same traversal as TemplateMatcher: only templates defined by each ontology in the import closure
+    private boolean collect(Ontology ontology, Set<Ontology> visited)
+    {
+        if (!visited.add(ontology)) return true;
+
+        boolean result = true;
+        List<Ontology> importedOntologies = new ArrayList<>();
+        ResIterator it = ontology.getOntModel().listResourcesWithProperty(RDF.type, LDT.Template);
+        try
+        {
+            while (it.hasNext())
+            {
+                Template template = it.next().as(Template.class);
+                if (template.getIsDefinedBy() != null && template.getIsDefinedBy().equals(ontology))
+                {
+                    if (template.getPath() != null) paths.add(template.getPath());
+                    else result = false; // the matcher reports the error
+                }
+            }
+
+            ExtendedIterator<OntResource> importIt = ontology.listImports();
+            try
+            {
+                while (importIt.hasNext())
+                {
+                    OntResource importRes = importIt.next();
+                    if (importRes.canAs(Ontology.class)) importedOntologies.add(importRes.asOntology());
+                }
+            }
+            finally
+            {
+                importIt.close();
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        for (Ontology importedOntology : importedOntologies)
+            result &= collect(importedOntology, visited);
+
+        return result;
+    }
+
+    /**
+     * Returns true if any template matches the path. Always true if the index could not be built completely.
+     *
+     * @param path absolute path (relative URI), as matched by {@link com.atomgraph.processor.util.TemplateMatcher}
+     * @return true if matched
+     */
+    public boolean matches(CharSequence path)
+    {
+        if (path == null) throw new IllegalArgumentException("CharSequence cannot be null");
+        if (!isComplete()) return true;
+
+        String key = path.toString();
+        boolean cached = paths.size() > MAX_SCANNED; // scanning a few templates is cheaper than hashing the path
+        if (cached && unmatched.contains(key)) return false;
+
+        for (UriTemplate uriTemplate : paths)
+            if (uriTemplate.match(path, new HashMap<String, String>())) return true;
+
+        if (cached)
+        {
+            if (unmatched.size() >= MAX_UNMATCHED) unmatched.clear();
+            unmatched.add(key);
+        }
+        return false;
+    }
+
+    public List<UriTemplate> getPaths()
+    {
+        return Collections.unmodifiableList(paths);
+    }
+
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+}
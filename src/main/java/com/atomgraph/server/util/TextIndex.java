@@ -0,0 +1,462 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.expr.E_IsIRI;
+import org.apache.jena.sparql.expr.E_IsLiteral;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.syntax.ElementUnion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory full-text index of literal values of configured properties.
+ * Maps lower-cased word tokens to the URIs of the resources that have them, so that searches resolve to resource URIs
+ * without a <code>regex()</code> scan in the triplestore. Every search token matches as a prefix, and all tokens have
+ * to match. Only resources with URIs are indexed.
+ * The index is updated with the writes made through this process and rebuilt from the dataset at startup; writes made
+ * elsewhere are only visible after a rebuild. Changes made while a rebuild is running are replayed on top of the
+ * rebuilt index before it replaces the live one.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class TextIndex
+{
+
+    private static final Logger log = LoggerFactory.getLogger(TextIndex.class);
+
+    public static final int MAX_HITS = 10000;
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Var GRAPH = Var.alloc("g"), SUBJECT = Var.alloc("s"), PREDICATE = Var.alloc("p"), OBJECT = Var.alloc("o");
+
+    private final Set<Property> properties = new LinkedHashSet<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State(); // guarded by lock
+    private List<Change> journal; // guarded by lock, not null while a rebuild is running
+
+    /**
+     * Constructs index.
+     *
+     * @param propertyURIs URIs of the indexed properties
+     */
+    public TextIndex(Collection<String> propertyURIs)
+    {
+        if (propertyURIs == null) throw new IllegalArgumentException("Property URI Collection cannot be null");
+        if (propertyURIs.isEmpty()) throw new IllegalArgumentException("Text index needs at least one property");
+
+        for (String propertyURI : propertyURIs) properties.add(ResourceFactory.createProperty(propertyURI));
+    }
+
+    /**
+     * Adds the indexed literals of a model stored in the default graph.
+     *
+     * @param model model
+     */
+    public void index(Model model)
+    {
+        index(model, null);
+    }
+
+    /**
+     * Adds the indexed literals of a model.
+     *
+     * @param model model
+     * @param graphURI URI of the graph the model is stored in, or null for the default graph
+     */
+    public void index(Model model, final String graphURI)
+    {
+        if (model == null) throw new IllegalArgumentException("Model cannot be null");
+
+        final Map<String, List<String>> literals = new HashMap<>();
+        StmtIterator it = model.listStatements();
+        try
+        {
+            while (it.hasNext())
+            {
+                Statement stmt = it.next();
+                if (stmt.getSubject().isURIResource() && stmt.getObject().isLiteral() && getProperties().contains(stmt.getPredicate()))
+                {
+                    List<String> values = literals.get(stmt.getSubject().getURI());
+                    if (values == null)
+                    {
+                        values = new ArrayList<>();
+                        literals.put(stmt.getSubject().getURI(), values);
+                    }
+                    values.add(stmt.getString());
+                }
+            }
+        }
+        finally
+        {
+            it.close();
+        }
+
+        if (!literals.isEmpty()) apply(new Change()
+        {
+            @Override
+            public void apply(State state)
+            {
+                for (Map.Entry<String, List<String>> entry : literals.entrySet())
+                    for (String literal : entry.getValue()) state.add(graphURI, entry.getKey(), literal);
+            }
+        });
+    }
+
+    /**
+     * Removes a resource from the index.
+     *
+     * @param uri resource URI
+     */
+    public void remove(final String uri)
+    {
+        if (uri == null) throw new IllegalArgumentException("Resource URI cannot be null");
+
+        apply(new Change()
+        {
+            @Override
+            public void apply(State state)
+            {
+                state.remove(uri);
+            }
+        });
+    }
+
+    /**
+     * Removes the resources indexed from a named graph.
+     *
+     * @param graphURI graph URI
+     */
+    public void removeGraph(final String graphURI)
+    {
+        if (graphURI == null) throw new IllegalArgumentException("Graph URI cannot be null");
+
+        apply(new Change()
+        {
+            @Override
+            public void apply(State state)
+            {
+                state.removeGraph(graphURI);
+            }
+        });
+    }
+
+    private void apply(Change change)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            change.apply(state);
+            if (journal != null) journal.add(change);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the index with the results of {@link #getRebuildQuery()}. The old index is served until the new one
+     * is complete, and the changes made in the meantime are replayed on the new one.
+     *
+     * @param qex execution of the rebuild query
+     */
+    public void rebuild(QueryExecution qex)
+    {
+        if (qex == null) throw new IllegalArgumentException("QueryExecution cannot be null");
+
+        lock.writeLock().lock();
+        try
+        {
+            if (journal != null) throw new IllegalStateException("Text index is already being rebuilt");
+            journal = new ArrayList<>();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        State newState = new State();
+        long count = 0;
+        try
+        {
+            try
+            {
+                ResultSet results = qex.execSelect();
+                while (results.hasNext())
+                {
+                    QuerySolution solution = results.next();
+                    RDFNode subject = solution.get(SUBJECT.getVarName()), graph = solution.get(GRAPH.getVarName());
+                    if (subject == null || !subject.isURIResource()) continue;
+
+                    newState.add(graph != null && graph.isURIResource() ? graph.asResource().getURI() : null,
+                        subject.asResource().getURI(), solution.getLiteral(OBJECT.getVarName()).getString());
+                    count++;
+                }
+            }
+            finally
+            {
+                qex.close();
+            }
+
+            lock.writeLock().lock();
+            try
+            {
+                for (Change change : journal) change.apply(newState);
+                if (log.isDebugEnabled()) log.debug("Replayed {} text index changes made during rebuild", journal.size());
+                state = newState;
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+        finally
+        {
+            lock.writeLock().lock();
+            try
+            {
+                journal = null;
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        if (log.isDebugEnabled()) log.debug("Rebuilt text index from {} literals", count);
+    }
+
+    /**
+     * Returns query that selects the indexed literals of URI resources from the default and named graphs.
+     *
+     * @return <code>SELECT</code> query
+     */
+    public Query getRebuildQuery()
+    {
+        ElementData data = new ElementData();
+        data.add(PREDICATE);
+        for (Property property : getProperties()) data.add(BindingFactory.binding(PREDICATE, property.asNode()));
+
+        ElementTriplesBlock defaultBlock = new ElementTriplesBlock();
+        defaultBlock.addTriple(Triple.create(SUBJECT, PREDICATE, OBJECT));
+        ElementTriplesBlock namedBlock = new ElementTriplesBlock();
+        namedBlock.addTriple(Triple.create(SUBJECT, PREDICATE, OBJECT));
+        ElementUnion union = new ElementUnion(defaultBlock);
+        union.addElement(new ElementNamedGraph(GRAPH, namedBlock));
+
+        ElementGroup group = new ElementGroup();
+        group.addElement(data);
+        group.addElement(union);
+        group.addElement(new ElementFilter(new E_LogicalAnd(new E_IsIRI(new ExprVar(SUBJECT)), new E_IsLiteral(new ExprVar(OBJECT)))));
+
+        Query query = new Query();
+        query.setQuerySelectType();
+        query.addResultVar(GRAPH);
+        query.addResultVar(SUBJECT);
+        query.addResultVar(OBJECT);
+        query.setQueryPattern(group);
+        return query;
+    }
+
+    /**
+     * Returns resources that match all tokens of the search text.
+     *
+     * @param text search text
+     * @return resource URIs, or null if the text has no tokens or matches more than {@link #MAX_HITS} resources
+     */
+    public Set<String> search(String text)
+    {
+        if (text == null) throw new IllegalArgumentException("Search text cannot be null");
+
+        Set<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) return null;
+
+        lock.readLock().lock();
+        try
+        {
+            Set<String> hits = null;
+            for (String token : tokens)
+            {
+                Set<String> tokenHits = new HashSet<>();
+                for (Map<String, Integer> uris : state.tokenResources.subMap(token, true, token + Character.MAX_VALUE, false).values())
+                {
+                    tokenHits.addAll(uris.keySet());
+                    if (hits == null && tokenHits.size() > MAX_HITS) return null;
+                }
+
+                if (hits == null) hits = tokenHits;
+                else hits.retainAll(tokenHits);
+                if (hits.isEmpty()) break;
+            }
+
+            if (hits.size() > MAX_HITS) return null;
+            return hits;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static Set<String> tokenize(String text)
+    {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+            if (!token.isEmpty()) tokens.add(token);
+        return tokens;
+    }
+
+    public Set<Property> getProperties()
+    {
+        return properties;
+    }
+
+    private interface Change
+    {
+
+        void apply(State state);
+
+    }
+
+    /**
+     * Tokens are tracked per graph and resource, so that removing a graph keeps the tokens a resource has in other
+     * graphs. Every token maps to its resources with the number of graphs the token was indexed from.
+     */
+    private static class State
+    {
+
+        private static final String DEFAULT_GRAPH = ""; // key of the default graph
+
+        private final NavigableMap<String, Map<String, Integer>> tokenResources = new TreeMap<>();
+        private final Map<String, Map<String, Set<String>>> graphResourceTokens = new HashMap<>();
+        private final Map<String, Set<String>> resourceGraphs = new HashMap<>();
+
+        private void add(String graphURI, String uri, String literal)
+        {
+            String graph = graphURI != null ? graphURI : DEFAULT_GRAPH;
+            Map<String, Set<String>> resourceTokens = graphResourceTokens.get(graph);
+            if (resourceTokens == null)
+            {
+                resourceTokens = new HashMap<>();
+                graphResourceTokens.put(graph, resourceTokens);
+            }
+            Set<String> tokens = get(resourceTokens, uri);
+            get(resourceGraphs, uri).add(graph);
+
+            for (String token : tokenize(literal))
+                if (tokens.add(token))
+                {
+                    Map<String, Integer> uris = tokenResources.get(token);
+                    if (uris == null)
+                    {
+                        uris = new HashMap<>();
+                        tokenResources.put(token, uris);
+                    }
+                    Integer count = uris.get(uri);
+                    uris.put(uri, count != null ? count + 1 : 1);
+                }
+        }
+
+        private void remove(String uri)
+        {
+            Set<String> graphs = resourceGraphs.remove(uri);
+            if (graphs == null) return;
+
+            for (String graph : graphs)
+            {
+                Map<String, Set<String>> resourceTokens = graphResourceTokens.get(graph);
+                release(uri, resourceTokens.remove(uri));
+                if (resourceTokens.isEmpty()) graphResourceTokens.remove(graph);
+            }
+        }
+
+        private void removeGraph(String graphURI)
+        {
+            Map<String, Set<String>> resourceTokens = graphResourceTokens.remove(graphURI);
+            if (resourceTokens == null) return;
+
+            for (Map.Entry<String, Set<String>> entry : resourceTokens.entrySet())
+            {
+                Set<String> graphs = resourceGraphs.get(entry.getKey());
+                graphs.remove(graphURI);
+                if (graphs.isEmpty()) resourceGraphs.remove(entry.getKey());
+                release(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // drops one graph's reference from the tokens of a resource
+        private void release(String uri, Set<String> tokens)
+        {
+            for (String token : tokens)
+            {
+                Map<String, Integer> uris = tokenResources.get(token);
+                int count = uris.get(uri) - 1;
+                if (count > 0) uris.put(uri, count);
+                else
+                {
+                    uris.remove(uri);
+                    if (uris.isEmpty()) tokenResources.remove(token);
+                }
+            }
+        }
+
+        private static Set<String> get(Map<String, Set<String>> map, String key)
+        {
+            Set<String> values = map.get(key);
+            if (values == null)
+            {
+                values = new HashSet<>();
+                map.put(key, values);
+            }
+            return values;
+        }
+
+    }
+
+}
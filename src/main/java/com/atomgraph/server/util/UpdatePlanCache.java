@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import com.atomgraph.processor.model.Template;
+import com.atomgraph.processor.update.UpdatePlan;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.jena.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiled template updates, by sitemap snapshot, template and base URI.
+ * Plans are compiled on first use and dropped together with their snapshot.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ * @see UpdatePlan
+ */
+public class UpdatePlanCache
+{
+
+    private static final Logger log = LoggerFactory.getLogger(UpdatePlanCache.class);
+
+    public static final int MAX_ENTRIES = 10000;
+
+    private final Map<Graph, Plans> snapshots = new WeakHashMap<>(); // guarded by itself
+
+    /**
+     * Returns compiled update of a template.
+     *
+     * @param template template with <code>ldt:update</code>
+     * @param base base URI
+     * @return update plan, or null if the update cannot be compiled
+     */
+    public UpdatePlan get(Template template, URI base)
+    {
+        if (template == null) throw new IllegalArgumentException("Template cannot be null");
+        if (base == null) throw new IllegalArgumentException("URI cannot be null");
+
+        Plans snapshot = getPlans(Sitemap.getSnapshotGraph(template.getOntModel()));
+        String key = template.getURI() + " " + base;
+        UpdatePlan existing = snapshot.plans.get(key);
+        if (existing != null || snapshot.unsupported.contains(key)) return existing;
+
+        if (snapshot.plans.size() >= MAX_ENTRIES) snapshot.plans.clear(); // base URIs come from requests, so the key space is open
+        UpdatePlan created = UpdatePlan.compile(template, base);
+        if (created == null)
+        {
+            if (log.isDebugEnabled()) log.debug("Update of template <{}> is not a DELETE/INSERT, it will not be compiled", template.getURI());
+            if (snapshot.unsupported.size() < MAX_ENTRIES) snapshot.unsupported.add(key);
+            return null;
+        }
+
+        existing = snapshot.plans.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    // snapshots are weakly referenced, so plans of replaced sitemaps are dropped once no request uses them
+    private Plans getPlans(Graph snapshotGraph)
+    {
+        synchronized (snapshots)
+        {
+            Plans plans = snapshots.get(snapshotGraph);
+            if (plans == null)
+            {
+                plans = new Plans();
+                snapshots.put(snapshotGraph, plans);
+            }
+            return plans;
+        }
+    }
+
+    private static class Plans
+    {
+
+        private final ConcurrentMap<String, UpdatePlan> plans = new ConcurrentHashMap<>();
+        private final Set<String> unsupported = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of asynchronous writes.
+ * Writes to the same graph are executed in submission order, one at a time; writes to different graphs run in
+ * parallel on a fixed pool of worker threads. Submission fails once the number of pending writes reaches capacity.
+ * Jobs are kept after completion so that their status can be polled, up to a fixed number of finished jobs.
+ * Synchronous writes are passed through {@link #execute(java.lang.String, java.util.concurrent.Callable)} so that they
+ * do not overtake pending writes to the same graph.
+ * Pending writes are lost if the JVM shuts down.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class UpdateQueue
+{
+    private static final Logger log = LoggerFactory.getLogger(UpdateQueue.class);
+
+    public static final int MAX_FINISHED_JOBS = 10000;
+
+    public enum State { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final int capacity;
+    private final ExecutorService executor;
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Map<String, Lane> lanes = new HashMap<>(); // guarded by itself
+    private final Map<String, Job> jobs = new LinkedHashMap<>(); // guarded by itself
+
+    /**
+     * Constructs queue.
+     *
+     * @param capacity maximum number of pending writes
+     * @param threadCount number of worker threads
+     */
+    public UpdateQueue(int capacity, int threadCount)
+    {
+        if (capacity < 1) throw new IllegalArgumentException("Queue capacity must be positive");
+        if (threadCount < 1) throw new IllegalArgumentException("Thread count must be positive");
+
+        this.capacity = capacity;
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "update-queue-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits write to the queue of the specified graph.
+     *
+     * @param graphURI graph URI or null for the default graph
+     * @param update write operation
+     * @param successStatus response status once the write succeeds
+     * @param location URI of the written resource, can be null
+     * @return queued job
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Job submit(String graphURI, Runnable update, Response.StatusType successStatus, URI location)
+    {
+        if (update == null) throw new IllegalArgumentException("Update Runnable cannot be null");
+        if (successStatus == null) throw new IllegalArgumentException("Response.StatusType cannot be null");
+
+        if (depth.incrementAndGet() > getCapacity())
+        {
+            depth.decrementAndGet();
+            throw new RejectedExecutionException("Update queue is full");
+        }
+
+        Job job = new Job(graphURI, update, successStatus, location);
+        synchronized (jobs)
+        {
+            jobs.put(job.getId(), job);
+            evictFinished();
+        }
+
+        String key = graphURI != null ? graphURI : "";
+        synchronized (lanes)
+        {
+            Lane lane = lanes.get(key);
+            if (lane == null)
+            {
+                lane = new Lane(key);
+                lanes.put(key, lane);
+            }
+            lane.getJobs().add(job);
+            if (!lane.isScheduled())
+            {
+                lane.setScheduled(true);
+                executor.execute(lane);
+            }
+        }
+
+        if (log.isDebugEnabled()) log.debug("Queued update job {} for graph <{}>, queue depth: {}", job.getId(), graphURI, depth.get());
+        return job;
+    }
+
+    /**
+     * Executes write synchronously. If writes to the same graph are pending, the write is queued behind them and the
+     * calling thread waits for it to complete; otherwise it runs on the calling thread, occupying the lane of the graph
+     * so that writes submitted in the meantime wait until it is done.
+     *
+     * @param <T> result type
+     * @param graphURI graph URI or null for the default graph
+     * @param write write operation
+     * @return result of the write
+     * @throws RejectedExecutionException if the write has to be queued and the queue is full
+     * @throws Exception if the write fails or the wait is interrupted
+     */
+    public <T> T execute(String graphURI, Callable<T> write) throws Exception
+    {
+        if (write == null) throw new IllegalArgumentException("Write Callable cannot be null");
+
+        String key = graphURI != null ? graphURI : "";
+        Lane lane = null;
+        synchronized (lanes)
+        {
+            if (!lanes.containsKey(key))
+            {
+                lane = new Lane(key);
+                lane.setScheduled(true); // submissions queue up in the lane without scheduling it
+                lanes.put(key, lane);
+            }
+        }
+        if (lane != null)
+            try
+            {
+                return write.call();
+            }
+            finally
+            {
+                synchronized (lanes)
+                {
+                    if (lane.getJobs().isEmpty())
+                    {
+                        lane.setScheduled(false);
+                        lanes.remove(key);
+                    }
+                    else executor.execute(lane);
+                }
+            }
+
+        if (log.isDebugEnabled()) log.debug("Ordering synchronous write behind pending writes to graph <{}>", graphURI);
+        FutureTask<T> task = new FutureTask<>(write);
+        submit(graphURI, task, Response.Status.OK, null);
+        try
+        {
+            return task.get();
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof Exception) throw (Exception)ex.getCause();
+            if (ex.getCause() instanceof Error) throw (Error)ex.getCause();
+            throw ex;
+        }
+    }
+
+    // removes oldest finished jobs over the limit. Pending jobs are never evicted
+    private void evictFinished()
+    {
+        int finished = jobs.size() - depth.get();
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && it.hasNext())
+        {
+            Job job = it.next();
+            if (job.isFinished())
+            {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    public Job getJob(String id)
+    {
+        synchronized (jobs)
+        {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Returns the number of writes that are queued or running.
+     *
+     * @return queue depth
+     */
+    public int getDepth()
+    {
+        return depth.get();
+    }
+
+    /**
+     * Returns the age of the oldest pending write.
+     *
+     * @return lag in milliseconds, or 0 if the queue is empty
+     */
+    public long getLag()
+    {
+        long oldest = Long.MAX_VALUE;
+        synchronized (lanes)
+        {
+            for (Lane lane : lanes.values())
+            {
+                Job head = lane.getJobs().peek();
+                if (head != null) oldest = Math.min(oldest, head.getSubmitted());
+            }
+        }
+
+        if (oldest == Long.MAX_VALUE) return 0;
+        return System.currentTimeMillis() - oldest;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Ordered queue of writes to one graph. Executes one job per run and reschedules itself, so that busy graphs do
+     * not starve the others.
+     */
+    protected class Lane implements Runnable
+    {
+        private final String key;
+        private final Queue<Job> laneJobs = new ArrayDeque<>();
+        private boolean scheduled = false;
+
+        public Lane(String key)
+        {
+            this.key = key;
+        }
+
+        @Override
+        public void run()
+        {
+            Job job;
+            synchronized (lanes)
+            {
+                job = laneJobs.peek(); // stays at the head until finished, to keep the lag accurate
+            }
+
+            try
+            {
+                job.run();
+            }
+            finally
+            {
+                depth.decrementAndGet();
+                synchronized (lanes)
+                {
+                    laneJobs.poll();
+                    if (laneJobs.isEmpty())
+                    {
+                        scheduled = false;
+                        lanes.remove(key);
+                    }
+                    else executor.execute(this);
+                }
+            }
+        }
+
+        public Queue<Job> getJobs()
+        {
+            return laneJobs;
+        }
+
+        public boolean isScheduled()
+        {
+            return scheduled;
+        }
+
+        public void setScheduled(boolean scheduled)
+        {
+            this.scheduled = scheduled;
+        }
+
+    }
+
+    /**
+     * Asynchronous write and its status.
+     */
+    public static class Job implements Runnable
+    {
+        private final String id = UUID.randomUUID().toString();
+        private final String graphURI;
+        private volatile Runnable update; // released once run, finished jobs are retained for polling
+        private final Response.StatusType successStatus;
+        private final URI location;
+        private final long submitted = System.currentTimeMillis();
+        private volatile long started, finished;
+        private volatile State state = State.QUEUED;
+        private volatile String message;
+
+        public Job(String graphURI, Runnable update, Response.StatusType successStatus, URI location)
+        {
+            this.graphURI = graphURI;
+            this.update = update;
+            this.successStatus = successStatus;
+            this.location = location;
+        }
+
+        @Override
+        public void run()
+        {
+            started = System.currentTimeMillis();
+            state = State.RUNNING;
+            try
+            {
+                update.run();
+                state = State.SUCCEEDED;
+            }
+            catch (RuntimeException ex)
+            {
+                if (log.isErrorEnabled()) log.error("Update job {} for graph <{}> failed", id, graphURI, ex);
+                message = ex.getMessage();
+                state = State.FAILED;
+            }
+            finally
+            {
+                update = null;
+                finished = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Returns the response status of the deferred request: 202 while pending, the success status once written,
+         * or 500 if the write failed.
+         *
+         * @return status
+         */
+        public Response.StatusType getStatus()
+        {
+            switch (getState())
+            {
+                case SUCCEEDED: return getSuccessStatus();
+                case FAILED: return Response.Status.INTERNAL_SERVER_ERROR;
+                default: return Response.Status.ACCEPTED;
+            }
+        }
+
+        public boolean isFinished()
+        {
+            return getState() == State.SUCCEEDED || getState() == State.FAILED;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getGraphURI()
+        {
+            return graphURI;
+        }
+
+        public Response.StatusType getSuccessStatus()
+        {
+            return successStatus;
+        }
+
+        public URI getLocation()
+        {
+            return location;
+        }
+
+        public long getSubmitted()
+        {
+            return submitted;
+        }
+
+        public long getStarted()
+        {
+            return started;
+        }
+
+        public long getFinished()
+        {
+            return finished;
+        }
+
+        public State getState()
+        {
+            return state;
+        }
+
+        public String getMessage()
+        {
+            return message;
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Version counters and last modification times of named graphs and templates.
+ * Every write increments a global counter; writes to a known named graph also set the version of that graph, while
+ * writes with unknown graph footprint (SPARQL updates, default graph) set the version of all graphs.
+ * Template versions change when the sitemap definition of a template changes.
+ * Versions are only reliable if all writes go through this process, or are reported by a {@link Poller}.
+ * Entity tags include the startup time, so that they are not reused after a restart.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class VersionRegistry
+{
+
+    private static final Logger log = LoggerFactory.getLogger(VersionRegistry.class);
+
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong counter = new AtomicLong();
+    private final Version version = new Version(epoch);
+    private final Version anyGraphVersion = new Version(epoch);
+    private final Version anyTemplateVersion = new Version(epoch);
+    private final ConcurrentMap<String, Version> graphVersions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Version> templateVersions = new ConcurrentHashMap<>();
+    private ScheduledExecutorService pollExecutor; // guarded by this
+
+    /**
+     * Records a completed write. Has to be called after the write, never before, otherwise a concurrent read could
+     * tag the old data with the new version.
+     *
+     * @param graphURI URI of the written named graph, or null if the write can affect any graph
+     * @return new version
+     */
+    public long bump(String graphURI)
+    {
+        long newVersion = counter.incrementAndGet();
+        long now = System.currentTimeMillis();
+        version.advance(newVersion, now);
+
+        if (graphURI == null) anyGraphVersion.advance(newVersion, now);
+        else get(graphVersions, graphURI).advance(newVersion, now);
+
+        return newVersion;
+    }
+
+    /**
+     * Records a changed template definition.
+     *
+     * @param templateURI URI of the changed template, or null if any template can have changed (e.g. sitemap reload)
+     * @return new version
+     */
+    public long bumpTemplate(String templateURI)
+    {
+        long newVersion = counter.incrementAndGet();
+        long now = System.currentTimeMillis();
+
+        if (templateURI == null) anyTemplateVersion.advance(newVersion, now);
+        else get(templateVersions, templateURI).advance(newVersion, now);
+
+        return newVersion;
+    }
+
+    private static Version get(ConcurrentMap<String, Version> versions, String uri)
+    {
+        Version existing = versions.get(uri);
+        if (existing != null) return existing;
+
+        Version created = new Version(0);
+        existing = versions.putIfAbsent(uri, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Returns version of the whole store.
+     *
+     * @return global version
+     */
+    public long getVersion()
+    {
+        return version.getValue();
+    }
+
+    /**
+     * Returns version of a named graph.
+     *
+     * @param graphURI graph URI
+     * @return graph version
+     */
+    public long getVersion(String graphURI)
+    {
+        if (graphURI == null) throw new IllegalArgumentException("Graph URI cannot be null");
+
+        Version graphVersion = graphVersions.get(graphURI);
+        if (graphVersion == null) return anyGraphVersion.getValue();
+        return Math.max(graphVersion.getValue(), anyGraphVersion.getValue());
+    }
+
+    /**
+     * Returns version of a template definition.
+     *
+     * @param templateURI template URI
+     * @return template version
+     */
+    public long getTemplateVersion(String templateURI)
+    {
+        if (templateURI == null) throw new IllegalArgumentException("Template URI cannot be null");
+
+        Version templateVersion = templateVersions.get(templateURI);
+        if (templateVersion == null) return anyTemplateVersion.getValue();
+        return Math.max(templateVersion.getValue(), anyTemplateVersion.getValue());
+    }
+
+    /**
+     * Returns last modification time of the whole store. Writes made before startup are not known, so the startup
+     * time is returned if nothing was written since.
+     *
+     * @return last modification date
+     */
+    public Date getLastModified()
+    {
+        return toDate(version.getModified());
+    }
+
+    /**
+     * Returns last modification time of a named graph.
+     *
+     * @param graphURI graph URI
+     * @return last modification date
+     */
+    public Date getLastModified(String graphURI)
+    {
+        if (graphURI == null) throw new IllegalArgumentException("Graph URI cannot be null");
+
+        Version graphVersion = graphVersions.get(graphURI);
+        if (graphVersion == null) return toDate(anyGraphVersion.getModified());
+        return toDate(Math.max(graphVersion.getModified(), anyGraphVersion.getModified()));
+    }
+
+    /**
+     * Returns last modification time of a template definition.
+     *
+     * @param templateURI template URI
+     * @return last modification date
+     */
+    public Date getTemplateLastModified(String templateURI)
+    {
+        if (templateURI == null) throw new IllegalArgumentException("Template URI cannot be null");
+
+        Version templateVersion = templateVersions.get(templateURI);
+        if (templateVersion == null) return toDate(anyTemplateVersion.getModified());
+        return toDate(Math.max(templateVersion.getModified(), anyTemplateVersion.getModified()));
+    }
+
+    // HTTP dates have second precision, otherwise If-Modified-Since would never match
+    private static Date toDate(long millis)
+    {
+        return new Date(millis - millis % 1000);
+    }
+
+    /**
+     * Builds strong entity tag from one or more versions, e.g. data and template version.
+     * Only use it for resources with a single representation, see {@link #getEntityTag(javax.ws.rs.core.MediaType, long...)}.
+     *
+     * @param versions versions
+     * @return entity tag
+     */
+    public EntityTag getEntityTag(long... versions)
+    {
+        return getEntityTag(null, versions);
+    }
+
+    /**
+     * Builds strong entity tag of a representation from one or more versions and its media type. Negotiated
+     * representations are not byte-for-byte equal, so each media type gets its own tag.
+     *
+     * @param mediaType representation media type, can be null
+     * @param versions versions
+     * @return entity tag
+     */
+    public EntityTag getEntityTag(MediaType mediaType, long... versions)
+    {
+        StringBuilder value = new StringBuilder(Long.toHexString(epoch));
+        for (long v : versions) value.append('-').append(Long.toHexString(v));
+        if (mediaType != null) // parameters such as charset are ignored
+            value.append('-').append(Integer.toHexString((mediaType.getType() + "/" + mediaType.getSubtype()).toLowerCase(Locale.ROOT).hashCode()));
+        return new EntityTag(value.toString());
+    }
+
+    /**
+     * Starts polling for writes made outside this process. Replaces the previous poller, if any.
+     *
+     * @param poller change detector
+     * @param interval polling interval in milliseconds
+     */
+    public synchronized void startPolling(final Poller poller, long interval)
+    {
+        if (poller == null) throw new IllegalArgumentException("Poller cannot be null");
+        if (interval < 1) throw new IllegalArgumentException("Polling interval must be positive");
+
+        stopPolling();
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "version-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pollExecutor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Collection<String> changed = poller.poll();
+                    if (changed == null) return;
+                    if (log.isDebugEnabled() && !changed.isEmpty()) log.debug("Poller reported changed graphs: {}", changed);
+
+                    if (changed.contains(null)) bump(null);
+                    else for (String graphURI : changed) bump(graphURI);
+                }
+                catch (RuntimeException ex) // keep polling after failures
+                {
+                    if (log.isWarnEnabled()) log.warn("Version polling failed", ex);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPolling()
+    {
+        if (pollExecutor != null)
+        {
+            pollExecutor.shutdownNow();
+            pollExecutor = null;
+        }
+    }
+
+    /**
+     * Detects writes made outside this process.
+     */
+    public interface Poller
+    {
+
+        /**
+         * Returns graphs changed since the previous call.
+         *
+         * @return URIs of changed named graphs, containing null if the changes can affect any graph
+         */
+        Collection<String> poll();
+
+    }
+
+    /**
+     * Monotonic version with the time it was last advanced.
+     */
+    protected static class Version
+    {
+        private final AtomicLong value = new AtomicLong();
+        private volatile long modified;
+
+        public Version(long modified)
+        {
+            this.modified = modified;
+        }
+
+        // versions never go backwards, even if concurrent bumps are recorded out of order
+        public void advance(long newValue, long time)
+        {
+            while (true)
+            {
+                long current = value.get();
+                if (current >= newValue) return;
+                if (value.compareAndSet(current, newValue))
+                {
+                    if (time > modified) modified = time;
+                    return;
+                }
+            }
+        }
+
+        public long getValue()
+        {
+            return value.get();
+        }
+
+        public long getModified()
+        {
+            return modified;
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.processor.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.Op1;
+import org.apache.jena.sparql.algebra.op.Op2;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpN;
+import org.apache.jena.sparql.algebra.op.OpProject;
+import org.apache.jena.sparql.algebra.op.OpSlice;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests filter rewrites of {@link QueryOptimizer}.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class QueryOptimizerTest
+{
+
+    private final QueryOptimizer optimizer = new QueryOptimizer();
+
+    private Op optimize(String pattern)
+    {
+        return optimizer.optimize(Algebra.compile(QueryFactory.create("SELECT * { " + pattern + " }").getQueryPattern()));
+    }
+
+    // operators of the type in the expression tree
+    private static <T extends Op> List<T> find(Op op, Class<T> type)
+    {
+        List<T> found = new ArrayList<>();
+        find(op, type, found);
+        return found;
+    }
+
+    private static <T extends Op> void find(Op op, Class<T> type, List<T> found)
+    {
+        if (type.isInstance(op)) found.add(type.cast(op));
+
+        if (op instanceof Op1) find(((Op1)op).getSubOp(), type, found);
+        if (op instanceof Op2)
+        {
+            find(((Op2)op).getLeft(), type, found);
+            find(((Op2)op).getRight(), type, found);
+        }
+        if (op instanceof OpN)
+            for (Op element : ((OpN)op).getElements()) find(element, type, found);
+    }
+
+    @Test
+    public void testInBecomesValuesIfVariableIsBound()
+    {
+        Op op = optimize("?x ?p ?o FILTER(?x IN (<http://example.org/a>, <http://example.org/b>))");
+
+        assertEquals(1, find(op, OpTable.class).size());
+        assertTrue(find(op, OpFilter.class).isEmpty());
+    }
+
+    @Test
+    public void testInStaysFilterIfVariableIsOptional()
+    {
+        Op op = optimize("?s ?p ?o OPTIONAL { ?s <http://example.org/q> ?x } FILTER(?x IN (<http://example.org/a>))");
+
+        assertTrue("unbound ?x would pass a join with VALUES", find(op, OpTable.class).isEmpty());
+        assertEquals(1, find(op, OpFilter.class).size());
+    }
+
+    @Test
+    public void testInStaysFilterForLiterals()
+    {
+        Op op = optimize("?x ?p ?o FILTER(?o IN (1, 2))");
+
+        assertTrue(find(op, OpTable.class).isEmpty());
+    }
+
+    @Test
+    public void testFilterIsPushedIntoSubSelect()
+    {
+        Op op = optimize("{ SELECT DISTINCT ?s { ?s ?p ?o } } FILTER(?s != <http://example.org/a>)");
+
+        List<OpProject> projects = find(op, OpProject.class);
+        assertEquals(1, projects.size());
+        assertEquals(1, find(projects.get(0).getSubOp(), OpFilter.class).size());
+    }
+
+    @Test
+    public void testFilterIsNotPushedBelowSlice()
+    {
+        Op op = optimize("{ SELECT ?s { ?s ?p ?o } LIMIT 10 } FILTER(?s != <http://example.org/a>)");
+
+        List<OpSlice> slices = find(op, OpSlice.class);
+        assertEquals(1, slices.size());
+        assertTrue("filtering before LIMIT would change which solutions are selected", find(slices.get(0), OpFilter.class).isEmpty());
+        assertFalse(find(op, OpFilter.class).isEmpty());
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.io.ByteArrayInputStream;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.vocabulary.DCTerms;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+
+/**
+ * Tests message escaping of {@link ErrorBodyCache} by parsing the bodies back.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class ErrorBodyCacheTest
+{
+
+    private static final String MESSAGE = "Expected \"}\" at <line 2>, got 'a & b'\nback\\slash\r\ttab\u0001control";
+
+    private static String readTitle(byte[] body, Lang lang)
+    {
+        assertNotNull("Body is cached for " + lang.getName(), body);
+
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, new ByteArrayInputStream(body), lang);
+        Statement title = model.listStatements(null, DCTerms.title, (String)null).next();
+        return title.getString();
+    }
+
+    private static byte[] getBody(String mediaType)
+    {
+        return ErrorBodyCache.get().getBody(Response.Status.BAD_REQUEST, null, MESSAGE, MediaType.valueOf(mediaType));
+    }
+
+    @Test
+    public void testTurtleRoundTrip()
+    {
+        assertEquals(MESSAGE, readTitle(getBody("text/turtle"), Lang.TURTLE));
+    }
+
+    @Test
+    public void testNTriplesRoundTrip()
+    {
+        assertEquals(MESSAGE, readTitle(getBody("application/n-triples"), Lang.NTRIPLES));
+    }
+
+    @Test
+    public void testJSONLDRoundTrip()
+    {
+        assertEquals(MESSAGE, readTitle(getBody("application/ld+json"), Lang.JSONLD));
+    }
+
+    @Test
+    public void testRDFXMLRoundTrip()
+    {
+        // control characters other than whitespace cannot be represented in XML 1.0
+        assertEquals(MESSAGE.replace('\u0001', ' '), readTitle(getBody("application/rdf+xml"), Lang.RDFXML));
+    }
+
+    @Test
+    public void testBodiesDifferOnlyInMessage()
+    {
+        byte[] first = getBody("text/turtle");
+        byte[] second = ErrorBodyCache.get().getBody(Response.Status.BAD_REQUEST, null, "other", MediaType.valueOf("text/turtle"));
+
+        assertEquals(MESSAGE, readTitle(first, Lang.TURTLE));
+        assertEquals("other", readTitle(second, Lang.TURTLE));
+    }
+
+    @Test
+    public void testTurtleEscape()
+    {
+        assertEquals("\\\"q\\\" \\\\ \\n\\r\\t\\u0001", ErrorBodyCache.Syntax.TURTLE.escape("\"q\" \\ \n\r\t\u0001"));
+    }
+
+    @Test
+    public void testJSONEscape()
+    {
+        assertEquals("\\\"q\\\" \\\\ \\n\\r\\t\\u001F", ErrorBodyCache.Syntax.JSON.escape("\"q\" \\ \n\r\t\u001F"));
+    }
+
+    @Test
+    public void testXMLEscape()
+    {
+        assertEquals("&lt;a&gt; &amp; &quot;q&quot; &apos;s&apos;&#10;&#13;&#9; ", ErrorBodyCache.Syntax.XML.escape("<a> & \"q\" 's'\n\r\t\u0001"));
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Martynas Jusevičius <martynas@atomgraph.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atomgraph.server.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests delete-and-rederive maintenance of {@link IncrementalMaterializer}.
+ *
+ * @author Martynas Jusevičius <martynas@atomgraph.com>
+ */
+public class IncrementalMaterializerTest
+{
+
+    private static final String NS = "http://example.org/";
+    private static final Node X = NodeFactory.createURI(NS + "x"),
+        A = NodeFactory.createURI(NS + "A"), B = NodeFactory.createURI(NS + "B"), C = NodeFactory.createURI(NS + "C");
+
+    private List<Rule> rules;
+
+    @Before
+    public void setUp()
+    {
+        rules = Rule.parseRules("[subClass: (?a rdfs:subClassOf ?b) (?b rdfs:subClassOf ?c) -> (?a rdfs:subClassOf ?c)] " +
+            "[type: (?x rdf:type ?a) (?a rdfs:subClassOf ?b) -> (?x rdf:type ?b)]");
+    }
+
+    private static Triple type(Node resource, Node cls)
+    {
+        return Triple.create(resource, RDF.type.asNode(), cls);
+    }
+
+    private static Triple subClassOf(Node subClass, Node superClass)
+    {
+        return Triple.create(subClass, RDFS.subClassOf.asNode(), superClass);
+    }
+
+    private static boolean contains(IncrementalMaterializer materializer, Triple triple)
+    {
+        return materializer.getModel().getGraph().contains(triple);
+    }
+
+    @Test
+    public void testDerivationWithAlternativeSurvivesDeletion()
+    {
+        IncrementalMaterializer materializer = new IncrementalMaterializer(rules);
+        materializer.update(Arrays.asList(type(X, A), type(X, C), subClassOf(A, B), subClassOf(C, B)), Collections.<Triple>emptyList());
+        assertTrue(contains(materializer, type(X, B)));
+
+        materializer.update(Collections.<Triple>emptyList(), Arrays.asList(subClassOf(A, B)));
+
+        assertTrue("x rdf:type B is still derived from C", contains(materializer, type(X, B)));
+        assertFalse(contains(materializer, subClassOf(A, B)));
+        assertTrue(contains(materializer, type(X, A)));
+    }
+
+    @Test
+    public void testDerivationWithoutAlternativeIsDeleted()
+    {
+        IncrementalMaterializer materializer = new IncrementalMaterializer(rules);
+        materializer.update(Arrays.asList(type(X, A), type(X, C), subClassOf(A, B), subClassOf(C, B)), Collections.<Triple>emptyList());
+
+        materializer.update(Collections.<Triple>emptyList(), Arrays.asList(subClassOf(A, B), subClassOf(C, B)));
+
+        assertFalse(contains(materializer, type(X, B)));
+    }
+
+    @Test
+    public void testAssertedTripleThatIsAlsoDerivedSurvivesDeletion()
+    {
+        IncrementalMaterializer materializer = new IncrementalMaterializer(rules);
+        materializer.update(Arrays.asList(subClassOf(A, C), subClassOf(C, B), subClassOf(A, B)), Collections.<Triple>emptyList());
+
+        materializer.update(Collections.<Triple>emptyList(), Arrays.asList(subClassOf(A, B)));
+
+        assertTrue("A rdfs:subClassOf B is still derived through C", contains(materializer, subClassOf(A, B)));
+    }
+
+    @Test
+    public void testIncrementalUpdateEqualsRecomputation()
+    {
+        IncrementalMaterializer incremental = new IncrementalMaterializer(rules);
+        incremental.update(Arrays.asList(type(X, A), subClassOf(A, C), subClassOf(C, B), subClassOf(A, B)), Collections.<Triple>emptyList());
+        incremental.update(Arrays.asList(type(X, C)), Arrays.asList(subClassOf(A, C), subClassOf(A, B)));
+
+        Graph graph = GraphFactory.createGraphMem();
+        graph.add(type(X, A));
+        graph.add(subClassOf(C, B));
+        graph.add(type(X, C));
+        IncrementalMaterializer recomputed = new IncrementalMaterializer(rules);
+        recomputed.update(graph);
+
+        Model expected = recomputed.getModel();
+        assertTrue(expected.isIsomorphicWith(incremental.getModel()));
+        assertTrue(expected.getGraph().contains(type(X, B)));
+        assertFalse(expected.getGraph().contains(subClassOf(A, B)));
+    }
+
+}